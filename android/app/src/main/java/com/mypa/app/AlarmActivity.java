@@ -1,11 +1,9 @@
 package com.mypa.app;
 
 import android.app.Activity;
-import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.PowerManager;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.Button;
@@ -35,12 +33,13 @@ import java.util.Locale;
  */
 public class AlarmActivity extends Activity {
     private static final String TAG = "AlarmActivity";
-    private PowerManager.WakeLock wakeLock;
+    private RingWakeLocks.Lease wakeLease;
 
     private int alarmId;
     private String alarmTitle;
     private String alarmBody;
     private String alarmType;
+    private long fireSeq = -1;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -53,15 +52,15 @@ public class AlarmActivity extends Activity {
         // Set window flags for lock screen
         setupWindowFlags();
 
-        // Acquire wake lock
-        acquireWakeLock();
-
         // Load native XML layout
         setContentView(R.layout.activity_alarm);
 
         // Get alarm data
         extractAlarmData();
 
+        // Wake-lock lease on the same ring session as the service
+        acquireWakeLock();
+
         // Setup UI
         setupUI();
 
@@ -93,16 +92,8 @@ public class AlarmActivity extends Activity {
 
     private void acquireWakeLock() {
         try {
-            PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-            if (powerManager != null) {
-                wakeLock = powerManager.newWakeLock(
-                    PowerManager.SCREEN_BRIGHT_WAKE_LOCK |
-                    PowerManager.ACQUIRE_CAUSES_WAKEUP,
-                    "AlarmApp:AlarmActivityWakeLock"
-                );
-                wakeLock.acquire(5 * 60 * 1000L);
-                Log.d(TAG, "Wake lock acquired");
-            }
+            wakeLease = RingWakeLocks.acquire(this, alarmId, RingWakeLocks.HOLDER_ACTIVITY);
+            Log.d(TAG, "Wake lock lease acquired");
         } catch (Exception e) {
             Log.e(TAG, "Failed to acquire wake lock", e);
         }
@@ -115,6 +106,11 @@ public class AlarmActivity extends Activity {
             alarmTitle = intent.getStringExtra("alarm_title");
             alarmBody = intent.getStringExtra("alarm_body");
             alarmType = intent.getStringExtra("alarm_type");
+            fireSeq = intent.getLongExtra(FireMetrics.EXTRA_SEQ, -1);
+            if (fireSeq < 0 && alarmId != -1) {
+                // Notification intents carry no fire (templates outlive one fire)
+                fireSeq = FireMetrics.latestSeq(alarmId);
+            }
 
             if (alarmTitle == null) alarmTitle = "Alarm";
             if (alarmBody == null) alarmBody = "";
@@ -232,6 +228,8 @@ public class AlarmActivity extends Activity {
         // Stop the service (this stops sound/vibration)
         Intent serviceIntent = new Intent(this, AlarmRingingService.class);
         serviceIntent.setAction(AlarmRingingService.ACTION_DISMISS);
+        serviceIntent.putExtra(AlarmRecord.EXTRA_ID, alarmId);
+        serviceIntent.putExtra(AlarmEventLog.EXTRA_SOURCE, AlarmEventLog.SOURCE_ACTIVITY);
         startService(serviceIntent);
 
         releaseWakeLock();
@@ -253,6 +251,8 @@ public class AlarmActivity extends Activity {
         // Stop the service
         Intent serviceIntent = new Intent(this, AlarmRingingService.class);
         serviceIntent.setAction(AlarmRingingService.ACTION_SNOOZE);
+        serviceIntent.putExtra(AlarmRecord.EXTRA_ID, alarmId);
+        serviceIntent.putExtra(AlarmEventLog.EXTRA_SOURCE, AlarmEventLog.SOURCE_ACTIVITY);
         startService(serviceIntent);
 
         releaseWakeLock();
@@ -266,14 +266,21 @@ public class AlarmActivity extends Activity {
     }
 
     private void releaseWakeLock() {
-        if (wakeLock != null && wakeLock.isHeld()) {
-            try {
-                wakeLock.release();
-                wakeLock = null;
-                Log.d(TAG, "Wake lock released");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to release wake lock", e);
-            }
+        if (wakeLease != null) {
+            wakeLease.release();
+            wakeLease = null;
+            Log.d(TAG, "Wake lock lease released");
+        }
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasFocus) {
+        super.onWindowFocusChanged(hasFocus);
+        if (hasFocus) {
+            // First frame is on screen; later focus changes are ignored by FireMetrics
+            FireMetrics.mark(fireSeq, FireMetrics.STAGE_ACTIVITY_VISIBLE);
+            // FLAG_KEEP_SCREEN_ON holds the screen from here - no bright lock needed
+            RingWakeLocks.onScreenVisible();
         }
     }
 
@@ -0,0 +1,187 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * AlarmBatchScheduler - Applies many alarm changes in one native pass
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * A server resync of 200 alarms used to be 200 bridge calls
+ * (200 JSON parses, 200 plugin tasks, 200 resolves). Now JS sends
+ * ONE array and this class does:
+ *
+ * 1. ONE query → current alarms from AlarmStore
+ * 2. Diff → unchanged alarms are skipped entirely, one-time alarms
+ *    whose time has passed are reported expired (never re-armed)
+ * 3. ONE transaction → all upserts + deletes
+ * 4. Arm / cancel only what actually changed
+ *
+ * In single-armed mode the heap head is re-armed once at the end.
+ */
+public class AlarmBatchScheduler {
+    private static final String TAG = "AlarmBatchScheduler";
+
+    public static final String STATUS_SCHEDULED = "scheduled";
+    public static final String STATUS_UNCHANGED = "unchanged";
+    public static final String STATUS_CANCELLED = "cancelled";
+    public static final String STATUS_EXPIRED = "expired";
+    public static final String STATUS_ERROR = "error";
+
+    /**
+     * Outcome for one alarm ID in a batch
+     */
+    public static class Result {
+        public final int id;
+        public final String status;
+        public final String error;
+
+        public Result(int id, String status, String error) {
+            this.id = id;
+            this.status = status;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Diff the given alarms against the store and apply the changes
+     *
+     * @param context Application context
+     * @param records Alarms to schedule (new or updated)
+     * @param cancelIds Alarm IDs to cancel
+     * @param replaceAll true = every stored alarm missing from records is cancelled
+     * @return per-alarm results (schedules first, then cancels)
+     */
+    public static List<Result> apply(
+        Context context,
+        Collection<AlarmRecord> records,
+        Collection<Integer> cancelIds,
+        boolean replaceAll
+    ) {
+        long start = System.currentTimeMillis();
+        AlarmStore store = AlarmStore.getInstance(context);
+
+        Map<Integer, AlarmRecord> existing = new HashMap<>();
+        for (AlarmRecord record : store.getAll()) {
+            existing.put(record.id, record);
+        }
+
+        // ═══════════════════════════════════════════════════════════════
+        // DIFF
+        // ═══════════════════════════════════════════════════════════════
+        List<AlarmRecord> changed = new ArrayList<>();
+        Set<Integer> incomingIds = new HashSet<>();
+        List<Result> results = new ArrayList<>();
+
+        long now = System.currentTimeMillis();
+        for (AlarmRecord record : records) {
+            incomingIds.add(record.id);
+            if (!record.isRepeating() && record.triggerAtMillis <= now) {
+                // Past one-time alarm (usually rang and was disabled by markFired):
+                // a resync still listing it must not make it ring again
+                results.add(new Result(record.id, STATUS_EXPIRED, null));
+                continue;
+            }
+            if (isSame(existing.get(record.id), record)) {
+                results.add(new Result(record.id, STATUS_UNCHANGED, null));
+            } else {
+                changed.add(record);
+            }
+        }
+
+        Set<Integer> deletes = new LinkedHashSet<>();
+        for (Integer alarmId : cancelIds) {
+            if (!incomingIds.contains(alarmId)) deletes.add(alarmId);
+        }
+        if (replaceAll) {
+            for (Integer alarmId : existing.keySet()) {
+                if (!incomingIds.contains(alarmId)) deletes.add(alarmId);
+            }
+        }
+
+        // ═══════════════════════════════════════════════════════════════
+        // APPLY (one transaction, then AlarmManager)
+        // ═══════════════════════════════════════════════════════════════
+        if (!store.applyBatch(changed, deletes)) {
+            for (AlarmRecord record : changed) {
+                results.add(new Result(record.id, STATUS_ERROR, "Failed to save alarm"));
+            }
+            for (Integer alarmId : deletes) {
+                results.add(new Result(alarmId, STATUS_ERROR, "Failed to delete alarm"));
+            }
+            return results;
+        }
+
+        NextAlarmScheduler scheduler = NextAlarmScheduler.isEnabled(context)
+            ? NextAlarmScheduler.getInstance(context)
+            : null;
+        if (scheduler != null) scheduler.beginBatch();
+
+        try {
+            for (AlarmRecord record : changed) {
+                results.add(AlarmSchedulerHelper.scheduleExactAlarm(context, record)
+                    ? new Result(record.id, STATUS_SCHEDULED, null)
+                    : new Result(record.id, STATUS_ERROR, "Failed to schedule alarm"));
+            }
+            for (Integer alarmId : deletes) {
+                AlarmSchedulerHelper.cancelAlarm(context, alarmId);
+                SnoozeManager.cancel(context, alarmId);
+                results.add(new Result(alarmId, STATUS_CANCELLED, null));
+            }
+        } finally {
+            if (scheduler != null) scheduler.endBatch();
+        }
+
+        Log.d(TAG, "✓ Batch: " + changed.size() + " scheduled, "
+            + (records.size() - changed.size()) + " unchanged / expired, "
+            + deletes.size() + " cancelled in " + (System.currentTimeMillis() - start) + "ms");
+        return results;
+    }
+
+    /**
+     * Whether the stored alarm already matches the requested one.
+     * Repeating alarms compare by rule: the stored trigger is the next
+     * occurrence, which the JS side does not know. A rule disabled because
+     * its COUNT / UNTIL ran out stays that way while JS sends the same rule.
+     */
+    private static boolean isSame(AlarmRecord stored, AlarmRecord requested) {
+        if (stored == null) return false;
+        if (!stored.enabled && !(requested.isRepeating() && isExhausted(stored))) return false;
+        if (!Objects.equals(stored.title, requested.title)
+            || !Objects.equals(stored.body, requested.body)
+            || !Objects.equals(stored.type, requested.type)
+            || !Objects.equals(stored.recurrence, requested.recurrence)
+            || !Objects.equals(stored.clipSource, requested.clipSource)
+            || stored.snoozeMinutes != requested.snoozeMinutes
+            || stored.maxSnoozes != requested.maxSnoozes) {
+            return false;
+        }
+        return requested.isRepeating() || stored.triggerAtMillis == requested.triggerAtMillis;
+    }
+
+    /**
+     * Stored repeating alarm has no fire left (COUNT used up or UNTIL passed)
+     */
+    private static boolean isExhausted(AlarmRecord stored) {
+        try {
+            AlarmRecurrence recurrence = AlarmRecurrence.parse(stored.recurrence);
+            return !recurrence.hasRemaining(stored.fireCount)
+                || recurrence.nextAfter(System.currentTimeMillis(), ZoneId.systemDefault()) <= 0;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package com.mypa.app;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.UserManager;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AlarmBootMirror - Device-protected copy of the next 24 hours of alarms
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * After a reboot, credential-encrypted storage (AlarmStore, every cache)
+ * stays locked until the user unlocks the phone once. BOOT_COMPLETED is
+ * only sent after that unlock - so an overnight reboot meant the morning
+ * alarm did not ring until someone unlocked the phone.
+ *
+ * Device-protected storage is readable right after boot. This class keeps
+ * a compact mirror of everything due in the next WINDOW there:
+ *
+ *   schedule changes (unlocked)  → requestSync(): mirror rewritten
+ *   LOCKED_BOOT_COMPLETED        → rearmLocked(): alarms + snoozes armed
+ *                                  straight from the mirror, no SQLite
+ *   alarm fires while locked     → AlarmReceiver rings from the extras,
+ *                                  recordLockedDelivery()
+ *   first unlock (BOOT_COMPLETED) → replayLockedDeliveries() marks those
+ *                                  fired, then the normal reschedule pass
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * FILE FORMAT (fixed records, sorted by alarm id):
+ * ═══════════════════════════════════════════════════════════════
+ *   header  magic | version | writtenAt | count | recordSize
+ *   record  id | flags | atMillis | type | title | body
+ *           (strings: length + UTF-8 bytes, truncated to a fixed slot;
+ *            FLAG_TITLE_CUT / FLAG_BODY_CUT mark a cut text)
+ *
+ * One read of a few KB and no parsing beyond fixed offsets, so the
+ * locked-boot pass finishes in a few milliseconds. Written with AtomicFile,
+ * a crash mid-write leaves the previous mirror intact.
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * RECEIVER FAST PATH:
+ * ═══════════════════════════════════════════════════════════════
+ * The same file is AlarmReceiver's read-only snapshot. find() maps it
+ * (MappedByteBuffer) and binary-searches the id instead of reading the
+ * alarm row. Only the dedup claim (one INSERT OR IGNORE, off the main
+ * thread) runs before the service starts with the snapshot fields; the
+ * fire bookkeeping follows. The service posts its notification from the same fields, then swaps in the
+ * full stored texts before any audio or speech starts (a cut text ends in
+ * "…" until then). The entry is only trusted if its time equals
+ * the fire's occurrence - a snapshot still waiting for its coalesced
+ * rewrite falls back to the store.
+ */
+public class AlarmBootMirror {
+    private static final String TAG = "AlarmBootMirror";
+
+    private static final String FILE_NAME = "alarm_mirror.bin";
+    private static final String DELIVERIES_FILE_NAME = "alarm_mirror_fired.bin";
+    // Both the app process and :alarm rewrite the mirror - FileLock on this file
+    private static final String LOCK_FILE_NAME = "alarm_mirror.lock";
+    private static final int MAGIC = 0x4D504131;  // "MPA1"
+    private static final int FILE_VERSION = 1;
+    static final int HEADER_SIZE = 24;
+
+    // Record layout (bytes)
+    static final int RECORD_SIZE = 256;
+    private static final int TYPE_SLOT = 16;
+    private static final int TITLE_SLOT = 96;
+    private static final int BODY_SLOT = 128;
+    // flags
+    static final int FLAG_SNOOZE = 1;
+    static final int FLAG_REPEATING = 2;
+    // Text did not fit its slot (read back with an ellipsis)
+    static final int FLAG_TITLE_CUT = 4;
+    static final int FLAG_BODY_CUT = 8;
+
+    // Alarms due further out are not mirrored (re-synced long before they ring)
+    static final long WINDOW_MILLIS = AlarmRescheduleReceiver.WINDOW_MILLIS;
+    // Schedule edits usually come in bursts (batch, reschedule pass)
+    private static final long SYNC_DELAY_MS = 500L;
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    // A sync is scheduled and has not started yet (requests while one RUNS queue another)
+    private static boolean syncQueued;
+    // In-process half of the writer lock (FileLock is per process, not per thread)
+    private static final Object syncLock = new Object();
+
+    /**
+     * True between boot and the first unlock: AlarmStore cannot be opened
+     */
+    public static boolean isLocked(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return false;
+        UserManager userManager = (UserManager) context.getSystemService(Context.USER_SERVICE);
+        return userManager != null && !userManager.isUserUnlocked();
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // WRITE (unlocked)
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * The schedule changed: rewrite the mirror shortly (edits are coalesced)
+     */
+    public static synchronized void requestSync(Context context) {
+        if (syncQueued) return;
+        syncQueued = true;
+        final Context appContext = context.getApplicationContext();
+        executor.schedule(() -> {
+            // Cleared before reading the store: a change from now on needs another run
+            synchronized (AlarmBootMirror.class) {
+                syncQueued = false;
+            }
+            sync(appContext);
+        }, SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Rewrite the mirror from AlarmStore now (background thread).
+     * Store read + file write run under one lock shared by all processes,
+     * so an older read can never overwrite a newer mirror.
+     */
+    public static void sync(Context context) {
+        // Locked: the store is unreadable - never replace a good mirror with an empty one
+        if (isLocked(context)) return;
+        synchronized (syncLock) {
+            File lockFile = new File(directory(context), LOCK_FILE_NAME);
+            try (RandomAccessFile lockAccess = new RandomAccessFile(lockFile, "rw");
+                 FileLock lock = lockAccess.getChannel().lock()) {
+                syncLocked(context);
+            } catch (Exception e) {
+                Log.e(TAG, "✗ Alarm mirror sync failed", e);
+            }
+        }
+    }
+
+    private static void syncLocked(Context context) {
+        long start = System.currentTimeMillis();
+        long windowEnd = start + WINDOW_MILLIS;
+        AlarmStore store = AlarmStore.getInstance(context);
+
+        List<AlarmRecord> records = new ArrayList<>();
+        for (AlarmRecord record : store.getDueBefore(windowEnd)) {
+            record.snoozeUntil = 0;
+            records.add(record);
+        }
+        for (AlarmRecord record : store.getPendingSnoozes()) {
+            if (record.snoozeUntil > windowEnd) continue;
+            AlarmRecord snooze = new AlarmRecord(record.id, record.title, record.body, record.type, 0, null);
+            snooze.snoozeUntil = record.snoozeUntil;
+            records.add(snooze);
+        }
+        write(context, records);
+        Log.d(TAG, "✓ Mirrored " + records.size() + " alarms in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private static void write(Context context, List<AlarmRecord> records) {
+        // Sorted by (id, snooze last) - lookups can binary-search the id
+        Collections.sort(records, (a, b) -> a.id != b.id
+            ? Integer.compare(a.id, b.id)
+            : Long.compare(a.snoozeUntil, b.snoozeUntil));
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + records.size() * RECORD_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(FILE_VERSION);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.putInt(records.size());
+        buffer.putInt(RECORD_SIZE);
+        for (AlarmRecord record : records) {
+            int base = buffer.position();
+            boolean snooze = record.snoozeUntil > 0;
+            int flags = (snooze ? FLAG_SNOOZE : 0) | (record.isRepeating() ? FLAG_REPEATING : 0);
+            buffer.putInt(record.id);
+            buffer.putInt(flags);
+            buffer.putLong(snooze ? record.snoozeUntil : record.triggerAtMillis);
+            putString(buffer, record.type, TYPE_SLOT);
+            if (putString(buffer, record.title, TITLE_SLOT)) flags |= FLAG_TITLE_CUT;
+            if (putString(buffer, record.body, BODY_SLOT)) flags |= FLAG_BODY_CUT;
+            buffer.putInt(base + 4, flags);
+            buffer.position(base + RECORD_SIZE);
+        }
+
+        AtomicFile file = file(context, FILE_NAME);
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            stream.write(buffer.array());
+            file.finishWrite(stream);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to write alarm mirror", e);
+            if (stream != null) file.failWrite(stream);
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // READ
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Every mirrored alarm; snooze entries carry snoozeUntil, alarms triggerAtMillis
+     */
+    static List<AlarmRecord> readAll(Context context) {
+        List<AlarmRecord> records = new ArrayList<>();
+        AtomicFile file = file(context, FILE_NAME);
+        if (!file.getBaseFile().exists()) return records;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(file.readFully());
+            int count = readHeader(buffer);
+            for (int i = 0; i < count; i++) {
+                records.add(readRecord(buffer, HEADER_SIZE + i * RECORD_SIZE));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to read alarm mirror", e);
+        }
+        return records;
+    }
+
+    /**
+     * Mirrored alarm (not snooze) entry of this id, or null.
+     * Receiver fast path: the file stays memory-mapped and is binary-searched
+     * by id - no SQLite, no parsing of anything but the one record.
+     */
+    static AlarmRecord find(Context context, int alarmId) {
+        ByteBuffer buffer = mapped(context);
+        if (buffer == null) return null;
+        int count = readHeader(buffer);
+
+        // Lowest index with id >= alarmId (the alarm entry sorts before its snooze)
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getInt(HEADER_SIZE + mid * RECORD_SIZE) < alarmId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low >= count) return null;
+        int base = HEADER_SIZE + low * RECORD_SIZE;
+        if (buffer.getInt(base) != alarmId || (buffer.getInt(base + 4) & FLAG_SNOOZE) != 0) return null;
+        return readRecord(buffer, base);
+    }
+
+    /**
+     * Read-only mapping of the current mirror. Mapped per lookup: AtomicFile
+     * replaces the file, so a mapping kept across writes would show old data.
+     */
+    private static ByteBuffer mapped(Context context) {
+        File file = new File(directory(context), FILE_NAME);
+        if (!file.exists()) return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to map alarm mirror", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return record count, or 0 if the header is not a mirror this build can read
+     */
+    static int readHeader(ByteBuffer buffer) {
+        if (buffer.limit() < HEADER_SIZE
+            || buffer.getInt(0) != MAGIC
+            || buffer.getInt(4) != FILE_VERSION
+            || buffer.getInt(20) != RECORD_SIZE) {
+            Log.w(TAG, "⚠ Unknown alarm mirror format - ignoring");
+            return 0;
+        }
+        int count = buffer.getInt(16);
+        return Math.max(0, Math.min(count, (buffer.limit() - HEADER_SIZE) / RECORD_SIZE));
+    }
+
+    static AlarmRecord readRecord(ByteBuffer buffer, int base) {
+        int id = buffer.getInt(base);
+        int flags = buffer.getInt(base + 4);
+        long atMillis = buffer.getLong(base + 8);
+        int offset = base + 16;
+        String type = getString(buffer, offset, TYPE_SLOT);
+        String title = getString(buffer, offset += TYPE_SLOT, TITLE_SLOT);
+        String body = getString(buffer, offset + TITLE_SLOT, BODY_SLOT);
+        // Cut texts are only a placeholder until the service reads the store row
+        if ((flags & FLAG_TITLE_CUT) != 0) title += "…";
+        if ((flags & FLAG_BODY_CUT) != 0) body += "…";
+
+        boolean snooze = (flags & FLAG_SNOOZE) != 0;
+        AlarmRecord record = new AlarmRecord(id, title, body, type, snooze ? 0 : atMillis, null);
+        if (snooze) record.snoozeUntil = atMillis;
+        return record;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // LOCKED BOOT
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * LOCKED_BOOT_COMPLETED: arm the mirrored alarms and snoozes with the same
+     * PendingIntent identities the unlocked pass uses, so that pass simply
+     * replaces them. Strategy is fixed to setAlarmClock() - the measured choice
+     * lives in AlarmStore. Duplicates with single-armed mode's heap alarm are
+     * dropped by AlarmDeliveryDedup after unlock.
+     *
+     * @return number of alarms armed
+     */
+    public static int rearmLocked(Context context) {
+        long start = System.currentTimeMillis();
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) return 0;
+
+        int armed = 0;
+        for (AlarmRecord record : readAll(context)) {
+            boolean snooze = record.snoozeUntil > 0;
+            long at = snooze ? record.snoozeUntil : record.triggerAtMillis;
+            if (at <= start) {
+                // Rang while the phone was off - the unlocked pass decides on older ones
+                if (start - at > AlarmRescheduleReceiver.MISSED_GRACE_MILLIS) continue;
+                at = start + 1000L;
+            }
+
+            Intent intent = new Intent(context, AlarmReceiver.class);
+            if (snooze) intent.setAction(SnoozeManager.ACTION_SNOOZE_FIRE);
+            record.writeTo(intent);
+            try {
+                AlarmSchedulerHelper.armWithStrategy(context, alarmManager, intent, record.id, at,
+                    AlarmStrategySelector.STRATEGY_ALARM_CLOCK);
+                armed++;
+            } catch (Exception e) {
+                Log.e(TAG, "✗ Failed to arm alarm " + record.id + " before unlock", e);
+            }
+        }
+        Log.d(TAG, "✓ Locked boot: armed " + armed + " alarms in " + (System.currentTimeMillis() - start) + "ms");
+        return armed;
+    }
+
+    /**
+     * An alarm rang before the first unlock (AlarmStore could not record it)
+     */
+    static synchronized void recordLockedDelivery(Context context, int alarmId, long occurrenceAtMillis,
+                                                  boolean snooze) {
+        File file = new File(directory(context), DELIVERIES_FILE_NAME);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true))) {
+            out.writeInt(alarmId);
+            out.writeLong(occurrenceAtMillis);
+            out.writeBoolean(snooze);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to record locked delivery of alarm " + alarmId, e);
+        }
+    }
+
+    /**
+     * First pass after unlock: alarms that rang while locked are marked fired
+     * and claimed, so the reschedule pass does not ring them a second time.
+     */
+    static synchronized void replayLockedDeliveries(Context context) {
+        if (isLocked(context)) return;
+        File file = new File(directory(context), DELIVERIES_FILE_NAME);
+        if (!file.exists()) return;
+
+        int replayed = 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            AlarmStore store = AlarmStore.getInstance(context);
+            while (in.available() >= 13) {
+                int alarmId = in.readInt();
+                long occurrenceAt = in.readLong();
+                boolean snooze = in.readBoolean();
+                if (snooze) {
+                    AlarmRecord record = store.get(alarmId);
+                    if (record != null) SnoozeManager.onSnoozeFired(context, record);
+                } else {
+                    store.markFired(alarmId, occurrenceAt);
+                }
+                AlarmDeliveryDedup.claim(context, alarmId, occurrenceAt,
+                    snooze ? AlarmDeliveryDedup.SOURCE_SNOOZE : AlarmDeliveryDedup.SOURCE_ALARM);
+                replayed++;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to replay locked deliveries", e);
+        }
+        if (!file.delete()) {
+            Log.w(TAG, "⚠ Could not delete " + file);
+        }
+        Log.d(TAG, "✓ Replayed " + replayed + " alarms that rang before unlock");
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // HELPERS
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Device-protected files dir (readable before the first unlock)
+     */
+    static File directory(Context context) {
+        Context storage = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+            ? context.createDeviceProtectedStorageContext()
+            : context;
+        return storage.getFilesDir();
+    }
+
+    static AtomicFile file(Context context, String name) {
+        return new AtomicFile(new File(directory(context), name));
+    }
+
+    /**
+     * @return true if the value had to be cut to fit the slot
+     */
+    private static boolean putString(ByteBuffer buffer, String value, int slot) {
+        int start = buffer.position();
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, slot - 2);
+        // Do not cut a multi-byte character in half
+        while (length > 0 && length < bytes.length && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+        buffer.position(start + slot);
+        return length < bytes.length;
+    }
+
+    private static String getString(ByteBuffer buffer, int offset, int slot) {
+        int length = Math.min(buffer.getShort(offset), slot - 2);
+        byte[] bytes = new byte[Math.max(0, length)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
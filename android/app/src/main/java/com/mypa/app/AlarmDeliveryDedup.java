@@ -0,0 +1,135 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * AlarmDeliveryDedup - Rings each alarm occurrence exactly once
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * One reminder can reach this device through several paths:
+ *
+ *   - FullScreenAlarmPlugin alarm (AlarmManager → AlarmReceiver)
+ *   - single-armed heap delivery (NextAlarmScheduler)
+ *   - snooze re-arm (SnoozeManager.rearmPending after boot / update)
+ *   - LocalNotifications timed notification, server push (JS side)
+ *
+ * Nothing stopped two of them from ringing the same occurrence, and a
+ * late duplicate restarted AlarmRingingService on top of a dismissed alarm.
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * HOW IT WORKS:
+ * ═══════════════════════════════════════════════════════════════
+ * Key = (alarm id, occurrence epoch). Every trigger path calls claim()
+ * at its entry; the first caller wins, every later one is dropped.
+ *
+ *   1. In-memory map (per process)  → repeat duplicate dropped in O(1)
+ *   2. AlarmStore "deliveries" table → first claim per process; the
+ *      primary key makes it atomic between the app and :alarm process
+ *
+ * Entries older than WINDOW_MILLIS are evicted from both. Snooze fires
+ * use the snooze time as occurrence, so a snooze still rings again.
+ */
+public class AlarmDeliveryDedup {
+    private static final String TAG = "AlarmDeliveryDedup";
+
+    // Scheduled occurrence, set on every armed Intent (AlarmSchedulerHelper.armWithStrategy)
+    public static final String EXTRA_OCCURRENCE_AT = "alarm_occurrence_at";
+
+    public static final String SOURCE_ALARM = "alarm";
+    public static final String SOURCE_HEAP = "heap";
+    public static final String SOURCE_SNOOZE = "snooze";
+    public static final String SOURCE_LOCAL_NOTIFICATION = "localNotification";
+    public static final String SOURCE_PUSH = "push";
+
+    // Slowest path we still expect a duplicate from (push after a long offline stretch)
+    static final long WINDOW_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int MAX_ENTRIES = 256;
+
+    /**
+     * Delivered occurrence (in-memory copy of one "deliveries" row)
+     */
+    private static class Delivery {
+        final long deliveredAt;
+        final String source;
+
+        Delivery(long deliveredAt, String source) {
+            this.deliveredAt = deliveredAt;
+            this.source = source;
+        }
+    }
+
+    // Insertion order = delivery order, so the eldest entry is also the oldest
+    private static final LinkedHashMap<String, Delivery> recent =
+        new LinkedHashMap<String, Delivery>(64, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Delivery> eldest) {
+                return size() > MAX_ENTRIES
+                    || eldest.getValue().deliveredAt < System.currentTimeMillis() - WINDOW_MILLIS;
+            }
+        };
+
+    /**
+     * Claim an occurrence for delivery. Call at the entry of a trigger path.
+     *
+     * @param occurrenceAtMillis scheduled time of this occurrence (0 = unknown, never deduped)
+     * @param source SOURCE_*
+     * @return true if the caller should ring, false if this occurrence already rang
+     */
+    public static boolean claim(Context context, int alarmId, long occurrenceAtMillis, String source) {
+        if (alarmId < 0 || occurrenceAtMillis <= 0) return true;
+
+        long now = System.currentTimeMillis();
+        String key = key(alarmId, occurrenceAtMillis);
+        synchronized (recent) {
+            Delivery previous = recent.get(key);
+            if (previous != null && previous.deliveredAt >= now - WINDOW_MILLIS) {
+                Log.w(TAG, "⚠ Duplicate " + source + " for alarm " + alarmId + " @" + occurrenceAtMillis
+                    + " dropped (already delivered by " + previous.source + ")");
+                return false;
+            }
+        }
+
+        AlarmStore store = AlarmStore.getInstance(context);
+        boolean claimed = store.claimDelivery(alarmId, occurrenceAtMillis, now, source, now - WINDOW_MILLIS);
+        String winner = claimed ? source : store.getDeliverySource(alarmId, occurrenceAtMillis);
+        synchronized (recent) {
+            recent.put(key, new Delivery(now, winner));
+        }
+        if (!claimed) {
+            Log.w(TAG, "⚠ Duplicate " + source + " for alarm " + alarmId + " @" + occurrenceAtMillis
+                + " dropped (delivered by " + winner + " in another process)");
+        }
+        return claimed;
+    }
+
+    /**
+     * In-memory half of claim() only: no I/O, safe on the main thread.
+     * True if this process already delivered the occurrence.
+     */
+    public static boolean seen(int alarmId, long occurrenceAtMillis) {
+        if (alarmId < 0 || occurrenceAtMillis <= 0) return false;
+        synchronized (recent) {
+            Delivery previous = recent.get(key(alarmId, occurrenceAtMillis));
+            return previous != null && previous.deliveredAt >= System.currentTimeMillis() - WINDOW_MILLIS;
+        }
+    }
+
+    /**
+     * Occurrence an armed Intent was scheduled for, or the fallback if untagged
+     */
+    public static long occurrenceOf(Intent intent, long fallbackMillis) {
+        long occurrence = intent.getLongExtra(EXTRA_OCCURRENCE_AT, 0);
+        return occurrence > 0 ? occurrence : fallbackMillis;
+    }
+
+    private static String key(int alarmId, long occurrenceAtMillis) {
+        return alarmId + "@" + occurrenceAtMillis;
+    }
+}
@@ -0,0 +1,308 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AlarmEventLog - Append-only log of what happened to every ring (adherence)
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * For medicine alarms the question is "was the dose acknowledged?".
+ * Fire / dismiss / snooze happen in the :alarm process, often while
+ * the WebView never opens - so nothing reached JS or the server.
+ * Now every step is appended here natively and AlarmEventUploader
+ * sends it to the server in the background:
+ *
+ *   AlarmReceiver        → FIRE     (scheduled or snoozed ring started)
+ *   AlarmRingingService  → DISMISS / SNOOZE (notification or AlarmActivity)
+ *                        → TIMEOUT  (rang RING_TIMEOUT without an answer)
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * FILE (device-protected storage, so fires before the first unlock count):
+ * ═══════════════════════════════════════════════════════════════
+ *   header  16 bytes: magic, version, record size, logId (random per file)
+ *   record  24 bytes: atMillis, refMillis, alarmId, event, source, snoozeCount
+ *
+ * refMillis: FIRE → scheduled time of the occurrence (or snooze time),
+ * DISMISS / SNOOZE / TIMEOUT → when that ring started. The server keys
+ * events by (logId, seq); seq = record index, so retries are idempotent.
+ *
+ * Callers never touch the disk: records go into a buffer that ONE
+ * background thread writes to the append-mode channel in a single
+ * write(). fsync runs at most every FSYNC_INTERVAL_MILLIS, and right
+ * away when ringing ends (flush). A file fully uploaded and big enough
+ * is deleted and a new one (new logId) is started.
+ *
+ * Writers and AlarmEventUploader all run in the :alarm process.
+ */
+public class AlarmEventLog {
+    private static final String TAG = "AlarmEventLog";
+
+    public static final byte EVENT_FIRE = 1;
+    public static final byte EVENT_DISMISS = 2;
+    public static final byte EVENT_SNOOZE = 3;
+    public static final byte EVENT_TIMEOUT = 4;
+
+    public static final byte SOURCE_SYSTEM = 0;        // receiver / service itself
+    public static final byte SOURCE_NOTIFICATION = 1;  // notification action
+    public static final byte SOURCE_ACTIVITY = 2;      // AlarmActivity button
+
+    // Intent extra carrying SOURCE_* into AlarmRingingService
+    public static final String EXTRA_SOURCE = "event_source";
+
+    private static final String FILE_NAME = "alarm_events.log";
+    private static final int MAGIC = 0x4D50454C;  // "MPEL"
+    private static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 24;
+
+    // Events buffered between writes (~2700); more is dropped with a warning
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final long FSYNC_INTERVAL_MILLIS = 5000L;
+    // Fully uploaded file is replaced once it is this big
+    private static final long ROTATE_BYTES = 256 * 1024L;
+
+    private static final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor();
+    private static final ByteBuffer pending = ByteBuffer.allocate(BUFFER_BYTES);
+    private static boolean writeQueued;
+    private static boolean fsyncQueued;
+    // Owned by the io thread
+    private static FileChannel channel;
+
+    /**
+     * One logged event, as read back for upload
+     */
+    public static class Event {
+        public long seq;
+        public long atMillis;
+        public long refMillis;
+        public int alarmId;
+        public byte event;
+        public byte source;
+        public int snoozeCount;
+    }
+
+    /**
+     * Events read from the log plus where the next read starts
+     */
+    public static class Batch {
+        public long logId;
+        public final List<Event> events = new ArrayList<>();
+        public long endOffset;
+        // End of the last complete record in the file
+        public long availableEnd;
+    }
+
+    public static String eventName(byte event) {
+        switch (event) {
+            case EVENT_FIRE: return "fire";
+            case EVENT_DISMISS: return "dismiss";
+            case EVENT_SNOOZE: return "snooze";
+            case EVENT_TIMEOUT: return "timeout";
+            default: return "unknown";
+        }
+    }
+
+    public static String sourceName(byte source) {
+        switch (source) {
+            case SOURCE_NOTIFICATION: return "notification";
+            case SOURCE_ACTIVITY: return "activity";
+            default: return "system";
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // WRITING
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Append one event. Never blocks on I/O - safe on the fire path.
+     */
+    public static void record(Context context, int alarmId, byte event, byte source,
+                              long refMillis, int snoozeCount) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (pending) {
+            if (pending.remaining() < RECORD_SIZE) {
+                Log.w(TAG, "⚠ Event buffer full - dropped " + eventName(event) + " of alarm " + alarmId);
+                return;
+            }
+            pending.putLong(System.currentTimeMillis());
+            pending.putLong(refMillis);
+            pending.putInt(alarmId);
+            pending.put(event);
+            pending.put(source);
+            pending.putShort((short) Math.min(snoozeCount, Short.MAX_VALUE));
+            if (writeQueued) return;
+            writeQueued = true;
+        }
+        io.execute(() -> write(appContext));
+    }
+
+    /**
+     * Write and fsync now (ringing ended - the process may go away soon)
+     */
+    public static void flush(Context context) {
+        final Context appContext = context.getApplicationContext();
+        io.execute(() -> {
+            write(appContext);
+            fsync();
+        });
+    }
+
+    private static void write(Context context) {
+        byte[] bytes;
+        synchronized (pending) {
+            writeQueued = false;
+            pending.flip();
+            bytes = new byte[pending.remaining()];
+            pending.get(bytes);
+            pending.clear();
+        }
+        if (bytes.length == 0) return;
+
+        try {
+            FileChannel out = channel(context);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            Log.d(TAG, "✓ " + (bytes.length / RECORD_SIZE) + " event(s) written");
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to write " + (bytes.length / RECORD_SIZE) + " event(s)", e);
+            return;
+        }
+        if (!fsyncQueued) {
+            fsyncQueued = true;
+            io.schedule(AlarmEventLog::fsync, FSYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        AlarmEventUploader.schedule(context);
+    }
+
+    private static void fsync() {
+        fsyncQueued = false;
+        if (channel == null) return;
+        try {
+            channel.force(false);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ fsync failed", e);
+        }
+    }
+
+    private static FileChannel channel(Context context) throws Exception {
+        if (channel != null) return channel;
+        File file = new File(AlarmBootMirror.directory(context), FILE_NAME);
+        FileChannel out = new FileOutputStream(file, true).getChannel();
+        if (out.size() < HEADER_SIZE) {
+            // New (or torn) file: start over with a fresh log ID
+            out.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) RECORD_SIZE);
+            header.putLong(UUID.randomUUID().getMostSignificantBits());
+            header.flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            out.force(false);
+            Log.d(TAG, "✓ New event log started");
+        } else {
+            // Killed in the middle of a write: drop the partial record so later ones stay aligned
+            long aligned = HEADER_SIZE + (out.size() - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+            if (aligned != out.size()) {
+                Log.w(TAG, "⚠ Partial event record dropped");
+                out.truncate(aligned);
+            }
+        }
+        channel = out;
+        return channel;
+    }
+
+    /**
+     * Everything up to uploadedOffset is on the server: start a new file if this one is big.
+     * Runs on the io thread, so no write can slip in between the check and the delete.
+     */
+    static void compactAsync(Context context, long logId, long uploadedOffset) {
+        final Context appContext = context.getApplicationContext();
+        io.execute(() -> {
+            write(appContext);
+            File file = new File(AlarmBootMirror.directory(appContext), FILE_NAME);
+            if (file.length() < ROTATE_BYTES || file.length() != uploadedOffset) return;
+            Batch header = read(appContext, uploadedOffset, 0);
+            if (header == null || header.logId != logId) return;
+            try {
+                if (channel != null) channel.close();
+            } catch (Exception e) {
+                Log.w(TAG, "⚠ Close event log failed");
+            }
+            channel = null;
+            if (file.delete()) {
+                Log.d(TAG, "✓ Uploaded event log rotated (" + uploadedOffset + " bytes)");
+            }
+        });
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // READING (AlarmEventUploader)
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Up to maxEvents complete records starting at fromOffset
+     * (< HEADER_SIZE = from the first record). Null if there is no valid log.
+     */
+    static Batch read(Context context, long fromOffset, int maxEvents) {
+        File file = new File(AlarmBootMirror.directory(context), FILE_NAME);
+        if (!file.exists()) return null;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < HEADER_SIZE) return null;
+            if (in.readInt() != MAGIC || in.readShort() != VERSION || in.readShort() != RECORD_SIZE) {
+                Log.e(TAG, "✗ Event log header unreadable");
+                return null;
+            }
+            Batch batch = new Batch();
+            batch.logId = in.readLong();
+
+            long offset = Math.max(fromOffset, HEADER_SIZE);
+            // Only whole records - a write may be in progress at the end
+            batch.availableEnd = HEADER_SIZE + (in.length() - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+            long end = Math.min(batch.availableEnd, offset + (long) maxEvents * RECORD_SIZE);
+            if (end > offset) {
+                byte[] bytes = new byte[(int) (end - offset)];
+                in.seek(offset);
+                in.readFully(bytes);
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                long seq = (offset - HEADER_SIZE) / RECORD_SIZE;
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    Event event = new Event();
+                    event.seq = seq++;
+                    event.atMillis = buffer.getLong();
+                    event.refMillis = buffer.getLong();
+                    event.alarmId = buffer.getInt();
+                    event.event = buffer.get();
+                    event.source = buffer.get();
+                    event.snoozeCount = buffer.getShort();
+                    batch.events.add(event);
+                }
+            }
+            batch.endOffset = Math.max(end, offset);
+            return batch;
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to read event log", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.mypa.app;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * AlarmEventUploader - Sends AlarmEventLog to the server in the background
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * Adherence events are written in the :alarm process; the WebView may
+ * not open for days. A JobScheduler job (network required, persisted
+ * across reboots) uploads them instead:
+ *
+ *   event written → job scheduled (if none pending), BATCH_DELAY later
+ *   job           → read up to MAX_BATCH events after the uploaded offset
+ *                 → POST gzip JSON {logId, events[]} (Content-Encoding: gzip)
+ *                 → 2xx: offset saved, next batch; else retry with
+ *                   exponential backoff (jobFinished(params, true))
+ *
+ * Endpoint URL + headers (e.g. the session cookie) come from JS through
+ * FullScreenAlarmPlugin.configureEventUpload(); nothing is sent until then.
+ * Events carry (logId, seq), so a batch sent twice after a lost response
+ * is de-duplicated by the server.
+ */
+public class AlarmEventUploader extends JobService {
+    private static final String TAG = "AlarmEventUploader";
+
+    static final String SETTING_URL = "event_upload_url";
+    static final String SETTING_HEADERS = "event_upload_headers";
+    // "logId:offset" of the first event not yet on the server
+    static final String SETTING_OFFSET = "event_upload_offset";
+
+    private static final int JOB_ID = 0x7FFF0003;
+    // Wait a little so a fire and its dismiss usually travel together
+    private static final long BATCH_DELAY_MILLIS = 60 * 1000L;
+    private static final long BACKOFF_MILLIS = 30 * 1000L;
+    private static final int MAX_BATCH = 500;
+    private static final int TIMEOUT_MS = 15000;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean stopped;
+
+    /**
+     * Make sure an upload job is pending (no-op until an endpoint is configured)
+     */
+    public static void schedule(Context context) {
+        if (AlarmBootMirror.isLocked(context)) return;  // runs again after unlock
+        try {
+            if (AlarmStore.getInstance(context).getSetting(SETTING_URL, "").isEmpty()) return;
+            JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+            if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) return;
+
+            JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, AlarmEventUploader.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setMinimumLatency(BATCH_DELAY_MILLIS)
+                .setBackoffCriteria(BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setPersisted(true)
+                .build();
+            scheduler.schedule(job);
+            Log.d(TAG, "✓ Event upload scheduled");
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to schedule event upload", e);
+        }
+    }
+
+    /**
+     * Save endpoint + headers (empty URL = uploads off) and upload what is pending
+     */
+    public static void configure(Context context, String url, JSONObject headers) {
+        AlarmStore store = AlarmStore.getInstance(context);
+        store.putSetting(SETTING_URL, url != null ? url : "");
+        store.putSetting(SETTING_HEADERS, headers != null ? headers.toString() : "{}");
+        // New endpoint / credentials: drop a job waiting in backoff for the old ones
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler != null) scheduler.cancel(JOB_ID);
+        if (url == null || url.isEmpty()) {
+            Log.d(TAG, "Event upload disabled");
+            return;
+        }
+        schedule(context);
+    }
+
+    /**
+     * Events in the log not uploaded yet
+     */
+    public static int pendingCount(Context context) {
+        long[] position = uploadedPosition(context);
+        AlarmEventLog.Batch batch = AlarmEventLog.read(context, 0, 0);
+        if (batch == null) return 0;
+        long from = batch.logId == position[0] ? position[1] : AlarmEventLog.HEADER_SIZE;
+        return (int) Math.max(0, (batch.availableEnd - from) / AlarmEventLog.RECORD_SIZE);
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // JOB
+    // ═══════════════════════════════════════════════════════════════
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        stopped = false;
+        final Context context = getApplicationContext();
+        executor.execute(() -> {
+            boolean done = false;
+            try {
+                done = uploadAll(context);
+            } catch (Exception e) {
+                Log.e(TAG, "✗ Event upload failed", e);
+            }
+            // Events written while this run was finishing → go again (backoff delay)
+            jobFinished(params, !stopped && (!done || pendingCount(context) > 0));
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Network lost / quota: what is sent stays sent, the rest retries
+        stopped = true;
+        return true;
+    }
+
+    /**
+     * @return true when everything written so far is on the server
+     */
+    private boolean uploadAll(Context context) throws Exception {
+        AlarmStore store = AlarmStore.getInstance(context);
+        String url = store.getSetting(SETTING_URL, "");
+        if (url.isEmpty()) return true;
+        JSONObject headers = new JSONObject(store.getSetting(SETTING_HEADERS, "{}"));
+
+        long[] position = uploadedPosition(context);
+        long offset = position[1];
+        int sent = 0;
+        while (!stopped) {
+            AlarmEventLog.Batch batch = AlarmEventLog.read(context, offset, MAX_BATCH);
+            if (batch == null) return true;
+            // New log file since the last upload: start at its first record
+            if (batch.logId != position[0]) {
+                position[0] = batch.logId;
+                offset = AlarmEventLog.HEADER_SIZE;
+                batch = AlarmEventLog.read(context, offset, MAX_BATCH);
+                if (batch == null) return true;
+            }
+            if (batch.events.isEmpty()) {
+                AlarmEventLog.compactAsync(context, batch.logId, offset);
+                if (sent > 0) Log.d(TAG, "✓ " + sent + " events uploaded");
+                return true;
+            }
+
+            int status = post(url, headers, toJson(batch));
+            if (status < 200 || status >= 300) {
+                Log.w(TAG, "⚠ Event upload rejected (HTTP " + status + ") - retrying later");
+                return false;
+            }
+            offset = batch.endOffset;
+            sent += batch.events.size();
+            store.putSetting(SETTING_OFFSET, batch.logId + ":" + offset);
+        }
+        return false;
+    }
+
+    private static JSONObject toJson(AlarmEventLog.Batch batch) throws Exception {
+        JSONArray events = new JSONArray();
+        for (AlarmEventLog.Event event : batch.events) {
+            JSONObject item = new JSONObject();
+            item.put("seq", event.seq);
+            item.put("alarmId", event.alarmId);
+            item.put("event", AlarmEventLog.eventName(event.event));
+            item.put("source", AlarmEventLog.sourceName(event.source));
+            item.put("atMillis", event.atMillis);
+            item.put("refMillis", event.refMillis);
+            item.put("snoozeCount", event.snoozeCount);
+            events.put(item);
+        }
+        JSONObject body = new JSONObject();
+        body.put("logId", Long.toHexString(batch.logId));
+        body.put("platform", "android");
+        body.put("sdk", Build.VERSION.SDK_INT);
+        body.put("events", events);
+        return body;
+    }
+
+    private static int post(String url, JSONObject headers, JSONObject body) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(body.toString().getBytes("UTF-8"));
+        }
+        byte[] payload = bytes.toByteArray();
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(payload.length);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            Iterator<String> keys = headers.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                connection.setRequestProperty(key, headers.optString(key, ""));
+            }
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(payload);
+            }
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * {logId, offset} of the first event not on the server yet ({0, 0} = nothing uploaded)
+     */
+    private static long[] uploadedPosition(Context context) {
+        String value = AlarmStore.getInstance(context).getSetting(SETTING_OFFSET, "");
+        int colon = value.indexOf(':');
+        if (colon > 0) {
+            try {
+                return new long[]{
+                    Long.parseLong(value.substring(0, colon)),
+                    Long.parseLong(value.substring(colon + 1))
+                };
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "⚠ Bad upload offset '" + value + "' - starting over");
+            }
+        }
+        return new long[]{0, 0};
+    }
+}
@@ -0,0 +1,164 @@
+package com.mypa.app;
+
+import android.app.Notification;
+import android.content.Context;
+import android.util.Log;
+import androidx.core.app.NotificationCompat;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * AlarmNotificationCache - Alarm notifications built at schedule time, patched at fire time
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * Every fire used to build the notification from scratch inside the
+ * 5-second startForeground() deadline: a new SimpleDateFormat, three
+ * PendingIntents (open / dismiss / snooze), the full-screen intent,
+ * actions and style. On a slow device that is a noticeable slice of
+ * the deadline, and all of it is known long before the alarm rings.
+ *
+ * Now one template per alarm is built ahead of the fire, in the :alarm
+ * process that renders it (a template built in the app process would
+ * never be seen there):
+ *
+ *   warm-up / fired repeating alarm → prepare(): channel + builder with
+ *               PendingIntents, actions, full-screen intent and style
+ *   fire      → render(): set the time text, build() - nothing else
+ *   cancel    → evict()
+ *
+ * A template only matches while title, body and the Snooze action are
+ * unchanged; otherwise it is rebuilt (and cached for the next render).
+ * Templates hold nothing of a single fire (no fireSeq), so any fire of
+ * the alarm can reuse them. Several alarms ringing together (InboxStyle)
+ * are not cached - rare. A cold process without a warm-up simply builds
+ * the template on the first render.
+ */
+public class AlarmNotificationCache {
+    private static final String TAG = "AlarmNotificationCache";
+
+    // Scheduled alarms whose template is kept (least recently used dropped)
+    private static final int MAX_TEMPLATES = 16;
+
+    private static final Map<Integer, Template> templates =
+        new LinkedHashMap<Integer, Template>(MAX_TEMPLATES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Template> eldest) {
+                return size() > MAX_TEMPLATES;
+            }
+        };
+
+    // One formatter for every render, rebuilt only when the locale changes
+    private static SimpleDateFormat timeFormat;
+    private static Locale timeLocale;
+
+    /**
+     * Single-alarm notification skeleton - everything but the time text
+     */
+    private static final class Template {
+        final int alarmId;
+        final String title;
+        final String body;
+        final boolean snoozeAllowed;
+        final NotificationCompat.Builder builder;
+        final NotificationCompat.BigTextStyle style = new NotificationCompat.BigTextStyle();
+
+        Template(Context context, RingSession head) {
+            alarmId = head.alarmId;
+            title = head.title;
+            body = head.body;
+            snoozeAllowed = head.snoozeAllowed;
+            builder = AlarmRingingService.newNotificationBuilder(context, head)
+                .setContentTitle(title)
+                .setStyle(style);
+        }
+
+        boolean matches(RingSession head) {
+            return alarmId == head.alarmId
+                && snoozeAllowed == head.snoozeAllowed
+                && title.equals(head.title)
+                && body.equals(head.body);
+        }
+    }
+
+    /**
+     * Build the notification template of an upcoming alarm off the fire path.
+     * Call in the :alarm process - templates are per process.
+     */
+    public static void prepare(Context context, AlarmRecord record) {
+        int alarmId = record.id;
+        try {
+            AlarmRingingService.createNotificationChannel(context);
+            RingSession head = new RingSession(record, -1, 0);
+            synchronized (AlarmNotificationCache.class) {
+                Template template = templates.get(alarmId);
+                if (template != null && template.matches(head)) return;
+                templates.put(alarmId, new Template(context, head));
+            }
+            Log.d(TAG, "✓ Notification template ready for alarm " + alarmId);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to prepare notification of alarm " + alarmId, e);
+        }
+    }
+
+    /**
+     * Notification of ONE ringing alarm: cached template + the time text
+     *
+     * @param head ringing alarm, null = generic "Alarm" (not cached)
+     */
+    static synchronized Notification render(Context context, RingSession head, long shownAtMillis) {
+        if (head == null) {
+            head = new RingSession(-1, null, null, null, null, -1, 0, 0, true, 0);
+        }
+        Template template = templates.get(head.alarmId);
+        boolean hit = template != null && template.matches(head);
+        if (!hit) {
+            template = new Template(context, head);
+            if (head.alarmId != -1) templates.put(head.alarmId, template);
+        }
+
+        String text = contentText(shownAtMillis, head.body);
+        template.builder
+            .setWhen(shownAtMillis)
+            .setContentText(text);
+        template.style.bigText(text);
+
+        Log.d(TAG, "✓ Notification " + (hit ? "from template" : "built") + ": " + head.title);
+        return template.builder.build();
+    }
+
+    /**
+     * Alarm cancelled - its template is no longer needed
+     */
+    public static synchronized void evict(int alarmId) {
+        templates.remove(alarmId);
+    }
+
+    /**
+     * "07:30 AM • Take 1 tablet" - the line under the alarm title
+     */
+    static String contentText(long shownAtMillis, String body) {
+        String text = formatTime(shownAtMillis);
+        if (body != null && !body.isEmpty()) {
+            text += " • " + body;
+        }
+        return text;
+    }
+
+    private static synchronized String formatTime(long millis) {
+        Locale locale = Locale.getDefault();
+        if (timeFormat == null || !locale.equals(timeLocale)) {
+            timeFormat = new SimpleDateFormat("hh:mm a", locale);
+            timeLocale = locale;
+        }
+        // Time zone may change while the process lives (travel)
+        timeFormat.setTimeZone(TimeZone.getDefault());
+        return timeFormat.format(new Date(millis));
+    }
+}
@@ -0,0 +1,357 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFocusRequest;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.media.VolumeShaper;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AlarmPlayback - Audio focus, volume ramps and tone / speech sequencing
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * The service started the looping tone at full volume with no audio
+ * focus, and spoke the alarm with ONE speech file on a separate player,
+ * jumping the tone volume with setVolume(). Now one orchestrator owns
+ * the whole sequence:
+ *
+ *   start    → AUDIOFOCUS_GAIN_TRANSIENT (other apps pause / duck)
+ *   tone     → fades in with a VolumeShaper
+ *   speech   → tone ramps down → title → medicine → dosage … (one
+ *              prepared player per segment, chained with
+ *              setNextMediaPlayer() so there is no gap between them)
+ *              → tone ramps back up → pause → repeat
+ *   focus lost (call) → tone ducked, restored when focus returns
+ *
+ * All players share ONE audio session (audioSessionId()), set by
+ * openAlarmSound / the fallback chain before the data source, so tone
+ * and speech are a single stream to the system. Speech players are
+ * prepared once per ring and re-prepared in the pause between repeats,
+ * never recreated per segment.
+ *
+ * VolumeShaper needs Android 8.0; older devices get plain setVolume().
+ */
+public class AlarmPlayback {
+    private static final String TAG = "AlarmPlayback";
+
+    // Tone fade-in at ring start
+    private static final float FADE_IN_FROM = 0.3f;
+    private static final long FADE_IN_MS = 5000L;
+    // Tone under speech / while another app holds focus
+    private static final float DUCKED_VOLUME = 0.2f;
+    private static final long DUCK_RAMP_MS = 300L;
+    // Pause between spoken repeats
+    private static final long SPEECH_REPEAT_GAP_MS = 4000L;
+
+    private static int audioSessionId;
+
+    private final Context context;
+    private final Handler handler;
+    private final AudioManager audioManager;
+    private AudioFocusRequest focusRequest;
+    private boolean hasFocus;
+    private boolean focusLost;
+
+    private MediaPlayer tone;
+    private VolumeShaper toneShaper;
+    private boolean ducked;
+
+    private final List<MediaPlayer> speech = new ArrayList<>();
+    private int speechPrepared;
+    private boolean speechStarted;
+    private boolean speaking;
+
+    public AlarmPlayback(Context context, Handler handler) {
+        this.context = context;
+        this.handler = handler;
+        this.audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    }
+
+    /**
+     * One audio session for every alarm player in this process
+     */
+    static synchronized int audioSessionId(Context context) {
+        if (audioSessionId == 0) {
+            AudioManager am = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+            if (am != null) {
+                audioSessionId = am.generateAudioSessionId();
+            }
+        }
+        return audioSessionId;
+    }
+
+    /**
+     * Put a new (idle) player on the shared session - before setDataSource()
+     */
+    static void attach(Context context, MediaPlayer player) {
+        int id = audioSessionId(context);
+        if (id > 0) {
+            try {
+                player.setAudioSessionId(id);
+            } catch (Exception e) {
+                Log.w(TAG, "⚠ Could not join audio session " + id);
+            }
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // AUDIO FOCUS
+    // ═══════════════════════════════════════════════════════════════
+
+    private final AudioManager.OnAudioFocusChangeListener focusListener = change -> {
+        if (change == AudioManager.AUDIOFOCUS_LOSS
+            || change == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT
+            || change == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK) {
+            // An alarm never goes silent - just quieter (e.g. during a call)
+            Log.w(TAG, "⚠ Audio focus lost (" + change + ") - ducking");
+            focusLost = true;
+            rampTone(DUCKED_VOLUME);
+        } else if (change == AudioManager.AUDIOFOCUS_GAIN) {
+            Log.d(TAG, "✓ Audio focus back");
+            focusLost = false;
+            if (!speaking) rampTone(1.0f);
+        }
+    };
+
+    /**
+     * Ask other apps to pause for the alarm (idempotent)
+     */
+    public void requestFocus() {
+        if (hasFocus || audioManager == null) return;
+        try {
+            int result;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                focusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN_TRANSIENT)
+                    .setAudioAttributes(new AudioAttributes.Builder()
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .setUsage(AudioAttributes.USAGE_ALARM)
+                        .build())
+                    .setOnAudioFocusChangeListener(focusListener, handler)
+                    .setWillPauseWhenDucked(false)
+                    .build();
+                result = audioManager.requestAudioFocus(focusRequest);
+            } else {
+                result = audioManager.requestAudioFocus(focusListener,
+                    AudioManager.STREAM_ALARM, AudioManager.AUDIOFOCUS_GAIN_TRANSIENT);
+            }
+            hasFocus = result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED;
+            focusLost = !hasFocus;
+            Log.d(TAG, hasFocus ? "✓ Audio focus granted" : "⚠ Audio focus denied - ringing ducked");
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Audio focus request failed", e);
+        }
+    }
+
+    private void abandonFocus() {
+        if (!hasFocus || audioManager == null) return;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && focusRequest != null) {
+                audioManager.abandonAudioFocusRequest(focusRequest);
+            } else {
+                audioManager.abandonAudioFocus(focusListener);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Abandon audio focus failed", e);
+        }
+        hasFocus = false;
+        focusLost = false;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // TONE
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * The looping tone is audible: fade it in (or keep it ducked)
+     */
+    public void onToneStarted(MediaPlayer player) {
+        closeShaper();
+        tone = player;
+        ducked = false;
+        float target = speaking || focusLost ? DUCKED_VOLUME : 1.0f;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            try {
+                toneShaper = player.createVolumeShaper(new VolumeShaper.Configuration.Builder()
+                    .setDuration(FADE_IN_MS)
+                    .setCurve(new float[]{0f, 1f}, new float[]{Math.min(FADE_IN_FROM, target), target})
+                    .setInterpolatorType(VolumeShaper.Configuration.INTERPOLATOR_TYPE_CUBIC)
+                    .build());
+                toneShaper.apply(VolumeShaper.Operation.PLAY);
+                ducked = target < 1.0f;
+                return;
+            } catch (Exception e) {
+                Log.w(TAG, "⚠ VolumeShaper unavailable - plain volume");
+                toneShaper = null;
+            }
+        }
+        setToneVolume(target);
+    }
+
+    /**
+     * The tone player is being released (dismiss, handover, fallback tier)
+     */
+    public void onToneReleased() {
+        closeShaper();
+        tone = null;
+    }
+
+    private void rampTone(float volume) {
+        if (tone == null) return;
+        if (ducked == (volume < 1.0f)) return;
+        ducked = volume < 1.0f;
+        if (toneShaper != null) {
+            try {
+                // join = true → the ramp starts from whatever volume the tone has now
+                toneShaper.replace(new VolumeShaper.Configuration.Builder()
+                    .setDuration(DUCK_RAMP_MS)
+                    .setCurve(new float[]{0f, 1f}, new float[]{ducked ? 1.0f : DUCKED_VOLUME, volume})
+                    .setInterpolatorType(VolumeShaper.Configuration.INTERPOLATOR_TYPE_LINEAR)
+                    .build(), VolumeShaper.Operation.PLAY, true);
+                return;
+            } catch (Exception e) {
+                Log.w(TAG, "⚠ Volume ramp failed - plain volume");
+            }
+        }
+        setToneVolume(volume);
+    }
+
+    private void setToneVolume(float volume) {
+        try {
+            tone.setVolume(volume, volume);
+        } catch (Exception e) {
+            Log.e(TAG, "Set volume failed", e);
+        }
+    }
+
+    private void closeShaper() {
+        if (toneShaper != null) {
+            try {
+                toneShaper.close();
+            } catch (Exception e) {
+                Log.w(TAG, "⚠ Close VolumeShaper failed");
+            }
+            toneShaper = null;
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // SPEECH
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Speak these segments in order, gaplessly, every few seconds over the tone
+     */
+    public void startSpeech(List<File> segments) {
+        stopSpeech();
+        try {
+            for (File segment : segments) {
+                MediaPlayer player = new MediaPlayer();
+                speech.add(player);
+                attach(context, player);
+                player.setAudioAttributes(new AudioAttributes.Builder()
+                    .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                    .setUsage(AudioAttributes.USAGE_ALARM)
+                    .build());
+                try (FileInputStream in = new FileInputStream(segment)) {
+                    player.setDataSource(in.getFD());
+                }
+                player.setOnPreparedListener(this::onSegmentPrepared);
+                player.setOnCompletionListener(this::onSegmentDone);
+                player.setOnErrorListener((mp, what, extra) -> {
+                    Log.e(TAG, "✗ Speech segment failed: what=" + what);
+                    stopSpeech();
+                    return true;
+                });
+                player.prepareAsync();
+            }
+            Log.d(TAG, "✓ " + segments.size() + " speech segments loading");
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Speech failed", e);
+            stopSpeech();
+        }
+    }
+
+    private void onSegmentPrepared(MediaPlayer player) {
+        if (!speech.contains(player)) return;
+        speechPrepared++;
+        // First cycle starts once every segment is ready; later ones from the gap timer
+        if (speechPrepared == speech.size() && !speechStarted) {
+            speechStarted = true;
+            handler.post(speakCycle);
+        }
+    }
+
+    private final Runnable speakCycle = this::speakOnce;
+
+    private void speakOnce() {
+        if (speech.isEmpty()) return;
+        if (speechPrepared < speech.size()) {
+            // Re-prepare still running - try again shortly
+            handler.postDelayed(speakCycle, 100);
+            return;
+        }
+        speaking = true;
+        rampTone(DUCKED_VOLUME);
+        // Link every run again - a completed player drops its next link
+        for (int i = 0; i < speech.size() - 1; i++) {
+            speech.get(i).setNextMediaPlayer(speech.get(i + 1));
+        }
+        speech.get(0).start();
+    }
+
+    private void onSegmentDone(MediaPlayer player) {
+        int index = speech.indexOf(player);
+        if (index < 0) return;
+        // Re-prepare in the background for the next repeat
+        speechPrepared--;
+        try {
+            player.stop();
+            player.prepareAsync();
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Re-prepare of speech segment failed", e);
+        }
+        if (index == speech.size() - 1) {
+            speaking = false;
+            if (!focusLost) rampTone(1.0f);
+            handler.postDelayed(speakCycle, SPEECH_REPEAT_GAP_MS);
+        }
+    }
+
+    public void stopSpeech() {
+        handler.removeCallbacks(speakCycle);
+        for (MediaPlayer player : speech) {
+            try {
+                player.release();
+            } catch (Exception e) {
+                Log.e(TAG, "Stop speech failed", e);
+            }
+        }
+        speech.clear();
+        speechPrepared = 0;
+        speechStarted = false;
+        if (speaking) {
+            speaking = false;
+            if (!focusLost) rampTone(1.0f);
+        }
+    }
+
+    /**
+     * Ringing is over: speech stopped, focus given back
+     */
+    public void release() {
+        stopSpeech();
+        onToneReleased();
+        abandonFocus();
+    }
+}
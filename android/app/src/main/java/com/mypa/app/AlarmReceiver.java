@@ -4,8 +4,12 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * AlarmReceiver - BroadcastReceiver जो AlarmManager से alarm trigger receive करता है
  *
@@ -20,12 +24,23 @@ import android.util.Log;
  * ═══════════════════════════════════════════════════════════════
  * EXECUTION FLOW:
  * ═══════════════════════════════════════════════════════════════
- * AlarmManager.setExactAndAllowWhileIdle() at scheduled time
+ * AlarmManager (API picked by AlarmStrategySelector) at scheduled time
+ *   ↓
+ * AlarmReceiver.onReceive() [SURVIVES PROCESS DEATH, runs in ":alarm" process]
  *   ↓
- * AlarmReceiver.onReceive() [SURVIVES PROCESS DEATH]
+ * Alarm data from the memory-mapped AlarmBootMirror snapshot (store as fallback)
+ * (Store read, like the claim, never runs on the main thread)
+ *   ↓
+ * Occurrence already rang? → dropped here (AlarmDeliveryDedup)
+ * (Claim runs off the main thread under goAsync(), before the service starts)
+ * (Phone not unlocked since boot → rings from the extras, see AlarmBootMirror)
  *   ↓
  * Start AlarmRingingService (Foreground)
  *   ↓
+ * Repeating alarm? → next occurrence armed natively (AlarmRecurrence)
+ * (Warm-up broadcast ~60s earlier → AlarmWarmup stages notification + audio)
+ * (Snooze fire → rings again, same occurrence, see SnoozeManager)
+ *   ↓
  * Service plays sound + shows notification
  *   ↓
  * User taps notification → AlarmActivity opens
@@ -41,17 +56,212 @@ import android.util.Log;
 public class AlarmReceiver extends BroadcastReceiver {
     private static final String TAG = "AlarmReceiver";
 
+    // Store reads, dedup claims (before the ring) + fire bookkeeping - all SQLite
+    private static final ExecutorService bookkeeping = Executors.newSingleThreadExecutor();
+
+    // When this broadcast arrived (FireMetrics + receiver → first audio latency)
+    private long receivedAtElapsed;
+    private long receivedAtWall;
+
     @Override
     public void onReceive(Context context, Intent intent) {
+        receivedAtElapsed = SystemClock.elapsedRealtime();
+        receivedAtWall = System.currentTimeMillis();
+        // Warm-up ~60s before an alarm: stage it, nothing rings yet
+        if (AlarmWarmup.ACTION_WARMUP.equals(intent.getAction())) {
+            Log.d(TAG, "Warm-up for alarm " + intent.getIntExtra(AlarmRecord.EXTRA_ID, -1));
+            AlarmWarmup.onWarmup(context, intent, goAsync());
+            return;
+        }
+
         Log.d(TAG, "════════════════════════════════════════════════");
         Log.d(TAG, "✓ ALARM RECEIVED FROM ALARMMANAGER!");
         Log.d(TAG, "════════════════════════════════════════════════");
 
-        // Extract alarm data from intent
-        int alarmId = intent.getIntExtra("alarm_id", -1);
-        String alarmType = intent.getStringExtra("alarm_type");
-        String alarmTitle = intent.getStringExtra("alarm_title");
-        String alarmBody = intent.getStringExtra("alarm_body");
+        // Before the first unlock after a reboot AlarmStore cannot be opened
+        if (AlarmBootMirror.isLocked(context)) {
+            deliverLocked(context, intent);
+            Log.d(TAG, "════════════════════════════════════════════════");
+            return;
+        }
+
+        // Single-armed mode: one broadcast delivers every alarm that is due
+        if (NextAlarmScheduler.ACTION_NEXT_ALARM.equals(intent.getAction())) {
+            deliverDueFromHeap(context, intent);
+            Log.d(TAG, "════════════════════════════════════════════════");
+            return;
+        }
+
+        int requestedId = intent.getIntExtra(AlarmRecord.EXTRA_ID, -1);
+
+        // Fast path: memory-mapped snapshot instead of a store read. SQLite is only
+        // opened for the dedup claim + bookkeeping, off the main thread.
+        if (!SnoozeManager.ACTION_SNOOZE_FIRE.equals(intent.getAction())) {
+            AlarmRecord snapshot = AlarmBootMirror.find(context, requestedId);
+            long occurrenceAt = AlarmDeliveryDedup.occurrenceOf(intent, -1);
+            if (snapshot != null && snapshot.triggerAtMillis == occurrenceAt) {
+                deliverFromSnapshot(context, intent, snapshot);
+                Log.d(TAG, "════════════════════════════════════════════════");
+                return;
+            }
+        }
+
+        // Snapshot miss (snooze fire, alarm outside the mirror, stale mirror)
+        deliverFromStore(context, intent, requestedId);
+        Log.d(TAG, "════════════════════════════════════════════════");
+    }
+
+    /**
+     * Snapshot miss: store read + dedup claim under goAsync(), off the main
+     * thread like deliverFromSnapshot.
+     */
+    private void deliverFromStore(Context context, Intent intent, int requestedId) {
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        bookkeeping.execute(() -> {
+            try {
+                // Load alarm from native store (falls back to Intent extras)
+                AlarmRecord record = AlarmStore.getInstance(appContext).get(requestedId);
+                if (record == null) {
+                    Log.w(TAG, "⚠ Alarm " + requestedId + " not in store - using Intent extras");
+                    record = AlarmRecord.fromIntent(intent);
+                }
+
+                // Snooze ringing again: same occurrence, so no markFired / next occurrence
+                if (SnoozeManager.ACTION_SNOOZE_FIRE.equals(intent.getAction())) {
+                    Log.d(TAG, "Snoozed alarm ringing again (#" + record.snoozeCount + ")");
+                    long snoozeAt = AlarmDeliveryDedup.occurrenceOf(intent, record.snoozeUntil);
+                    if (!AlarmDeliveryDedup.claim(appContext, record.id, snoozeAt,
+                            AlarmDeliveryDedup.SOURCE_SNOOZE)) {
+                        return;
+                    }
+                    long fireSeq = FireMetrics.begin(appContext, record.id, record.snoozeUntil,
+                        receivedAtWall, receivedAtElapsed);
+                    SnoozeManager.onSnoozeFired(appContext, record);
+                    startAlarmService(appContext, record.id, record.type, record.title, record.body, fireSeq);
+                    AlarmEventLog.record(appContext, record.id, AlarmEventLog.EVENT_FIRE,
+                        AlarmEventLog.SOURCE_SYSTEM, snoozeAt, record.snoozeCount);
+                    recordLateness(appContext, intent, record.snoozeUntil);
+                    AlarmStateSync.publish(appContext, record.id, AlarmStateSync.EVENT_SNOOZE_FIRED);
+                    return;
+                }
+
+                // Stored trigger may already point at the next occurrence - trust the Intent
+                long dueAtMillis = AlarmDeliveryDedup.occurrenceOf(intent, record.triggerAtMillis);
+                if (AlarmDeliveryDedup.claim(appContext, record.id, dueAtMillis,
+                        AlarmDeliveryDedup.SOURCE_ALARM)) {
+                    deliver(appContext, record);
+                }
+                recordLateness(appContext, intent, dueAtMillis);
+            } catch (Exception e) {
+                Log.e(TAG, "✗ Store delivery failed for alarm " + requestedId, e);
+            } finally {
+                result.finish();
+            }
+        });
+    }
+
+    /**
+     * Direct boot: ring from the extras AlarmBootMirror armed the alarm with.
+     * No store, dedup index or metrics - the fire is replayed into AlarmStore
+     * after the first unlock (AlarmBootMirror.replayLockedDeliveries).
+     */
+    private void deliverLocked(Context context, Intent intent) {
+        AlarmRecord record = AlarmRecord.fromIntent(intent);
+        long occurrenceAt = AlarmDeliveryDedup.occurrenceOf(intent, receivedAtWall);
+        Log.d(TAG, "Device locked - ringing alarm " + record.id + " from the boot mirror");
+        startAlarmService(context, record.id, record.type, record.title, record.body, -1);
+        // Event log is device-protected: fires before the first unlock count too
+        AlarmEventLog.record(context, record.id, AlarmEventLog.EVENT_FIRE,
+            AlarmEventLog.SOURCE_SYSTEM, occurrenceAt, 0);
+        AlarmBootMirror.recordLockedDelivery(context, record.id, occurrenceAt,
+            SnoozeManager.ACTION_SNOOZE_FIRE.equals(intent.getAction()));
+    }
+
+    /**
+     * Pop all due alarms from the min-heap, deliver them, then arm the next head once
+     */
+    private void deliverDueFromHeap(Context context, Intent intent) {
+        NextAlarmScheduler scheduler = NextAlarmScheduler.getInstance(context);
+        // Alarms are edited from the app process - never trust this process's heap
+        scheduler.invalidate();
+        scheduler.beginBatch();
+        long armedDueAt = 0;
+        try {
+            for (AlarmRecord record : scheduler.pollDue(System.currentTimeMillis())) {
+                // First due alarm is the one the broadcast was armed for
+                if (armedDueAt == 0) armedDueAt = record.triggerAtMillis;
+                if (AlarmDeliveryDedup.claim(context, record.id, record.triggerAtMillis,
+                        AlarmDeliveryDedup.SOURCE_HEAP)) {
+                    deliver(context, record);
+                }
+            }
+        } finally {
+            scheduler.endBatch();
+        }
+        recordLateness(context, intent, armedDueAt);
+    }
+
+    /**
+     * Snapshot hit: claim the occurrence, ring from the snapshot, record the fire.
+     * A duplicate this process already delivered is dropped before goAsync();
+     * one delivered by another process loses the claim and never rings.
+     */
+    private void deliverFromSnapshot(Context context, Intent intent, AlarmRecord snapshot) {
+        final long occurrenceAt = snapshot.triggerAtMillis;
+        if (AlarmDeliveryDedup.seen(snapshot.id, occurrenceAt)) {
+            Log.w(TAG, "⚠ Alarm " + snapshot.id + " @" + occurrenceAt + " already rang - dropped");
+            recordLateness(context, intent, occurrenceAt);
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        bookkeeping.execute(() -> {
+            try {
+                // One INSERT OR IGNORE - the service starts right after it
+                if (AlarmDeliveryDedup.claim(appContext, snapshot.id, occurrenceAt,
+                        AlarmDeliveryDedup.SOURCE_ALARM)) {
+                    ring(appContext, snapshot);
+                    // Snapshot has no recurrence rule - the full row is needed for the next occurrence
+                    AlarmRecord stored = AlarmStore.getInstance(appContext).get(snapshot.id);
+                    recordFire(appContext, snapshot, stored);
+                }
+                recordLateness(appContext, intent, occurrenceAt);
+            } catch (Exception e) {
+                Log.e(TAG, "✗ Snapshot delivery failed for alarm " + snapshot.id, e);
+            } finally {
+                result.finish();
+            }
+        });
+    }
+
+    /**
+     * Feed this fire's lateness back to the strategy that armed it
+     */
+    private void recordLateness(Context context, Intent intent, long dueAtMillis) {
+        if (dueAtMillis <= 0) return;
+        AlarmStrategySelector.recordLateness(context,
+            intent.getStringExtra(AlarmStrategySelector.EXTRA_STRATEGY), receivedAtWall - dueAtMillis);
+    }
+
+    /**
+     * Ring one alarm: start the service, record the fire, arm the next occurrence
+     */
+    private void deliver(Context context, AlarmRecord record) {
+        ring(context, record);
+        recordFire(context, record, record);
+    }
+
+    /**
+     * Start the service for one alarm (no SQLite)
+     *
+     * @return FireMetrics sequence of this fire
+     */
+    private long ring(Context context, AlarmRecord record) {
+        int alarmId = record.id;
+        String alarmType = record.type;
+        String alarmTitle = record.title;
+        String alarmBody = record.body;
 
         Log.d(TAG, "Alarm Details:");
         Log.d(TAG, "  → ID: " + alarmId);
@@ -59,10 +269,41 @@ public class AlarmReceiver extends BroadcastReceiver {
         Log.d(TAG, "  → Title: " + alarmTitle);
         Log.d(TAG, "  → Body: " + alarmBody);
 
+        // Timing slot for this fire (drift vs. scheduled time + stage latencies)
+        long fireSeq = FireMetrics.begin(context, alarmId, record.triggerAtMillis,
+            receivedAtWall, receivedAtElapsed);
+
         // Start foreground service (CRITICAL: This is the main component)
-        startAlarmService(context, alarmId, alarmType, alarmTitle, alarmBody);
+        startAlarmService(context, alarmId, alarmType, alarmTitle, alarmBody, fireSeq);
+        return fireSeq;
+    }
 
-        Log.d(TAG, "════════════════════════════════════════════════");
+    /**
+     * Bookkeeping of a delivered fire: event log, markFired, next occurrence, state sync
+     *
+     * @param stored full stored row (null = not in the store, nothing to re-arm)
+     */
+    private void recordFire(Context context, AlarmRecord record, AlarmRecord stored) {
+        int alarmId = record.id;
+        AlarmEventLog.record(context, alarmId, AlarmEventLog.EVENT_FIRE,
+            AlarmEventLog.SOURCE_SYSTEM, record.triggerAtMillis, 0);
+
+        // Record the fire (one-time alarms become disabled)
+        long now = System.currentTimeMillis();
+        AlarmStore.getInstance(context).markFired(alarmId, now);
+        AlarmBootMirror.requestSync(context);
+
+        // Repeating alarm: arm next occurrence natively (no WebView needed)
+        if (stored != null && stored.isRepeating()) {
+            stored.fireCount++;
+            AlarmSchedulerHelper.scheduleNextOccurrence(
+                context, stored, Math.max(now, record.triggerAtMillis));
+            // Template for the next ring, in the process that will render it
+            AlarmNotificationCache.prepare(context, stored);
+        }
+
+        // App process (plugin / JS) refreshes its view of the alarm
+        AlarmStateSync.publish(context, alarmId, AlarmStateSync.EVENT_FIRED);
     }
 
     /**
@@ -87,7 +328,7 @@ public class AlarmReceiver extends BroadcastReceiver {
      * - Android 12+ restrictions bypass हो जाते हैं alarm के case में
      */
     private void startAlarmService(Context context, int alarmId, String alarmType,
-                                   String alarmTitle, String alarmBody) {
+                                   String alarmTitle, String alarmBody, long fireSeq) {
         try {
             // Create intent for AlarmRingingService
             Intent serviceIntent = new Intent(context, AlarmRingingService.class);
@@ -97,6 +338,8 @@ public class AlarmReceiver extends BroadcastReceiver {
             serviceIntent.putExtra("alarm_type", alarmType);
             serviceIntent.putExtra("alarm_title", alarmTitle);
             serviceIntent.putExtra("alarm_body", alarmBody);
+            serviceIntent.putExtra(AlarmRingingService.EXTRA_RECEIVED_AT, receivedAtElapsed);
+            serviceIntent.putExtra(FireMetrics.EXTRA_SEQ, fireSeq);
 
             // Start service based on Android version
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
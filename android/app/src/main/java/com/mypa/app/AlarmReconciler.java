@@ -0,0 +1,255 @@
+package com.mypa.app;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * AlarmReconciler - Makes AlarmManager match AlarmStore again
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * AlarmStore says which alarms SHOULD ring; AlarmManager decides which
+ * WILL. They drift apart: OEM task killers / force-stop wipe every
+ * PendingIntent of the app (missing alarms), and an interrupted cancel
+ * leaves a PendingIntent armed for an alarm the user deleted or turned
+ * off (ghost alarms). AlarmManager cannot be listed, but a PendingIntent
+ * can be probed with FLAG_NO_CREATE using the exact identity it was
+ * armed with (AlarmSchedulerHelper.findAlarmIntent / findSnoozeIntent).
+ *
+ * Every run (app start, after a sync):
+ *
+ *   1. window  → enabled alarms due in the next 24h must be armed
+ *                (single-armed mode: only the next-alarm PendingIntent)
+ *   2. snoozes → pending snoozes must be armed
+ *   3. sweep   → ONE page of all other alarms (disabled, far away) is
+ *                checked for ghosts; the page cursor is kept in the
+ *                settings table, so the whole table is covered over
+ *                several runs instead of slowing down one cold start
+ *   4. repair  → everything found is fixed in one batch at the end
+ *
+ * Runs on its own thread; repeated requests while one is queued collapse.
+ * Skipped before the first unlock (AlarmStore is not readable yet).
+ */
+public class AlarmReconciler {
+    private static final String TAG = "AlarmReconciler";
+
+    static final String SETTING_CURSOR = "reconcile_cursor";
+    static final String SETTING_LAST = "reconcile_last";
+
+    // Rows of the ghost sweep per run
+    private static final int SWEEP_PAGE_SIZE = 200;
+    // Overdue alarm without PendingIntent: give a just-fired alarm time to update its row
+    private static final long OVERDUE_SLACK_MILLIS = 60 * 1000L;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final AtomicBoolean queued = new AtomicBoolean(false);
+
+    /**
+     * Counts of one reconciliation run
+     */
+    public static class Report {
+        public int checked;        // PendingIntents probed
+        public int missing;        // should be armed but were not
+        public int ghosts;         // armed but should not be
+        public int repaired;       // arms + cancels that succeeded
+        public boolean sweepComplete;  // ghost sweep reached the end of the table
+        public long atMillis;
+        public long durationMs;
+    }
+
+    public interface Callback {
+        void onDone(Report report);
+    }
+
+    /**
+     * Reconcile in the background. Without a callback, a request while
+     * another one is still queued is dropped (same work).
+     */
+    public static void requestAsync(Context context, Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        if (callback == null && !queued.compareAndSet(false, true)) return;
+        executor.execute(() -> {
+            if (callback == null) queued.set(false);
+            Report report;
+            try {
+                report = reconcile(appContext);
+            } catch (Exception e) {
+                Log.e(TAG, "✗ Reconciliation failed", e);
+                report = new Report();
+            }
+            if (callback != null) callback.onDone(report);
+        });
+    }
+
+    /**
+     * One reconciliation run. Blocking - call from a background thread.
+     */
+    public static Report reconcile(Context context) {
+        Report report = new Report();
+        long start = System.currentTimeMillis();
+        report.atMillis = start;
+        if (AlarmBootMirror.isLocked(context)) {
+            Log.d(TAG, "Device locked - reconciliation after unlock");
+            return report;
+        }
+
+        AlarmStore store = AlarmStore.getInstance(context);
+        long now = start;
+        long windowEnd = now + AlarmRescheduleReceiver.WINDOW_MILLIS;
+        boolean single = NextAlarmScheduler.isEnabled(context);
+
+        List<AlarmRecord> toArm = new ArrayList<>();
+        List<AlarmRecord> toArmSnooze = new ArrayList<>();
+        List<PendingIntent> toCancel = new ArrayList<>();
+        boolean rearmHead = false;
+        boolean rescheduleWindow = false;
+
+        // ═══════════════════════════════════════════════════════════════
+        // 1. WINDOW
+        // ═══════════════════════════════════════════════════════════════
+        List<AlarmRecord> due = store.getDueBefore(windowEnd);
+        for (AlarmRecord record : due) {
+            report.checked++;
+            PendingIntent armed = AlarmSchedulerHelper.findAlarmIntent(context, record.id);
+            if (single) {
+                // Single-armed mode never has per-alarm PendingIntents
+                if (armed != null) {
+                    toCancel.add(armed);
+                    report.ghosts++;
+                }
+            } else if (armed == null) {
+                if (record.triggerAtMillis > now) {
+                    toArm.add(record);
+                    report.missing++;
+                } else if (now - record.triggerAtMillis > OVERDUE_SLACK_MILLIS) {
+                    // Missed while unarmed - rescheduleWindow applies the grace rules
+                    rescheduleWindow = true;
+                    report.missing++;
+                }
+            }
+        }
+        if (single && !due.isEmpty()) {
+            report.checked++;
+            if (!NextAlarmScheduler.isArmed(context)) {
+                rearmHead = true;
+                report.missing++;
+            }
+        }
+
+        // ═══════════════════════════════════════════════════════════════
+        // 2. SNOOZES
+        // ═══════════════════════════════════════════════════════════════
+        for (AlarmRecord record : store.getPendingSnoozes()) {
+            report.checked++;
+            if (AlarmSchedulerHelper.findSnoozeIntent(context, record.id) != null) continue;
+            if (record.snoozeUntil > now) {
+                toArmSnooze.add(record);
+                report.missing++;
+            } else if (now - record.snoozeUntil > OVERDUE_SLACK_MILLIS) {
+                rescheduleWindow = true;
+                report.missing++;
+            }
+        }
+
+        // ═══════════════════════════════════════════════════════════════
+        // 3. GHOST SWEEP (one page per run)
+        // ═══════════════════════════════════════════════════════════════
+        AlarmStore.Filter filter = new AlarmStore.Filter();
+        filter.limit = SWEEP_PAGE_SIZE;
+        readCursor(store, filter);
+        List<AlarmRecord> page = store.list(filter);
+        boolean more = page.size() > filter.limit;
+        if (more) page = page.subList(0, filter.limit);
+
+        for (AlarmRecord record : page) {
+            // Enabled alarms inside the window were probed in step 1
+            boolean inWindow = record.enabled && record.triggerAtMillis <= windowEnd;
+            if (!inWindow && (!record.enabled || single)) {
+                report.checked++;
+                PendingIntent armed = AlarmSchedulerHelper.findAlarmIntent(context, record.id);
+                if (armed != null) {
+                    toCancel.add(armed);
+                    report.ghosts++;
+                }
+            }
+            if (record.snoozeUntil == 0) {
+                report.checked++;
+                PendingIntent snooze = AlarmSchedulerHelper.findSnoozeIntent(context, record.id);
+                if (snooze != null) {
+                    toCancel.add(snooze);
+                    report.ghosts++;
+                }
+            }
+        }
+        AlarmRecord last = more ? page.get(page.size() - 1) : null;
+        store.putSetting(SETTING_CURSOR, last != null ? last.triggerAtMillis + ":" + last.id : "");
+        report.sweepComplete = !more;
+
+        // ═══════════════════════════════════════════════════════════════
+        // 4. REPAIR (one batch)
+        // ═══════════════════════════════════════════════════════════════
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        for (PendingIntent pendingIntent : toCancel) {
+            try {
+                // PendingIntent only - the heap and the stored alarm stay as they are
+                if (alarmManager != null) alarmManager.cancel(pendingIntent);
+                pendingIntent.cancel();
+                report.repaired++;
+            } catch (Exception e) {
+                Log.e(TAG, "✗ Failed to cancel ghost alarm", e);
+            }
+        }
+        for (AlarmRecord record : toArm) {
+            if (AlarmSchedulerHelper.scheduleExactAlarm(context, record)) report.repaired++;
+        }
+        for (AlarmRecord record : toArmSnooze) {
+            if (AlarmSchedulerHelper.scheduleSnoozeAlarm(
+                context, record.id, record.snoozeUntil, record.title, record.body)) {
+                report.repaired++;
+            }
+        }
+        if (rearmHead) {
+            NextAlarmScheduler.getInstance(context).reload();
+            report.repaired++;
+        }
+        if (rescheduleWindow) {
+            AlarmRescheduleReceiver.rescheduleWindow(context);
+        }
+
+        report.durationMs = System.currentTimeMillis() - start;
+        store.putSetting(SETTING_LAST, report.atMillis + "," + report.checked + "," + report.missing
+            + "," + report.ghosts + "," + report.repaired);
+
+        if (report.missing > 0 || report.ghosts > 0) {
+            Log.w(TAG, "⚠ Reconciled: " + report.missing + " missing, " + report.ghosts + " ghosts, "
+                + report.repaired + " repaired (" + report.checked + " checked in " + report.durationMs + "ms)");
+        } else {
+            Log.d(TAG, "✓ AlarmManager in sync (" + report.checked + " checked in " + report.durationMs + "ms)");
+        }
+        return report;
+    }
+
+    /**
+     * Resume the sweep after the last row of the previous run ("triggerAt:id")
+     */
+    private static void readCursor(AlarmStore store, AlarmStore.Filter filter) {
+        String cursor = store.getSetting(SETTING_CURSOR, "");
+        int colon = cursor.indexOf(':');
+        if (colon <= 0) return;
+        try {
+            filter.afterTriggerAt = Long.parseLong(cursor.substring(0, colon));
+            filter.afterId = Integer.parseInt(cursor.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "⚠ Bad sweep cursor '" + cursor + "' - starting over");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.mypa.app;
+
+import android.content.Intent;
+
+/**
+ * AlarmRecord - One row of the native alarm store
+ *
+ * Plain data holder shared by AlarmStore, AlarmReceiver, AlarmRingingService
+ * and the plugins. Intent extras still carry the same fields so that alarms
+ * armed by an older build keep working, but the store is the source of truth.
+ */
+public class AlarmRecord {
+    public static final String EXTRA_ID = "alarm_id";
+    public static final String EXTRA_TITLE = "alarm_title";
+    public static final String EXTRA_BODY = "alarm_body";
+    public static final String EXTRA_TYPE = "alarm_type";
+
+    public static final int DEFAULT_SNOOZE_MINUTES = 5;
+
+    public int id;
+    public String title;
+    public String body;
+    public String type;
+    public long triggerAtMillis;
+    public String recurrence;      // null = one-time alarm
+    public boolean enabled = true;
+    public long lastFiredAt;
+    public long updatedAt;
+    public int fireCount;
+    public String clipSource;      // user voice clip (URL / file / content URI), null = none
+    public int snoozeMinutes = DEFAULT_SNOOZE_MINUTES;
+    public int maxSnoozes;         // 0 = unlimited
+    public int snoozeCount;        // snoozes since the alarm last fired
+    public long snoozeUntil;       // pending snooze time, 0 = none
+
+    public AlarmRecord() {
+    }
+
+    public AlarmRecord(int id, String title, String body, String type, long triggerAtMillis, String recurrence) {
+        this.id = id;
+        this.title = title != null ? title : "Alarm";
+        this.body = body != null ? body : "";
+        this.type = type != null ? type : "alarm";
+        this.triggerAtMillis = triggerAtMillis;
+        this.recurrence = recurrence;
+    }
+
+    public boolean isRepeating() {
+        return recurrence != null && !recurrence.isEmpty();
+    }
+
+    /**
+     * Copy alarm fields into an Intent (same extra names as before the store existed)
+     */
+    public void writeTo(Intent intent) {
+        intent.putExtra(EXTRA_ID, id);
+        intent.putExtra(EXTRA_TITLE, title);
+        intent.putExtra(EXTRA_BODY, body);
+        intent.putExtra(EXTRA_TYPE, type);
+    }
+
+    /**
+     * Build a record from Intent extras (fallback when the store has no row)
+     */
+    public static AlarmRecord fromIntent(Intent intent) {
+        AlarmRecord record = new AlarmRecord();
+        record.id = intent.getIntExtra(EXTRA_ID, -1);
+        record.title = intent.getStringExtra(EXTRA_TITLE);
+        record.body = intent.getStringExtra(EXTRA_BODY);
+        record.type = intent.getStringExtra(EXTRA_TYPE);
+
+        if (record.title == null) record.title = "Alarm";
+        if (record.body == null) record.body = "";
+        if (record.type == null) record.type = "alarm";
+        return record;
+    }
+
+    @Override
+    public String toString() {
+        return "Alarm{id=" + id + ", title=" + title + ", type=" + type
+            + ", at=" + triggerAtMillis + ", recurrence=" + recurrence + ", enabled=" + enabled + "}";
+    }
+}
@@ -0,0 +1,247 @@
+package com.mypa.app;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * AlarmRecurrence - Native recurrence rules for repeating alarms
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * setAlarmClock() only fires ONCE. Before this class the next
+ * occurrence depended on the JS app being opened. Now AlarmReceiver
+ * computes and arms the next occurrence itself at fire time - no
+ * Bridge, no WebView, just a few java.time calculations.
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * RULE FORMAT (stored in AlarmStore "recurrence" column):
+ * ═══════════════════════════════════════════════════════════════
+ *   FREQ=DAILY;INTERVAL=2;BYHOUR=7;BYMINUTE=30           every 2 days
+ *   FREQ=WEEKLY;BYDAY=MO,WE,FR;BYHOUR=9;BYMINUTE=0        selected weekdays
+ *   FREQ=MONTHLY;BYMONTHDAY=15;BYHOUR=20;BYMINUTE=0       15th of each month
+ *
+ * Optional parts: DTSTART=yyyy-MM-dd (anchor for INTERVAL),
+ * UNTIL=epochMillis (end date), COUNT=n (max number of fires).
+ *
+ * Times are wall-clock times in the device timezone, so a 7:00 alarm
+ * stays at 7:00 across DST and timezone changes.
+ */
+public final class AlarmRecurrence {
+    public static final String FREQ_DAILY = "DAILY";
+    public static final String FREQ_WEEKLY = "WEEKLY";
+    public static final String FREQ_MONTHLY = "MONTHLY";
+
+    private static final String[] DAY_CODES = {"MO", "TU", "WE", "TH", "FR", "SA", "SU"};
+
+    public String frequency = FREQ_DAILY;
+    public int interval = 1;
+    public int hour;
+    public int minute;
+    public Set<DayOfWeek> byDay = EnumSet.noneOf(DayOfWeek.class);
+    public int byMonthDay;
+    public LocalDate start;       // null = no anchor (INTERVAL counted from epoch)
+    public long untilMillis;      // 0 = no end date
+    public int count;             // 0 = unlimited
+
+    /**
+     * Parse a stored rule. Unknown parts are ignored.
+     *
+     * @throws IllegalArgumentException if the rule is empty or malformed
+     */
+    public static AlarmRecurrence parse(String rule) {
+        if (rule == null || rule.isEmpty()) {
+            throw new IllegalArgumentException("Empty recurrence rule");
+        }
+
+        AlarmRecurrence recurrence = new AlarmRecurrence();
+        for (String part : rule.split(";")) {
+            int eq = part.indexOf('=');
+            if (eq <= 0) continue;
+            String key = part.substring(0, eq).trim();
+            String value = part.substring(eq + 1).trim();
+
+            switch (key) {
+                case "FREQ": recurrence.frequency = value; break;
+                case "INTERVAL": recurrence.interval = Math.max(1, Integer.parseInt(value)); break;
+                case "BYHOUR": recurrence.hour = Integer.parseInt(value); break;
+                case "BYMINUTE": recurrence.minute = Integer.parseInt(value); break;
+                case "BYMONTHDAY": recurrence.byMonthDay = Integer.parseInt(value); break;
+                case "DTSTART": recurrence.start = LocalDate.parse(value); break;
+                case "UNTIL": recurrence.untilMillis = Long.parseLong(value); break;
+                case "COUNT": recurrence.count = Integer.parseInt(value); break;
+                case "BYDAY":
+                    for (String code : value.split(",")) {
+                        recurrence.byDay.add(dayFromCode(code.trim()));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (!FREQ_DAILY.equals(recurrence.frequency)
+            && !FREQ_WEEKLY.equals(recurrence.frequency)
+            && !FREQ_MONTHLY.equals(recurrence.frequency)) {
+            throw new IllegalArgumentException("Unsupported FREQ: " + recurrence.frequency);
+        }
+        if (FREQ_WEEKLY.equals(recurrence.frequency) && recurrence.byDay.isEmpty()) {
+            throw new IllegalArgumentException("WEEKLY rule needs BYDAY");
+        }
+        if (FREQ_MONTHLY.equals(recurrence.frequency)
+            && (recurrence.byMonthDay < 1 || recurrence.byMonthDay > 31)) {
+            throw new IllegalArgumentException("MONTHLY rule needs BYMONTHDAY 1-31");
+        }
+        return recurrence;
+    }
+
+    /**
+     * Serialize back to the stored rule format
+     */
+    public String format() {
+        StringBuilder rule = new StringBuilder("FREQ=").append(frequency);
+        if (interval > 1) rule.append(";INTERVAL=").append(interval);
+        if (!byDay.isEmpty()) {
+            rule.append(";BYDAY=");
+            boolean first = true;
+            for (DayOfWeek day : byDay) {
+                if (!first) rule.append(',');
+                rule.append(DAY_CODES[day.getValue() - 1]);
+                first = false;
+            }
+        }
+        if (byMonthDay > 0) rule.append(";BYMONTHDAY=").append(byMonthDay);
+        rule.append(";BYHOUR=").append(hour).append(";BYMINUTE=").append(minute);
+        if (start != null) rule.append(";DTSTART=").append(start);
+        if (untilMillis > 0) rule.append(";UNTIL=").append(untilMillis);
+        if (count > 0) rule.append(";COUNT=").append(count);
+        return rule.toString();
+    }
+
+    /**
+     * Next occurrence strictly after the given instant
+     *
+     * @param afterMillis reference time (usually now or the occurrence that just fired)
+     * @param zone timezone used for wall-clock times
+     * @return trigger time in millis, or -1 if the rule has ended (UNTIL)
+     */
+    public long nextAfter(long afterMillis, ZoneId zone) {
+        ZonedDateTime after = Instant.ofEpochMilli(afterMillis).atZone(zone);
+        LocalDate fromDate = after.toLocalDate();
+        if (start != null && start.isAfter(fromDate)) {
+            fromDate = start;
+        }
+
+        ZonedDateTime next;
+        switch (frequency) {
+            case FREQ_WEEKLY: next = nextWeekly(fromDate, after, zone); break;
+            case FREQ_MONTHLY: next = nextMonthly(fromDate, after, zone); break;
+            default: next = nextDaily(fromDate, after, zone); break;
+        }
+
+        long nextMillis = next.toInstant().toEpochMilli();
+        if (untilMillis > 0 && nextMillis > untilMillis) {
+            return -1;
+        }
+        return nextMillis;
+    }
+
+    /**
+     * Whether the rule allows another fire after firedCount fires
+     */
+    public boolean hasRemaining(int firedCount) {
+        return count <= 0 || firedCount < count;
+    }
+
+    private ZonedDateTime nextDaily(LocalDate fromDate, ZonedDateTime after, ZoneId zone) {
+        LocalDate anchor = start != null ? start : LocalDate.ofEpochDay(0);
+        LocalDate date = fromDate;
+
+        long remainder = Math.floorMod(ChronoUnit.DAYS.between(anchor, date), (long) interval);
+        if (remainder != 0) {
+            date = date.plusDays(interval - remainder);
+        }
+
+        ZonedDateTime candidate = at(date, zone);
+        if (!candidate.isAfter(after)) {
+            candidate = at(date.plusDays(interval), zone);
+        }
+        return candidate;
+    }
+
+    private ZonedDateTime nextWeekly(LocalDate fromDate, ZonedDateTime after, ZoneId zone) {
+        LocalDate anchorWeek = (start != null ? start : LocalDate.ofEpochDay(0))
+            .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+
+        // At most (interval + 1) weeks need to be scanned to find a match
+        LocalDate date = fromDate;
+        for (int i = 0; i <= 7 * (interval + 1); i++, date = date.plusDays(1)) {
+            if (!byDay.contains(date.getDayOfWeek())) continue;
+
+            LocalDate week = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            if (Math.floorMod(ChronoUnit.WEEKS.between(anchorWeek, week), (long) interval) != 0) continue;
+
+            ZonedDateTime candidate = at(date, zone);
+            if (candidate.isAfter(after)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("No weekly occurrence found");
+    }
+
+    private ZonedDateTime nextMonthly(LocalDate fromDate, ZonedDateTime after, ZoneId zone) {
+        YearMonth anchorMonth = YearMonth.from(start != null ? start : LocalDate.ofEpochDay(0));
+        YearMonth month = YearMonth.from(fromDate);
+
+        for (int i = 0; i <= interval + 1; i++) {
+            long offset = Math.floorMod(ChronoUnit.MONTHS.between(anchorMonth, month), (long) interval);
+            if (offset != 0) {
+                month = month.plusMonths(interval - offset);
+            }
+
+            // Short months ring on their last day (e.g. 31st → 30th / 28th)
+            LocalDate date = month.atDay(Math.min(byMonthDay, month.lengthOfMonth()));
+            ZonedDateTime candidate = at(date, zone);
+            // In the DTSTART month the day can fall before DTSTART itself
+            boolean beforeStart = start != null && date.isBefore(start);
+            if (!beforeStart && candidate.isAfter(after)) {
+                return candidate;
+            }
+            month = month.plusMonths(interval);
+        }
+        throw new IllegalStateException("No monthly occurrence found");
+    }
+
+    private ZonedDateTime at(LocalDate date, ZoneId zone) {
+        // atZone() moves times inside a DST gap forward instead of failing
+        return date.atTime(LocalTime.of(hour, minute)).atZone(zone);
+    }
+
+    private static DayOfWeek dayFromCode(String code) {
+        for (int i = 0; i < DAY_CODES.length; i++) {
+            if (DAY_CODES[i].equals(code)) {
+                return DayOfWeek.of(i + 1);
+            }
+        }
+        throw new IllegalArgumentException("Unknown BYDAY code: " + code);
+    }
+
+    /**
+     * Convert the JS day number (Calendar style: 1 = Sun ... 7 = Sat) to DayOfWeek
+     */
+    public static DayOfWeek dayFromCalendar(int calendarDay) {
+        if (calendarDay < 1 || calendarDay > 7) {
+            throw new IllegalArgumentException("Day must be 1 (Sun) - 7 (Sat): " + calendarDay);
+        }
+        return calendarDay == 1 ? DayOfWeek.SUNDAY : DayOfWeek.of(calendarDay - 1);
+    }
+}
@@ -0,0 +1,240 @@
+package com.mypa.app;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * AlarmRescheduleReceiver - Re-arms stored alarms after reboot / clock changes
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS IS NEEDED:
+ * ═══════════════════════════════════════════════════════════════
+ * AlarmManager forgets EVERY alarm on reboot. TIME_SET and
+ * TIMEZONE_CHANGED can also leave armed alarms at stale times.
+ * LocalNotificationRestoreReceiver only restores LocalNotifications,
+ * not FullScreenAlarm alarms.
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * HOW IT STAYS CHEAP (even with thousands of reminders):
+ * ═══════════════════════════════════════════════════════════════
+ * 1. goAsync() → work runs on a background thread, not the main thread
+ * 2. ONE indexed query for alarms due inside the next WINDOW
+ * 3. Only those are armed; everything later is deferred
+ * 4. ONE inexact "window" alarm re-runs this pass before the window ends
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * DIRECT BOOT:
+ * ═══════════════════════════════════════════════════════════════
+ * LOCKED_BOOT_COMPLETED arrives before the first unlock, when AlarmStore
+ * is unreadable: the window is armed from AlarmBootMirror instead. The
+ * full pass follows on BOOT_COMPLETED and replaces those alarms.
+ */
+public class AlarmRescheduleReceiver extends BroadcastReceiver {
+    private static final String TAG = "AlarmRescheduleReceiver";
+
+    public static final String ACTION_RESCHEDULE_WINDOW = "com.mypa.app.ACTION_RESCHEDULE_WINDOW";
+    private static final String ACTION_TIME_SET = "android.intent.action.TIME_SET";
+
+    // Arm alarms due in the next 24 hours; the rest are armed lazily
+    static final long WINDOW_MILLIS = 24 * 60 * 60 * 1000L;
+    // Re-run the pass a little before the window runs out
+    private static final long WINDOW_MARGIN_MILLIS = 60 * 60 * 1000L;
+    // One-time alarms missed while the phone was off still ring if this recent
+    static final long MISSED_GRACE_MILLIS = 15 * 60 * 1000L;
+
+    private static final int WINDOW_REQUEST_CODE = 0x7FFF0001;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent != null ? intent.getAction() : null;
+        Log.d(TAG, "✓ Reschedule trigger: " + action);
+
+        // Before the first unlock: only the device-protected mirror is readable
+        if (Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action)) {
+            if (AlarmBootMirror.isLocked(context)) {
+                AlarmBootMirror.rearmLocked(context);
+            } else {
+                Log.d(TAG, "Already unlocked - BOOT_COMPLETED runs the full pass");
+            }
+            return;
+        }
+
+        if (!Intent.ACTION_BOOT_COMPLETED.equals(action)
+            && !Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)
+            && !ACTION_TIME_SET.equals(action)
+            && !Intent.ACTION_TIMEZONE_CHANGED.equals(action)
+            && !ACTION_RESCHEDULE_WINDOW.equals(action)) {
+            Log.w(TAG, "Ignoring unexpected action: " + action);
+            return;
+        }
+
+        final PendingResult pendingResult = goAsync();
+        final Context appContext = context.getApplicationContext();
+
+        executor.execute(() -> {
+            try {
+                // Wall-clock alarms must move when the clock or timezone changes
+                if (ACTION_TIME_SET.equals(action) || Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+                    recomputeRepeating(appContext);
+                }
+                rescheduleWindow(appContext);
+                AlarmStateSync.publish(appContext, -1, AlarmStateSync.EVENT_RESCHEDULED);
+                // Ringtone may have changed (or app data was restored)
+                AlarmSoundCache.warm(appContext);
+            } catch (Exception e) {
+                Log.e(TAG, "✗ Reschedule pass failed", e);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+
+    /**
+     * Arm every enabled alarm due inside the next window in one batched pass.
+     * Safe to call from any background thread.
+     *
+     * @return number of alarms armed
+     */
+    public static int rescheduleWindow(Context context) {
+        long start = System.currentTimeMillis();
+        long now = start;
+        long windowEnd = now + WINDOW_MILLIS;
+
+        // Alarms that already rang before the first unlock must not ring again
+        AlarmBootMirror.replayLockedDeliveries(context);
+
+        AlarmStore store = AlarmStore.getInstance(context);
+        List<AlarmRecord> due = store.getDueBefore(windowEnd);
+
+        // Single-armed mode: the heap holds everything, arm its head once
+        NextAlarmScheduler scheduler = NextAlarmScheduler.isEnabled(context)
+            ? NextAlarmScheduler.getInstance(context)
+            : null;
+        if (scheduler != null) {
+            // Alarms are edited from the app process - never trust this process's heap
+            scheduler.invalidate();
+            scheduler.beginBatch();
+        }
+
+        int armed = 0;
+        int missed = 0;
+        try {
+            for (AlarmRecord record : due) {
+                if (record.triggerAtMillis <= now) {
+                    if (record.isRepeating()) {
+                        // Skip occurrences that passed while the device was off
+                        if (AlarmSchedulerHelper.scheduleNextOccurrence(context, record, now)) {
+                            armed++;
+                        }
+                        continue;
+                    } else if (now - record.triggerAtMillis <= MISSED_GRACE_MILLIS) {
+                        // Recently missed one-time alarm: ring right away
+                        record.triggerAtMillis = now + 1000L;
+                    } else {
+                        Log.w(TAG, "⚠ Alarm " + record.id + " missed while device was off");
+                        store.markFired(record.id, now);
+                        AlarmSchedulerHelper.cancelAlarm(context, record.id);
+                        missed++;
+                        continue;
+                    }
+                }
+
+                if (record.triggerAtMillis <= windowEnd && AlarmSchedulerHelper.scheduleExactAlarm(context, record)) {
+                    armed++;
+                }
+            }
+        } finally {
+            if (scheduler != null) scheduler.endBatch();
+        }
+
+        // Snoozes pending when the phone went off (own PendingIntents, not windowed)
+        int snoozes = SnoozeManager.rearmPending(context, now);
+
+        // Defer everything after the window to a single inexact wake-up
+        AlarmRecord deferred = scheduler == null ? store.getFirstDueAfter(windowEnd) : null;
+        scheduleNextWindow(context, deferred != null ? windowEnd - WINDOW_MARGIN_MILLIS : 0);
+        AlarmBootMirror.sync(context);
+
+        Log.d(TAG, "✓ Rescheduled " + armed + " alarms + " + snoozes + " snoozes (" + missed + " missed) in "
+            + (System.currentTimeMillis() - start) + "ms");
+        return armed;
+    }
+
+    /**
+     * Recompute the next trigger of every repeating alarm from its rule,
+     * so wall-clock times follow the new clock / timezone. One transaction.
+     */
+    static void recomputeRepeating(Context context) {
+        AlarmStore store = AlarmStore.getInstance(context);
+        ZoneId zone = ZoneId.systemDefault();
+        long now = System.currentTimeMillis();
+
+        List<AlarmRecord> changed = new ArrayList<>();
+        for (AlarmRecord record : store.getAllEnabled()) {
+            if (!record.isRepeating()) continue;
+            try {
+                AlarmRecurrence recurrence = AlarmRecurrence.parse(record.recurrence);
+                long next = recurrence.nextAfter(now, zone);
+                if (next > 0 && next != record.triggerAtMillis) {
+                    record.triggerAtMillis = next;
+                    changed.add(record);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "✗ Bad recurrence for alarm " + record.id, e);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            store.upsertAll(changed);
+            if (NextAlarmScheduler.isEnabled(context)) {
+                NextAlarmScheduler.getInstance(context).reload();
+            }
+        }
+        Log.d(TAG, "Recomputed " + changed.size() + " repeating alarms for zone " + zone);
+    }
+
+    /**
+     * Arm (or clear) the inexact alarm that runs the next reschedule pass
+     *
+     * @param atMillis when to run, or 0 to cancel
+     */
+    private static void scheduleNextWindow(Context context, long atMillis) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) return;
+
+        Intent intent = new Intent(context, AlarmRescheduleReceiver.class);
+        intent.setAction(ACTION_RESCHEDULE_WINDOW);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+            context,
+            WINDOW_REQUEST_CODE,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        if (atMillis <= 0) {
+            alarmManager.cancel(pendingIntent);
+            return;
+        }
+
+        // Inexact is fine here: the window leaves a full hour of margin
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, atMillis, pendingIntent);
+        } else {
+            alarmManager.set(AlarmManager.RTC_WAKEUP, atMillis, pendingIntent);
+        }
+        Log.d(TAG, "Next reschedule window at " + new java.util.Date(atMillis));
+    }
+}
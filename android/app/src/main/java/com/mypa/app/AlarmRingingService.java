@@ -13,18 +13,28 @@ import android.media.AudioAttributes;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.media.RingtoneManager;
+import android.media.ToneGenerator;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
-import android.os.PowerManager;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.util.Log;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
-import java.text.SimpleDateFormat;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Collection;
 import java.util.Date;
-import java.util.Locale;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class AlarmRingingService extends Service {
     private static final String TAG = "AlarmRingingService";
@@ -34,77 +44,251 @@ public class AlarmRingingService extends Service {
 
     public static final String ACTION_DISMISS = "DISMISS";
     public static final String ACTION_SNOOZE = "SNOOZE";
+    public static final String ACTION_DISMISS_ALL = "DISMISS_ALL";
+    public static final String EXTRA_RECEIVED_AT = "alarm_received_elapsed";
+
+    private static final String SOUND_RINGTONE = "ringtone";
+    // Unanswered this long → TIMEOUT in AlarmEventLog (the alarm keeps ringing)
+    private static final long RING_TIMEOUT_MILLIS = 10 * 60 * 1000L;
 
     private MediaPlayer mediaPlayer;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // Audio focus, tone fade / duck ramps and segmented speech
+    private AlarmPlayback playback;
     private Vibrator vibrator;
-    private PowerManager.WakeLock wakeLock;
-    private int alarmId;
-    private String alarmTitle;
-    private String alarmBody;
+    // One RingWakeLocks lease per ringing alarm (screen → partial once the UI is visible)
+    private final HashMap<Integer, RingWakeLocks.Lease> leases = new HashMap<>();
+    // Ringing alarms in arrival order; the first one (head) owns the audio
+    private final LinkedHashMap<Integer, RingSession> sessions = new LinkedHashMap<>();
+    // Sound the MediaPlayer is currently playing ("ringtone" or a clip path)
+    private String playingSoundKey;
+    // elapsedRealtime() of onCreate, consumed by the first start
+    private long createdAtElapsed;
+    // Playback position to resume at after a sticky restart (consumed by playAlarmSound)
+    private int resumeAtMs;
+    // Sound watchdog: tier being tried (-1 = primary source), when the sound was requested
+    private int soundTier = -1;
+    private long soundRequestedAtElapsed;
+    private String primarySource;
+    // Source that produced audio for the current sound, null while still silent
+    private String soundStartedSource;
+    // Last fallback tier: beeps instead of a MediaPlayer
+    private ToneGenerator toneGenerator;
+    // Alarms whose TIMEOUT event is already logged
+    private final HashSet<Integer> timedOut = new HashSet<>();
+    // Channel exists for this process (created here or by AlarmWarmup)
+    private static volatile boolean channelReady;
 
     @Override
     public void onCreate() {
         super.onCreate();
+        createdAtElapsed = SystemClock.elapsedRealtime();
         Log.d(TAG, "════════════════════════════════════════");
         Log.d(TAG, "✓ SERVICE CREATED");
         Log.d(TAG, "════════════════════════════════════════");
-        acquireWakeLock();
-        createNotificationChannel();
+        createNotificationChannel(this);
+        playback = new AlarmPlayback(this, handler);
     }
 
+    /**
+     * ═══════════════════════════════════════════════════════════════
+     * SESSION QUEUE:
+     * ═══════════════════════════════════════════════════════════════
+     * Each fired alarm becomes a RingSession in an ordered queue.
+     *
+     * - First alarm      → notification + audio + vibration start
+     * - More alarms      → added to the queue, SAME notification updated,
+     *                      audio pipeline keeps running (no restart)
+     * - Dismiss / snooze → act on ONE alarm (by alarm_id, default head);
+     *                      next alarm takes over, service stops when empty
+     * - Process death    → START_STICKY restart resumes the queue saved
+     *                      in RingSessionStore (same alarms, same position)
+     */
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "✓ SERVICE STARTED");
 
         if (intent != null && intent.getAction() != null) {
             String action = intent.getAction();
-            Log.d(TAG, "Action: " + action);
+            int targetId = intent.getIntExtra(AlarmRecord.EXTRA_ID, -1);
+            // Notification actions carry no source; AlarmActivity sets it
+            byte source = intent.getByteExtra(AlarmEventLog.EXTRA_SOURCE, AlarmEventLog.SOURCE_NOTIFICATION);
+            Log.d(TAG, "Action: " + action + " (alarm " + targetId + ")");
 
             if (ACTION_DISMISS.equals(action)) {
-                dismissAlarm();
-                return START_NOT_STICKY;
+                dismissAlarm(targetId, source);
             } else if (ACTION_SNOOZE.equals(action)) {
-                snoozeAlarm();
-                return START_NOT_STICKY;
+                snoozeAlarm(targetId, source);
+            } else if (ACTION_DISMISS_ALL.equals(action)) {
+                dismissAll(source);
             }
+            return sessions.isEmpty() ? START_NOT_STICKY : START_STICKY;
         }
 
+        // Extras first: startForeground() must not wait for SQLite (nor fail on it
+        // before the first unlock). The store row replaces them right after.
+        AlarmRecord record = null;
         if (intent != null) {
-            alarmId = intent.getIntExtra("alarm_id", -1);
-            alarmTitle = intent.getStringExtra("alarm_title");
-            alarmBody = intent.getStringExtra("alarm_body");
+            record = AlarmRecord.fromIntent(intent);
+        } else if (sessions.isEmpty()) {
+            // Sticky restart after process death: resume exactly what was ringing
+            return resumeSessions();
+        }
 
-            if (alarmTitle == null) alarmTitle = "Alarm";
-            if (alarmBody == null) alarmBody = "";
+        RingSession session = null;
+        boolean wasRinging = !sessions.isEmpty();
+        if (record != null) {
+            session = intent != null
+                ? RingSession.fromIntent(record, intent)
+                : new RingSession(record, -1, 0);
+            // Service already running for an earlier alarm → "created" now
+            FireMetrics.mark(session.fireSeq, FireMetrics.STAGE_SERVICE_CREATE,
+                createdAtElapsed > 0 ? createdAtElapsed : SystemClock.elapsedRealtime());
+            createdAtElapsed = 0;
 
-            Log.d(TAG, "Alarm: " + alarmTitle);
+            RingSession ringing = sessions.get(session.alarmId);
+            if (ringing != null) {
+                // Same alarm already ringing: keep that ring (start time, fireSeq)
+                session = ringing;
+            } else {
+                sessions.put(session.alarmId, session);
+            }
+            syncWakeLeases();
+            Log.d(TAG, "Alarm: " + session.title + " (" + sessions.size() + " ringing)");
         }
 
-        // CRITICAL: Start foreground IMMEDIATELY
+        // CRITICAL: Start foreground IMMEDIATELY (every startForegroundService needs it)
         try {
-            Notification notification = buildNotification();
+            // Warm-up already built this alarm's notification → just post it
+            Notification notification = session != null && sessions.size() == 1
+                ? AlarmWarmup.takeNotification(session.alarmId)
+                : null;
+            if (notification == null) {
+                notification = buildNotification();
+            }
             startForeground(NOTIFICATION_ID, notification);
+            if (session != null) FireMetrics.mark(session.fireSeq, FireMetrics.STAGE_FOREGROUND);
             Log.d(TAG, "✓ NOTIFICATION POSTED (startForeground)");
         } catch (Exception e) {
             Log.e(TAG, "✗ FAILED to start foreground!", e);
         }
 
-        // Play sound
-        playAlarmSound();
+        // Native store is the source of truth (clip, snooze limits, full texts)
+        if (session != null) {
+            session = refreshFromStore(session);
+        }
 
-        // Start vibration
-        startVibration();
+        if (wasRinging) {
+            // Collapsed into the running alarm: audio is already playing
+            if (session != null) FireMetrics.mark(session.fireSeq, FireMetrics.STAGE_FIRST_AUDIO);
+            Log.d(TAG, "✓ Alarm queued behind " + head().title);
+        } else {
+            // Play sound
+            playAlarmSound();
 
-        Log.d(TAG, "✓ ALARM RINGING!");
+            // Speak the alarm (pre-synthesized segments from SpeechCache)
+            startSpeech();
+
+            // Start vibration
+            startVibration();
+
+            Log.d(TAG, "✓ ALARM RINGING!");
+        }
+        scheduleRingTimeout();
+        saveSessions();
         Log.d(TAG, "════════════════════════════════════════");
 
         return START_STICKY;
     }
 
-    private void createNotificationChannel() {
+    /**
+     * Replace a session built from Intent extras with the stored alarm.
+     * Runs after startForeground(); the notification is re-posted only if it changed.
+     */
+    private RingSession refreshFromStore(RingSession session) {
+        if (AlarmBootMirror.isLocked(this)) return session;  // extras are all there is
+        AlarmRecord stored = AlarmStore.getInstance(this).get(session.alarmId);
+        if (stored == null) return session;
+
+        RingSession full = new RingSession(stored.id, stored.title, stored.body, stored.type,
+            stored.clipSource, session.fireSeq, session.receivedAtElapsed, session.startedAtMillis,
+            SnoozeManager.canSnooze(stored), stored.snoozeCount);
+        sessions.put(full.alarmId, full);
+        if (!full.title.equals(session.title) || !full.body.equals(session.body)
+            || full.snoozeAllowed != session.snoozeAllowed) {
+            updateNotification();
+        }
+        return full;
+    }
+
+    /**
+     * Sticky restart (null intent): rebuild the queue from RingSessionStore,
+     * post the same notification and resume the head's audio where it was.
+     */
+    private int resumeSessions() {
+        RingSessionStore.Snapshot snapshot = RingSessionStore.load(this);
+        if (snapshot == null || snapshot.sessions.isEmpty()) {
+            Log.w(TAG, "⚠ Sticky restart but nothing was ringing - stopping");
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        for (RingSession session : snapshot.sessions) {
+            sessions.put(session.alarmId, session);
+        }
+        syncWakeLeases();
+        createdAtElapsed = 0;
+        RingSession head = head();
+        Log.d(TAG, "✓ Resuming " + sessions.size() + " ringing alarm(s) after restart, head: " + head);
+
+        try {
+            startForeground(NOTIFICATION_ID, buildNotification());
+        } catch (Exception e) {
+            Log.e(TAG, "✗ FAILED to start foreground!", e);
+        }
+
+        // Same sound as before the crash → continue from the saved position
+        File clip = VoiceClipCache.getCachedFile(this, head.clipSource);
+        String soundKey = clip != null ? clip.getPath() : SOUND_RINGTONE;
+        resumeAtMs = soundKey.equals(snapshot.soundKey) ? snapshot.positionMs : 0;
+
+        playAlarmSound();
+        startSpeech();
+        startVibration();
+        scheduleRingTimeout();
+        saveSessions();
+        return START_STICKY;
+    }
+
+    /**
+     * Persist the queue + head audio position (every state change)
+     */
+    private void saveSessions() {
+        int positionMs = 0;
+        try {
+            if (mediaPlayer != null && mediaPlayer.isPlaying()) {
+                positionMs = mediaPlayer.getCurrentPosition();
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "⚠ Could not read playback position");
+        }
+        RingSessionStore.save(this, sessions.values(), playingSoundKey, positionMs);
+    }
+
+    /**
+     * Alarm that currently owns the sound and the notification
+     */
+    private RingSession head() {
+        return sessions.isEmpty() ? null : sessions.values().iterator().next();
+    }
+
+    /**
+     * Create the alarm channel once per process (AlarmWarmup calls this ahead of time)
+     */
+    static void createNotificationChannel(Context context) {
+        if (channelReady) return;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             try {
-                NotificationManager nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+                NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
                 if (nm != null) {
                     NotificationChannel channel = new NotificationChannel(
                         CHANNEL_ID,
@@ -129,6 +313,7 @@ public class AlarmRingingService extends Service {
                     channel.setSound(alarmSound, audioAttr);
 
                     nm.createNotificationChannel(channel);
+                    channelReady = true;
                     Log.d(TAG, "✓ Notification channel created with alarm sound");
                 }
             } catch (Exception e) {
@@ -138,119 +323,432 @@ public class AlarmRingingService extends Service {
     }
 
     private Notification buildNotification() {
-        SimpleDateFormat fmt = new SimpleDateFormat("hh:mm a", Locale.getDefault());
-        String time = fmt.format(new Date());
+        return buildNotification(this, sessions.values(), System.currentTimeMillis());
+    }
 
-        String title = alarmTitle;
-        String text = time;
-        if (alarmBody != null && !alarmBody.isEmpty()) {
-            text += " • " + alarmBody;
+    /**
+     * Alarm notification for the ringing sessions (first = head).
+     * Static so AlarmWarmup can build it before the alarm fires.
+     *
+     * @param shownAtMillis time printed in the notification
+     */
+    static Notification buildNotification(Context context, Collection<RingSession> sessions, long shownAtMillis) {
+        RingSession head = sessions.isEmpty() ? null : sessions.iterator().next();
+        if (sessions.size() <= 1) {
+            // One alarm: template built at schedule time, only the time is patched in
+            return AlarmNotificationCache.render(context, head, shownAtMillis);
         }
 
+        String title = head.title;
+        String text = AlarmNotificationCache.contentText(shownAtMillis, head.body);
+
+        // ═══════════════════════════════════════════════════════════════
+        // COLLAPSED: several alarms ringing → ONE notification listing all
+        // ═══════════════════════════════════════════════════════════════
+        NotificationCompat.InboxStyle inbox = new NotificationCompat.InboxStyle()
+            .setBigContentTitle(sessions.size() + " alarms");
+        for (RingSession session : sessions) {
+            inbox.addLine(session.body.isEmpty() ? session.title : session.title + " • " + session.body);
+        }
+        NotificationCompat.Builder builder = newNotificationBuilder(context, head)
+            .setWhen(shownAtMillis)
+            .setContentTitle(title + " (+" + (sessions.size() - 1) + " more)")
+            .setContentText(text)
+            .setStyle(inbox)
+            .setNumber(sessions.size());
+
+        Intent dismissAllIntent = new Intent(context, AlarmRingingService.class);
+        dismissAllIntent.setAction(ACTION_DISMISS_ALL);
+        PendingIntent dismissAllPending = PendingIntent.getService(
+            context, NOTIFICATION_ID, dismissAllIntent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        builder.addAction(0, "Dismiss all", dismissAllPending);
+
+        Log.d(TAG, "✓ Notification built (app-owned alarm UI): " + title);
+        return builder.build();
+    }
+
+    /**
+     * Notification skeleton of one alarm: PendingIntents, actions and the
+     * full-screen intent - no title / text / style. AlarmNotificationCache
+     * keeps these per alarm so the fire path does not rebuild them.
+     */
+    static NotificationCompat.Builder newNotificationBuilder(Context context, RingSession head) {
+        int alarmId = head.alarmId;
+
         // ═══════════════════════════════════════════════════════════════
         // FULL-SCREEN INTENT: Shows AlarmActivity like alarm clock UI
         // ═══════════════════════════════════════════════════════════════
         // This is OUR custom UI, NOT system Clock app
         // Appears as full-screen overlay (like alarm-style notification)
         // ═══════════════════════════════════════════════════════════════
-        Intent openIntent = new Intent(this, AlarmActivity.class);
+        Intent openIntent = new Intent(context, AlarmActivity.class);
         openIntent.setFlags(
             Intent.FLAG_ACTIVITY_NEW_TASK |
             Intent.FLAG_ACTIVITY_CLEAR_TOP |
             Intent.FLAG_ACTIVITY_NO_USER_ACTION  // Prevents user interaction during launch
         );
         openIntent.putExtra("alarm_id", alarmId);
-        openIntent.putExtra("alarm_title", alarmTitle);
-        openIntent.putExtra("alarm_body", alarmBody);
+        openIntent.putExtra("alarm_title", head.title);
+        openIntent.putExtra("alarm_body", head.body);
+        // No fireSeq: this PendingIntent (one per alarm, FLAG_UPDATE_CURRENT) is reused
+        // by cached templates across fires - AlarmActivity looks up the latest fire instead
 
         PendingIntent openPending = PendingIntent.getActivity(
-            this, alarmId, openIntent,
+            context, alarmId, openIntent,
             PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
 
         // Dismiss action
-        Intent dismissIntent = new Intent(this, AlarmRingingService.class);
+        Intent dismissIntent = new Intent(context, AlarmRingingService.class);
         dismissIntent.setAction(ACTION_DISMISS);
+        dismissIntent.putExtra(AlarmRecord.EXTRA_ID, alarmId);
         PendingIntent dismissPending = PendingIntent.getService(
-            this, alarmId + 1000, dismissIntent,
+            context, alarmId + 1000, dismissIntent,
             PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
 
         // Snooze action
-        Intent snoozeIntent = new Intent(this, AlarmRingingService.class);
+        Intent snoozeIntent = new Intent(context, AlarmRingingService.class);
         snoozeIntent.setAction(ACTION_SNOOZE);
+        snoozeIntent.putExtra(AlarmRecord.EXTRA_ID, alarmId);
         PendingIntent snoozePending = PendingIntent.getService(
-            this, alarmId + 2000, snoozeIntent,
+            context, alarmId + 2000, snoozeIntent,
             PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
 
         // ═══════════════════════════════════════════════════════════════
         // BUILD ALARM-STYLE NOTIFICATION (App-Owned, NOT System Clock)
         // ═══════════════════════════════════════════════════════════════
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
             .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
-            .setContentTitle(title)
-            .setContentText(text)
-            .setStyle(new NotificationCompat.BigTextStyle().bigText(text))
             .setPriority(NotificationCompat.PRIORITY_MAX)
             .setCategory(NotificationCompat.CATEGORY_ALARM)  // Alarm category, but app-controlled
             .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
             .setOngoing(true)
             .setAutoCancel(false)
             .setContentIntent(openPending)
-            .addAction(0, "Dismiss", dismissPending)
-            .addAction(0, "Snooze", snoozePending);
+            .addAction(0, "Dismiss", dismissPending);
+
+        // Snooze only while the alarm is under its max-snooze limit
+        if (head.snoozeAllowed) {
+            builder.addAction(0, "Snooze", snoozePending);
+        }
 
         // CRITICAL: setFullScreenIntent shows OUR activity, not system Clock
         // This creates alarm-like experience WITHOUT triggering system UI
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             builder.setFullScreenIntent(openPending, true);
         }
+        return builder;
+    }
 
-        Log.d(TAG, "✓ Notification built (app-owned alarm UI): " + title);
-        return builder.build();
+    /**
+     * Alarm sound opened on a MediaPlayer (data source set, not prepared)
+     */
+    static final class AlarmSound {
+        final MediaPlayer player;
+        // "clip", "cached", "uri" or an AlarmSoundFallback tier (see AlarmSoundCache.recordLatency)
+        final String source;
+        // SOUND_RINGTONE or the clip path
+        final String soundKey;
+
+        AlarmSound(MediaPlayer player, String source, String soundKey) {
+            this.player = player;
+            this.source = source;
+            this.soundKey = soundKey;
+        }
+    }
+
+    /**
+     * Open the best local sound for an alarm on a looping alarm-usage player.
+     * Shared by the ring path and AlarmWarmup.
+     *
+     * Order: user voice clip → cached ringtone copy → ringtone URI
+     *
+     * @return opened sound, or null if there is nothing to play
+     */
+    static AlarmSound openAlarmSound(Context context, String clipSource) throws Exception {
+        MediaPlayer player = new MediaPlayer();
+        try {
+            AlarmPlayback.attach(context, player);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                AudioAttributes attr = new AudioAttributes.Builder()
+                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                    .setUsage(AudioAttributes.USAGE_ALARM)
+                    .build();
+                player.setAudioAttributes(attr);
+            } else {
+                player.setAudioStreamType(AudioManager.STREAM_ALARM);
+            }
+
+            // User's recorded voice clip beats the ringtone
+            AlarmSound sound;
+            File clip = VoiceClipCache.getCachedFile(context, clipSource);
+            File cached = AlarmSoundCache.getCachedFile(context);
+            if (clip != null) {
+                try (FileInputStream in = new FileInputStream(clip)) {
+                    player.setDataSource(in.getFD());
+                }
+                sound = new AlarmSound(player, "clip", clip.getPath());
+            } else if (cached != null) {
+                try (FileInputStream in = new FileInputStream(cached)) {
+                    player.setDataSource(in.getFD());
+                }
+                sound = new AlarmSound(player, "cached", SOUND_RINGTONE);
+            } else {
+                Uri uri = AlarmSoundCache.resolveAlarmUri(context);
+                if (uri == null) {
+                    Log.e(TAG, "No sound URI!");
+                    player.release();
+                    return null;
+                }
+                player.setDataSource(context, uri);
+                sound = new AlarmSound(player, "uri", SOUND_RINGTONE);
+                // Next alarm can use the fast path
+                AlarmSoundCache.warmAsync(context);
+            }
+
+            player.setLooping(true);
+            player.setVolume(1.0f, 1.0f);
+            return sound;
+        } catch (Exception e) {
+            player.release();
+            throw e;
+        }
     }
 
+    /**
+     * Starts the alarm sound without blocking onStartCommand
+     *
+     * ═══════════════════════════════════════════════════════════════
+     * LOW-LATENCY PATH:
+     * ═══════════════════════════════════════════════════════════════
+     * 0. AlarmWarmup prepared the player a minute ago → start() only
+     * 1. Local ringtone copy from AlarmSoundCache (no provider lookups)
+     * 2. prepareAsync() → decoder setup runs off the main thread,
+     *    startForeground() is never delayed by audio
+     * 3. start() in onPrepared, latency since AlarmReceiver is recorded
+     *
+     * Falls back to the ringtone URI if there is no cached copy.
+     *
+     * ═══════════════════════════════════════════════════════════════
+     * WATCHDOG:
+     * ═══════════════════════════════════════════════════════════════
+     * No audio START_DEADLINE_MS after the start (or an error earlier)
+     * → next tier of AlarmSoundFallback.CHAIN, until something plays.
+     */
     private void playAlarmSound() {
+        Log.d(TAG, "Starting sound...");
+        releasePlayer();
+        playback.requestFocus();
+        soundTier = -1;
+        soundRequestedAtElapsed = SystemClock.elapsedRealtime();
+
+        final RingSession head = head();
+        AlarmSound staged = head != null ? AlarmWarmup.takeSound(head.alarmId) : null;
+        AlarmSound sound;
         try {
-            Log.d(TAG, "Starting sound...");
+            sound = staged != null
+                ? staged
+                : openAlarmSound(this, head != null ? head.clipSource : null);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Sound failed", e);
+            sound = null;
+        }
+        if (sound == null) {
+            nextSoundTier(SOUND_RINGTONE);
+            return;
+        }
+        primarySource = sound.source;
+        startPlayer(sound, head, staged != null);
+    }
 
-            if (mediaPlayer != null) {
-                mediaPlayer.release();
+    /**
+     * Start one player and arm the watchdog for it
+     *
+     * @param prepared true if the player is already prepared (warm-up)
+     */
+    private void startPlayer(AlarmSound sound, RingSession head, boolean prepared) {
+        mediaPlayer = sound.player;
+        playingSoundKey = sound.soundKey;
+        final String source = sound.source;
+        final String soundKey = sound.soundKey;
+        mediaPlayer.setOnErrorListener((mp, what, extra) -> {
+            Log.e(TAG, "✗ Sound failed (" + source + "): what=" + what + " extra=" + extra);
+            // Only an error of the current, not yet audible player moves down the chain
+            if (mp == mediaPlayer && soundStartedSource == null) {
+                handler.post(() -> nextSoundTier(soundKey));
             }
+            return true;
+        });
+        soundStartedSource = null;
+        handler.removeCallbacks(soundWatchdog);
+        handler.postDelayed(soundWatchdog, AlarmSoundFallback.START_DEADLINE_MS);
+
+        try {
+            if (prepared) {
+                mediaPlayer.start();
+                onFirstAudio(head, source);
+                return;
+            }
+
+            final int startAtMs = resumeAtMs;
+            resumeAtMs = 0;
+            mediaPlayer.setOnPreparedListener(mp -> {
+                if (mp != mediaPlayer) return;  // dismissed / replaced while preparing
+                if (startAtMs > 0) mp.seekTo(startAtMs);
+                mp.start();
+                onFirstAudio(head, source);
+            });
+            mediaPlayer.prepareAsync();
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Sound failed (" + source + ")", e);
+            nextSoundTier(soundKey);
+        }
+    }
+
+    /**
+     * Watchdog deadline: is anything audible?
+     */
+    private final Runnable soundWatchdog = () -> {
+        if (soundStartedSource != null) return;
+        boolean playing = false;
+        try {
+            playing = mediaPlayer != null && mediaPlayer.isPlaying();
+        } catch (Exception e) {
+            Log.w(TAG, "⚠ Player state unreadable");
+        }
+        if (!playing) {
+            Log.w(TAG, "⚠ No audio " + AlarmSoundFallback.START_DEADLINE_MS + "ms after start ("
+                + (soundTier < 0 ? primarySource : AlarmSoundFallback.CHAIN[soundTier]) + ")");
+            nextSoundTier(playingSoundKey);
+        }
+    };
+
+    /**
+     * Current source stayed silent: try the next tier of the fallback chain
+     *
+     * @param standsInFor sound key of the failed source
+     */
+    private void nextSoundTier(String standsInFor) {
+        handler.removeCallbacks(soundWatchdog);
+        releasePlayer();
+        RingSession head = head();
+        if (head == null) return;
+
+        while (++soundTier < AlarmSoundFallback.CHAIN.length) {
+            String tier = AlarmSoundFallback.CHAIN[soundTier];
+            // Same file as the source that just failed
+            if (AlarmSoundFallback.TIER_CACHE.equals(tier) && "cached".equals(primarySource)) continue;
 
-            Uri uri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
-            if (uri == null) {
-                uri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+            if (AlarmSoundFallback.TIER_TONE.equals(tier)) {
+                toneGenerator = AlarmSoundFallback.startTone();
+                if (toneGenerator != null) {
+                    playingSoundKey = standsInFor;
+                    handler.postDelayed(toneRepeat, AlarmSoundFallback.TONE_REPEAT_MS);
+                    onFirstAudio(head, tier);
+                    return;
+                }
+                continue;
             }
 
-            if (uri == null) {
-                Log.e(TAG, "No sound URI!");
+            try {
+                AlarmSound sound = AlarmSoundFallback.open(this, tier, standsInFor);
+                if (sound == null) continue;
+                Log.w(TAG, "⚠ Falling back to " + tier);
+                startPlayer(sound, head, false);
                 return;
+            } catch (Exception e) {
+                Log.e(TAG, "✗ Fallback " + tier + " failed", e);
             }
+        }
 
-            mediaPlayer = new MediaPlayer();
+        Log.e(TAG, "✗ EVERY SOUND TIER FAILED - alarm is vibrate only");
+        AlarmSoundFallback.recordSilent(this);
+    }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                AudioAttributes attr = new AudioAttributes.Builder()
-                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                    .setUsage(AudioAttributes.USAGE_ALARM)
-                    .build();
-                mediaPlayer.setAudioAttributes(attr);
-            } else {
-                mediaPlayer.setAudioStreamType(AudioManager.STREAM_ALARM);
+    private final Runnable toneRepeat = new Runnable() {
+        @Override
+        public void run() {
+            if (toneGenerator == null) return;
+            AlarmSoundFallback.beep(toneGenerator);
+            handler.postDelayed(this, AlarmSoundFallback.TONE_REPEAT_MS);
+        }
+    };
+
+    private void onFirstAudio(RingSession head, String source) {
+        handler.removeCallbacks(soundWatchdog);
+        soundStartedSource = source;
+        long sinceRequest = SystemClock.elapsedRealtime() - soundRequestedAtElapsed;
+        AlarmSoundFallback.recordStart(this, source, sinceRequest);
+        if (head != null) {
+            FireMetrics.mark(head.fireSeq, FireMetrics.STAGE_FIRST_AUDIO);
+            if (head.receivedAtElapsed > 0) {
+                AlarmSoundCache.recordLatency(this,
+                    SystemClock.elapsedRealtime() - head.receivedAtElapsed, source);
             }
+        }
+        // Fade the tone in (the ToneGenerator tier has no volume control)
+        if (toneGenerator == null && mediaPlayer != null) {
+            playback.onToneStarted(mediaPlayer);
+        }
+        if (soundTier >= 0) {
+            Log.w(TAG, "⚠ Sound playing from fallback " + source + " after " + sinceRequest + "ms");
+        } else {
+            Log.d(TAG, "✓ Sound playing! (" + source + ")");
+        }
+    }
 
-            mediaPlayer.setDataSource(this, uri);
-            mediaPlayer.setLooping(true);
-            mediaPlayer.setVolume(1.0f, 1.0f);
-            mediaPlayer.prepare();
-            mediaPlayer.start();
+    /**
+     * Release the MediaPlayer / ToneGenerator of the current tier
+     */
+    private void releasePlayer() {
+        handler.removeCallbacks(toneRepeat);
+        playback.onToneReleased();
+        if (toneGenerator != null) {
+            try {
+                toneGenerator.stopTone();
+                toneGenerator.release();
+            } catch (Exception e) {
+                Log.e(TAG, "Release tone failed", e);
+            }
+            toneGenerator = null;
+        }
+        if (mediaPlayer != null) {
+            try {
+                mediaPlayer.release();
+            } catch (Exception e) {
+                Log.e(TAG, "Release player failed", e);
+            }
+            mediaPlayer = null;
+        }
+    }
 
-            Log.d(TAG, "✓ Sound playing!");
-        } catch (Exception e) {
-            Log.e(TAG, "✗ Sound failed", e);
+    /**
+     * Speaks the alarm from pre-synthesized local segments (title, then
+     * each part of the body), repeating every few seconds over the ducked
+     * tone. No TextToSpeech engine is touched at ring time.
+     */
+    private void startSpeech() {
+        stopSpeech();
+        RingSession head = head();
+        if (head == null) return;
+        if (VoiceClipCache.getCachedFile(this, head.clipSource) != null) {
+            Log.d(TAG, "Voice clip is playing - skipping synthesized speech");
+            return;
+        }
+        List<File> segments = SpeechCache.getCachedSegments(this, head.title, head.body);
+        if (segments == null) {
+            Log.d(TAG, "No cached speech for this alarm - ringtone only");
+            return;
         }
+        playback.startSpeech(segments);
+    }
+
+    private void stopSpeech() {
+        playback.stopSpeech();
     }
 
     private void startVibration() {
@@ -286,61 +784,194 @@ public class AlarmRingingService extends Service {
         }
     }
 
-    private void acquireWakeLock() {
-        try {
-            PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
-            if (pm != null) {
-                // CRITICAL FIX: Use FULL_WAKE_LOCK to ensure notification shows
-                // PARTIAL_WAKE_LOCK doesn't wake screen, causing notification suppression
-                wakeLock = pm.newWakeLock(
-                    PowerManager.SCREEN_BRIGHT_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP,
-                    "AlarmApp:ServiceWakeLock"
-                );
-                // Auto-release after 10 minutes (safety measure)
-                wakeLock.acquire(10 * 60 * 1000L);
-                Log.d(TAG, "✓ Full wake lock acquired (screen will turn on)");
+    /**
+     * Hold a wake-lock lease for exactly the alarms in the queue
+     */
+    private void syncWakeLeases() {
+        Iterator<Map.Entry<Integer, RingWakeLocks.Lease>> it = leases.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, RingWakeLocks.Lease> entry = it.next();
+            if (!sessions.containsKey(entry.getKey())) {
+                entry.getValue().release();
+                it.remove();
+            }
+        }
+        for (Integer alarmId : sessions.keySet()) {
+            if (!leases.containsKey(alarmId)) {
+                leases.put(alarmId, RingWakeLocks.acquire(this, alarmId, RingWakeLocks.HOLDER_SERVICE));
             }
-        } catch (Exception e) {
-            Log.e(TAG, "✗ Wake lock failed", e);
         }
     }
 
-    private void dismissAlarm() {
-        Log.d(TAG, "✓ ALARM DISMISSED");
-        stopAlarmSound();
-        stopVibration();
-        releaseWakeLock();
-        stopForeground(true);
-        stopSelf();
+    /**
+     * Dismiss one ringing alarm (-1 = the one currently shown)
+     */
+    private void dismissAlarm(int targetId, byte source) {
+        RingSession session = removeSession(targetId);
+        Log.d(TAG, "✓ ALARM DISMISSED: " + session);
+        if (session != null) {
+            SnoozeManager.onDismiss(this, session.alarmId);
+            AlarmEventLog.record(this, session.alarmId, AlarmEventLog.EVENT_DISMISS, source,
+                session.startedAtMillis, session.snoozeCount);
+        }
+        FireMetrics.persist(this);
+        if (session != null) {
+            AlarmStateSync.publish(this, session.alarmId, AlarmStateSync.EVENT_DISMISSED);
+        }
+        onSessionRemoved(session);
     }
 
-    private void snoozeAlarm() {
-        Log.d(TAG, "✓ ALARM SNOOZED - Scheduling for 5 minutes later");
+    /**
+     * Snooze one ringing alarm (-1 = the one currently shown).
+     * Duration and limit come from the alarm's stored snooze settings.
+     */
+    private void snoozeAlarm(int targetId, byte source) {
+        RingSession session = findSession(targetId);
+        if (session == null) {
+            onSessionRemoved(null);
+            return;
+        }
 
-        // CRITICAL FIX: Use helper class to re-schedule alarm
+        // CRITICAL FIX: Use SnoozeManager (AlarmSchedulerHelper underneath)
         // This prevents triggering system Clock app
-        boolean success = AlarmSchedulerHelper.scheduleSnoozeAlarm(
+        SnoozeManager.Decision decision = SnoozeManager.snooze(
             this,
-            alarmId,
-            alarmTitle,
-            alarmBody
+            session.alarmId,
+            session.title,
+            session.body
         );
 
-        if (success) {
-            Log.d(TAG, "✓ Snooze alarm scheduled successfully");
+        if (!decision.allowed && decision.untilMillis == 0) {
+            // Snooze limit reached: keep ringing, drop the Snooze action
+            Log.w(TAG, "⚠ Snooze refused for " + session + " - keeps ringing");
+            sessions.put(session.alarmId, session.withSnoozeAllowed(false));
+            updateNotification();
+            saveSessions();
+            return;
+        }
+
+        if (decision.allowed) {
+            Log.d(TAG, "✓ ALARM SNOOZED #" + decision.count + " until " + new Date(decision.untilMillis));
+            AlarmEventLog.record(this, session.alarmId, AlarmEventLog.EVENT_SNOOZE, source,
+                session.startedAtMillis, decision.count);
         } else {
             Log.e(TAG, "✗ Failed to schedule snooze alarm");
         }
 
-        // Stop current alarm
-        stopAlarmSound();
-        stopVibration();
-        releaseWakeLock();
-        stopForeground(true);
-        stopSelf();
+        sessions.remove(session.alarmId);
+        FireMetrics.persist(this);
+        AlarmStateSync.publish(this, session.alarmId, AlarmStateSync.EVENT_SNOOZED);
+        onSessionRemoved(session);
+    }
+
+    private void dismissAll(byte source) {
+        Log.d(TAG, "✓ ALL ALARMS DISMISSED (" + sessions.size() + ")");
+        for (RingSession session : sessions.values()) {
+            SnoozeManager.onDismiss(this, session.alarmId);
+            AlarmEventLog.record(this, session.alarmId, AlarmEventLog.EVENT_DISMISS, source,
+                session.startedAtMillis, session.snoozeCount);
+        }
+        FireMetrics.persist(this);
+        for (RingSession session : sessions.values()) {
+            AlarmStateSync.publish(this, session.alarmId, AlarmStateSync.EVENT_DISMISSED);
+        }
+        sessions.clear();
+        onSessionRemoved(null);
+    }
+
+    private RingSession findSession(int targetId) {
+        return targetId == -1 || !sessions.containsKey(targetId) ? head() : sessions.get(targetId);
+    }
+
+    private RingSession removeSession(int targetId) {
+        RingSession session = findSession(targetId);
+        if (session != null) {
+            sessions.remove(session.alarmId);
+        }
+        return session;
+    }
+
+    /**
+     * Stop everything when the queue is empty, otherwise hand over to the next alarm
+     */
+    private void onSessionRemoved(RingSession removed) {
+        if (removed != null) timedOut.remove(removed.alarmId);
+        if (sessions.isEmpty()) {
+            // Ringing is over - the process may be gone soon, get the events on disk
+            handler.removeCallbacks(ringTimeout);
+            timedOut.clear();
+            AlarmEventLog.flush(this);
+            RingSessionStore.clear(this);
+            stopAlarmSound();
+            stopVibration();
+            releaseWakeLock();
+            stopForeground(true);
+            stopSelf();
+            return;
+        }
+
+        syncWakeLeases();
+        RingSession head = head();
+        Log.d(TAG, sessions.size() + " alarms still ringing, now: " + head.title);
+
+        // Restart audio only if the next alarm needs a different sound
+        File clip = VoiceClipCache.getCachedFile(this, head.clipSource);
+        String nextSoundKey = clip != null ? clip.getPath() : SOUND_RINGTONE;
+        if (!nextSoundKey.equals(playingSoundKey)) {
+            stopSpeech();
+            playAlarmSound();
+        }
+        startSpeech();
+
+        updateNotification();
+        saveSessions();
+    }
+
+    private final Runnable ringTimeout = this::scheduleRingTimeout;
+
+    /**
+     * Log TIMEOUT for alarms unanswered for RING_TIMEOUT_MILLIS, then wait for the next one
+     */
+    private void scheduleRingTimeout() {
+        handler.removeCallbacks(ringTimeout);
+        long now = System.currentTimeMillis();
+        long nextDue = Long.MAX_VALUE;
+        for (RingSession session : sessions.values()) {
+            long due = session.startedAtMillis + RING_TIMEOUT_MILLIS;
+            if (due > now) {
+                nextDue = Math.min(nextDue, due);
+            } else if (timedOut.add(session.alarmId)) {
+                Log.w(TAG, "⚠ " + session + " unanswered for " + (RING_TIMEOUT_MILLIS / 60000) + " min");
+                AlarmEventLog.record(this, session.alarmId, AlarmEventLog.EVENT_TIMEOUT,
+                    AlarmEventLog.SOURCE_SYSTEM, session.startedAtMillis, session.snoozeCount);
+            }
+        }
+        if (nextDue != Long.MAX_VALUE) {
+            handler.postDelayed(ringTimeout, nextDue - now);
+        }
+    }
+
+    private void updateNotification() {
+        NotificationManager nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (nm != null) {
+            nm.notify(NOTIFICATION_ID, buildNotification());
+        }
     }
 
     private void stopAlarmSound() {
+        playback.release();
+        handler.removeCallbacks(soundWatchdog);
+        handler.removeCallbacks(toneRepeat);
+        if (toneGenerator != null) {
+            try {
+                toneGenerator.stopTone();
+                toneGenerator.release();
+            } catch (Exception e) {
+                Log.e(TAG, "Stop tone failed", e);
+            }
+            toneGenerator = null;
+            playingSoundKey = null;
+        }
         if (mediaPlayer != null) {
             try {
                 if (mediaPlayer.isPlaying()) {
@@ -348,6 +979,7 @@ public class AlarmRingingService extends Service {
                 }
                 mediaPlayer.release();
                 mediaPlayer = null;
+                playingSoundKey = null;
                 Log.d(TAG, "Sound stopped");
             } catch (Exception e) {
                 Log.e(TAG, "Stop sound failed", e);
@@ -368,21 +1000,24 @@ public class AlarmRingingService extends Service {
     }
 
     private void releaseWakeLock() {
-        if (wakeLock != null && wakeLock.isHeld()) {
-            try {
-                wakeLock.release();
-                wakeLock = null;
-                Log.d(TAG, "Wake lock released");
-            } catch (Exception e) {
-                Log.e(TAG, "Wake lock release failed", e);
-            }
+        for (RingWakeLocks.Lease lease : leases.values()) {
+            lease.release();
         }
+        if (!leases.isEmpty()) {
+            Log.d(TAG, "Wake lock leases released (" + leases.size() + ")");
+        }
+        leases.clear();
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "✓ SERVICE DESTROYED");
+        handler.removeCallbacks(ringTimeout);
+        if (!sessions.isEmpty()) {
+            // Killed while ringing: keep the latest position for the sticky restart
+            saveSessions();
+        }
         stopAlarmSound();
         stopVibration();
         releaseWakeLock();
@@ -4,7 +4,6 @@ import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Build;
 import android.util.Log;
 
 /**
@@ -30,13 +29,16 @@ import android.util.Log;
  *   ✅ Bypasses Doze mode
  *   ⚠️  AVOID for custom alarm apps!
  *
- * setExactAndAllowWhileIdle() [RECOMMENDED]:
+ * setExactAndAllowWhileIdle():
  *   ✅ App-owned alarm (no system interference)
  *   ✅ Bypasses Doze mode
  *   ✅ Exact timing guaranteed
  *   ✅ Custom sound and UI
  *   ⚠️  Requires SCHEDULE_EXACT_ALARM permission (Android 12+)
  *
+ * The API actually used is chosen per device by AlarmStrategySelector
+ * (permission, battery optimization, measured lateness).
+ *
  * ═══════════════════════════════════════════════════════════════
  * REQUIRED PERMISSIONS (AndroidManifest.xml):
  * ═══════════════════════════════════════════════════════════════
@@ -74,20 +76,12 @@ public class AlarmSchedulerHelper {
             Log.d(TAG, "════════════════════════════════════════════════");
 
             // Create intent for AlarmReceiver
-            Intent intent = new Intent(context, AlarmReceiver.class);
+            Intent intent = alarmIntent(context);
             intent.putExtra("alarm_id", alarmId);
             intent.putExtra("alarm_title", title != null ? title : "Alarm");
             intent.putExtra("alarm_body", body != null ? body : "");
             intent.putExtra("alarm_type", type != null ? type : "alarm");
 
-            // Create PendingIntent
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                context,
-                alarmId,  // Use alarm ID as request code
-                intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-
             // Get AlarmManager
             AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
             if (alarmManager == null) {
@@ -96,52 +90,29 @@ public class AlarmSchedulerHelper {
             }
 
             // ═══════════════════════════════════════════════════════════════
-            // CRITICAL FIX: Use setAlarmClock() for MAXIMUM RELIABILITY
+            // STRATEGY: setAlarmClock() unless this device proves otherwise
             // ═══════════════════════════════════════════════════════════════
             //
-            // WHY setAlarmClock() IS BEST:
+            // WHY setAlarmClock() IS THE DEFAULT:
             // ✅ Bypasses ALL power restrictions (Doze, Battery Saver, App Standby)
-            // ✅ GUARANTEED to fire even when app is FORCE-STOPPED
             // ✅ Wakes device from deep sleep
             // ✅ Shows alarm icon in status bar (user knows alarm is set)
             // ✅ Highest priority in Android power management
-            // ✅ Works on ALL OEMs (Xiaomi, Huawei, Samsung, etc.)
             //
             // MYTH BUSTED: "setAlarmClock plays system sound"
             // ❌ FALSE! setAlarmClock() only schedules the alarm
             // ✅ YOUR MediaPlayer plays the sound (in AlarmRingingService)
             // ✅ YOUR notification shows (via startForeground)
-            // ✅ System only shows small alarm icon in status bar
-            //
-            // WHY NOT setExactAndAllowWhileIdle():
-            // ❌ Can be delayed up to 9 minutes in Doze mode
-            // ❌ Has quota limits (15 alarms per 15 minutes)
-            // ❌ May NOT fire when app is force-stopped on some OEMs
-            // ❌ Subject to aggressive battery optimization on Xiaomi/Huawei
             //
-            // PRODUCTION TESTED: setAlarmClock() works 100% reliably
+            // AlarmStrategySelector switches away from it only when the
+            // exact-alarm permission is missing, or when another API was
+            // MEASURED to be more punctual on this device.
             // ═══════════════════════════════════════════════════════════════
+            String strategy = armWithStrategy(context, alarmManager, intent, alarmId, triggerAtMillis);
+            Log.d(TAG, "✓ Scheduled with " + strategy);
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                // Android 5.0+ (API 21+)
-                // setAlarmClock: HIGHEST priority, bypasses ALL restrictions
-                AlarmManager.AlarmClockInfo alarmClockInfo = new AlarmManager.AlarmClockInfo(
-                    triggerAtMillis,
-                    pendingIntent  // Show intent when user taps alarm icon (optional)
-                );
-                alarmManager.setAlarmClock(alarmClockInfo, pendingIntent);
-                Log.d(TAG, "✓ Scheduled with setAlarmClock() [MAXIMUM RELIABILITY - WORKS WHEN APP KILLED]");
-
-            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                // Android 4.4-4.4W (API 19-20)
-                alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerAtMillis, pendingIntent);
-                Log.d(TAG, "✓ Scheduled with setExact()");
-
-            } else {
-                // Android < 4.4 (very rare)
-                alarmManager.set(AlarmManager.RTC_WAKEUP, triggerAtMillis, pendingIntent);
-                Log.d(TAG, "✓ Scheduled with set()");
-            }
+            // Notification template + audio staged ~60s early in :alarm (see AlarmWarmup)
+            AlarmWarmup.schedule(context, alarmId, triggerAtMillis);
 
             Log.d(TAG, "════════════════════════════════════════════════");
             return true;
@@ -152,6 +123,64 @@ public class AlarmSchedulerHelper {
         }
     }
 
+    /**
+     * Schedule exact alarm from a stored record
+     *
+     * @param context Application context
+     * @param record Alarm from AlarmStore
+     * @return true if scheduled successfully
+     */
+    public static boolean scheduleExactAlarm(Context context, AlarmRecord record) {
+        // Single-armed mode: push into the min-heap instead of arming
+        if (NextAlarmScheduler.isEnabled(context)) {
+            NextAlarmScheduler.getInstance(context).enqueue(record);
+            return true;
+        }
+
+        return scheduleExactAlarm(
+            context,
+            record.id,
+            record.triggerAtMillis,
+            record.title,
+            record.body,
+            record.type
+        );
+    }
+
+    /**
+     * Compute, store and arm the next occurrence of a repeating alarm.
+     * Pure java.time math - no Bridge or WebView involved.
+     *
+     * @param context Application context
+     * @param record Repeating alarm (fireCount = fires so far)
+     * @param afterMillis Find the first occurrence strictly after this time
+     * @return true if a next occurrence was armed, false if the rule ended
+     */
+    public static boolean scheduleNextOccurrence(Context context, AlarmRecord record, long afterMillis) {
+        AlarmStore store = AlarmStore.getInstance(context);
+        try {
+            AlarmRecurrence recurrence = AlarmRecurrence.parse(record.recurrence);
+            long next = recurrence.hasRemaining(record.fireCount)
+                ? recurrence.nextAfter(afterMillis, java.time.ZoneId.systemDefault())
+                : -1;
+
+            if (next <= 0) {
+                Log.d(TAG, "Recurrence ended for alarm " + record.id);
+                store.disable(record.id);
+                return false;
+            }
+
+            record.triggerAtMillis = next;
+            store.updateTrigger(record.id, next);
+            Log.d(TAG, "Next occurrence of alarm " + record.id + ": " + new java.util.Date(next));
+            return scheduleExactAlarm(context, record);
+
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Invalid recurrence for alarm " + record.id + ": " + record.recurrence, e);
+            return false;
+        }
+    }
+
     /**
      * Cancel scheduled alarm
      *
@@ -163,14 +192,17 @@ public class AlarmSchedulerHelper {
         try {
             Log.d(TAG, "Cancelling alarm ID: " + alarmId);
 
-            Intent intent = new Intent(context, AlarmReceiver.class);
+            // Same identity as scheduleExactAlarm (extras are not part of it)
+            PendingIntent pendingIntent = receiverPendingIntent(context, alarmId, alarmIntent(context));
 
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                context,
-                alarmId,
-                intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
+            // Single-armed mode: drop it from the min-heap as well
+            if (NextAlarmScheduler.isEnabled(context)) {
+                NextAlarmScheduler.getInstance(context).remove(alarmId);
+            }
+
+            AlarmWarmup.cancel(context, alarmId);
+            AlarmNotificationCache.evict(alarmId);
+            AlarmBootMirror.requestSync(context);
 
             AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
             if (alarmManager != null) {
@@ -189,10 +221,14 @@ public class AlarmSchedulerHelper {
     }
 
     /**
-     * Schedule snooze alarm (5 minutes from now)
+     * Arm a snooze for an alarm. Snooze state and limits live in SnoozeManager.
+     *
+     * Snooze PendingIntents use ACTION_SNOOZE_FIRE with the ORIGINAL alarm ID
+     * as request code, so they can never collide with a real alarm's PendingIntent.
      *
      * @param context Application context
      * @param alarmId Original alarm ID
+     * @param atMillis When the snoozed alarm rings again
      * @param title Alarm title
      * @param body Alarm body
      * @return true if scheduled successfully
@@ -200,19 +236,33 @@ public class AlarmSchedulerHelper {
     public static boolean scheduleSnoozeAlarm(
         Context context,
         int alarmId,
+        long atMillis,
         String title,
         String body
     ) {
-        // Calculate snooze time: 5 minutes from now
-        long snoozeTimeMillis = System.currentTimeMillis() + (5 * 60 * 1000);
+        try {
+            Log.d(TAG, "Scheduling SNOOZE for alarm " + alarmId + " at " + new java.util.Date(atMillis));
+
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            if (alarmManager == null) {
+                Log.e(TAG, "✗ AlarmManager not available");
+                return false;
+            }
 
-        // Use offset ID to avoid collision with original alarm
-        int snoozeId = alarmId + 10000;
+            Intent intent = snoozeIntent(context, alarmId);
+            intent.putExtra("alarm_title", title != null ? title : "Alarm");
+            intent.putExtra("alarm_body", body != null ? body : "");
+            intent.putExtra("alarm_type", "alarm");
 
-        Log.d(TAG, "Scheduling SNOOZE for alarm " + alarmId + " (snooze ID: " + snoozeId + ")");
-        Log.d(TAG, "Will ring in 5 minutes at: " + new java.util.Date(snoozeTimeMillis));
+            // Same strategy as real alarms (see scheduleExactAlarm)
+            String strategy = armWithStrategy(context, alarmManager, intent, alarmId, atMillis);
+            Log.d(TAG, "✓ Snooze scheduled with " + strategy);
+            return true;
 
-        return scheduleExactAlarm(context, snoozeId, snoozeTimeMillis, title, body, "alarm");
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to schedule snooze", e);
+            return false;
+        }
     }
 
     /**
@@ -223,8 +273,106 @@ public class AlarmSchedulerHelper {
      * @return true if cancelled successfully
      */
     public static boolean cancelSnoozeAlarm(Context context, int alarmId) {
-        int snoozeId = alarmId + 10000;
-        Log.d(TAG, "Cancelling snooze alarm ID: " + snoozeId);
-        return cancelAlarm(context, snoozeId);
+        try {
+            Log.d(TAG, "Cancelling snooze of alarm ID: " + alarmId);
+
+            PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                alarmId,
+                snoozeIntent(context, alarmId),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+            );
+
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            AlarmBootMirror.requestSync(context);
+            if (alarmManager != null) {
+                alarmManager.cancel(pendingIntent);
+                pendingIntent.cancel();
+                return true;
+            }
+            return false;
+
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to cancel snooze", e);
+            return false;
+        }
+    }
+
+    /**
+     * Arm a receiver Intent with the strategy AlarmStrategySelector picks.
+     * The Intent is tagged with the strategy so AlarmReceiver can measure it.
+     * Falls back to inexact if exact alarms were revoked since the last check.
+     *
+     * @return strategy used
+     */
+    static String armWithStrategy(Context context, AlarmManager alarmManager, Intent intent,
+                                  int requestCode, long triggerAtMillis) {
+        return armWithStrategy(context, alarmManager, intent, requestCode, triggerAtMillis,
+            AlarmStrategySelector.tag(context, intent));
+    }
+
+    /**
+     * Arm with a fixed strategy (AlarmBootMirror: the measured one is unreadable before unlock)
+     */
+    static String armWithStrategy(Context context, AlarmManager alarmManager, Intent intent,
+                                  int requestCode, long triggerAtMillis, String strategy) {
+        intent.putExtra(AlarmStrategySelector.EXTRA_STRATEGY, strategy);
+        // Device-protected copy for LOCKED_BOOT_COMPLETED
+        AlarmBootMirror.requestSync(context);
+        // Dedup key of this fire (see AlarmDeliveryDedup)
+        intent.putExtra(AlarmDeliveryDedup.EXTRA_OCCURRENCE_AT, triggerAtMillis);
+        try {
+            AlarmStrategySelector.arm(alarmManager, strategy, triggerAtMillis,
+                receiverPendingIntent(context, requestCode, intent));
+            return strategy;
+        } catch (SecurityException e) {
+            Log.w(TAG, "⚠ " + strategy + " not allowed any more - falling back to inexact");
+            AlarmStrategySelector.invalidate();
+            strategy = AlarmStrategySelector.STRATEGY_INEXACT_IDLE;
+            intent.putExtra(AlarmStrategySelector.EXTRA_STRATEGY, strategy);
+            AlarmStrategySelector.arm(alarmManager, strategy, triggerAtMillis,
+                receiverPendingIntent(context, requestCode, intent));
+            return strategy;
+        }
+    }
+
+    /**
+     * Armed alarm PendingIntent of this ID, or null if none exists (AlarmReconciler)
+     */
+    static PendingIntent findAlarmIntent(Context context, int alarmId) {
+        return PendingIntent.getBroadcast(context, alarmId, alarmIntent(context),
+            PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    /**
+     * Armed snooze PendingIntent of this alarm, or null if none exists (AlarmReconciler)
+     */
+    static PendingIntent findSnoozeIntent(Context context, int alarmId) {
+        return PendingIntent.getBroadcast(context, alarmId, snoozeIntent(context, alarmId),
+            PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private static PendingIntent receiverPendingIntent(Context context, int requestCode, Intent intent) {
+        return PendingIntent.getBroadcast(
+            context,
+            requestCode,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    /**
+     * Identity of a per-alarm PendingIntent: AlarmReceiver, no action, request code = ID.
+     * Schedule, cancel and probe all build it here so they can never drift apart.
+     */
+    private static Intent alarmIntent(Context context) {
+        return new Intent(context, AlarmReceiver.class);
+    }
+
+    private static Intent snoozeIntent(Context context, int alarmId) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(SnoozeManager.ACTION_SNOOZE_FIRE);
+        intent.putExtra("alarm_id", alarmId);
+        return intent;
     }
 }
@@ -0,0 +1,156 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * AlarmSoundCache - Keeps a local copy of the alarm ringtone
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * The default alarm URI (content://settings/system/alarm_alert) is an
+ * indirection: MediaPlayer has to ask the settings provider, then the
+ * media provider, then open the real file. On slow phones that is
+ * hundreds of milliseconds BEFORE the first sample plays.
+ *
+ * Fix: copy the ringtone into app storage at SCHEDULE time (no hurry
+ * then), so at RING time the service opens a plain local file.
+ *
+ *   schedule()  → warm()        [background, once per ringtone change]
+ *   ring        → getCachedFile() → MediaPlayer.prepareAsync()
+ */
+public class AlarmSoundCache {
+    private static final String TAG = "AlarmSoundCache";
+
+    private static final String CACHE_DIR = "alarm_sound";
+    private static final String CACHE_FILE = "default_alarm";
+    // Ringtone URI the cached copy was made from
+    private static final String SETTING_SOURCE_URI = "sound_cache_source";
+    // Ringtones bigger than this are streamed from the URI instead
+    private static final long MAX_CACHE_BYTES = 8 * 1024 * 1024L;
+
+    // Receiver → first audio latency of the last alarm
+    static final String SETTING_LATENCY_MS = "audio_latency_ms";
+    static final String SETTING_LATENCY_SOURCE = "audio_latency_source";
+    static final String SETTING_LATENCY_AT = "audio_latency_at";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * warm() on a background thread (safe to call from the plugin thread)
+     */
+    public static void warmAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> warm(appContext));
+    }
+
+    /**
+     * Copy the current default alarm ringtone if it is not cached yet.
+     * Does disk I/O - call from a background thread.
+     *
+     * @return true if a cached copy is ready
+     */
+    public static synchronized boolean warm(Context context) {
+        Uri source = resolveAlarmUri(context);
+        if (source == null) {
+            Log.w(TAG, "⚠ No alarm ringtone to cache");
+            return false;
+        }
+
+        AlarmStore store = AlarmStore.getInstance(context);
+        File file = cacheFile(context);
+        if (file.exists() && source.toString().equals(store.getSetting(SETTING_SOURCE_URI, null))) {
+            return true;
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        long start = System.currentTimeMillis();
+        try (InputStream in = context.getContentResolver().openInputStream(source);
+             FileOutputStream out = new FileOutputStream(tmp)) {
+            if (in == null) {
+                Log.w(TAG, "⚠ Cannot open ringtone " + source);
+                return false;
+            }
+
+            byte[] buffer = new byte[16 * 1024];
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > MAX_CACHE_BYTES) {
+                    Log.w(TAG, "⚠ Ringtone too large to cache, will stream it");
+                    tmp.delete();
+                    return false;
+                }
+                out.write(buffer, 0, read);
+            }
+            out.getFD().sync();
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to cache ringtone", e);
+            tmp.delete();
+            return false;
+        }
+
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "✗ Failed to move cached ringtone into place");
+            tmp.delete();
+            return false;
+        }
+        store.putSetting(SETTING_SOURCE_URI, source.toString());
+        Log.d(TAG, "✓ Ringtone cached (" + file.length() + " bytes) in "
+            + (System.currentTimeMillis() - start) + "ms");
+        return true;
+    }
+
+    /**
+     * Remember how long the last alarm took from AlarmReceiver to first audio
+     *
+     * @param source "clip" (user voice clip), "cached" (local ringtone copy) or "uri" (ringtone URI)
+     */
+    public static void recordLatency(Context context, long latencyMs, String source) {
+        AlarmStore store = AlarmStore.getInstance(context);
+        store.putSetting(SETTING_LATENCY_MS, String.valueOf(latencyMs));
+        store.putSetting(SETTING_LATENCY_SOURCE, source);
+        store.putSetting(SETTING_LATENCY_AT, String.valueOf(System.currentTimeMillis()));
+        Log.d(TAG, "✓ Receiver → audio latency: " + latencyMs + "ms (" + source + ")");
+    }
+
+    /**
+     * Local copy of the alarm ringtone, or null if none is cached
+     */
+    public static File getCachedFile(Context context) {
+        File file = cacheFile(context);
+        return file.exists() && file.length() > 0 ? file : null;
+    }
+
+    /**
+     * Actual ringtone behind the default alarm URI (falls back to notification sound)
+     */
+    static Uri resolveAlarmUri(Context context) {
+        Uri uri = RingtoneManager.getActualDefaultRingtoneUri(context, RingtoneManager.TYPE_ALARM);
+        if (uri == null) {
+            uri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+        }
+        if (uri == null) {
+            uri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+        }
+        return uri;
+    }
+
+    private static File cacheFile(Context context) {
+        File dir = new File(context.getNoBackupFilesDir(), CACHE_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return new File(dir, CACHE_FILE);
+    }
+}
@@ -0,0 +1,230 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.media.RingtoneManager;
+import android.media.ToneGenerator;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AlarmSoundFallback - Tiered fallback chain for an alarm that stays silent
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * The ringtone behind the alarm URI can be unreadable (tone on a removed
+ * SD card, deleted file, revoked provider). MediaPlayer then fails and
+ * the alarm rings SILENTLY - the worst possible failure for an alarm.
+ *
+ * AlarmRingingService arms a watchdog when it starts the sound. If no
+ * audio is playing after START_DEADLINE_MS (or the player reports an
+ * error first) it walks this chain, one tier at a time:
+ *
+ *   1. fallbackCache    local ringtone copy (AlarmSoundCache)
+ *   2. alarmUri         system default alarm sound
+ *   3. notificationUri  system default notification sound
+ *   4. bundled          res/raw/alarm_fallback.wav (always readable)
+ *   5. tone             ToneGenerator beeps (no decoder at all)
+ *
+ * Every ring records which tier produced sound and how long it took
+ * (normal sources included), so silent alarms become measurable.
+ */
+public class AlarmSoundFallback {
+    private static final String TAG = "AlarmSoundFallback";
+
+    public static final String TIER_CACHE = "fallbackCache";
+    public static final String TIER_ALARM_URI = "alarmUri";
+    public static final String TIER_NOTIFICATION_URI = "notificationUri";
+    public static final String TIER_BUNDLED = "bundled";
+    public static final String TIER_TONE = "tone";
+    static final String[] CHAIN = {TIER_CACHE, TIER_ALARM_URI, TIER_NOTIFICATION_URI, TIER_BUNDLED, TIER_TONE};
+
+    // Audio must be playing this long after a tier was started
+    static final long START_DEADLINE_MS = 300L;
+    // ToneGenerator beeps are re-triggered at this interval
+    static final long TONE_REPEAT_MS = 1500L;
+    private static final int TONE_DURATION_MS = 1000;
+
+    private static final String SETTING_TIER_PREFIX = "sound_tier_";
+    private static final String SETTING_SILENT = "sound_silent";
+    // Every tier that can report a start (primary sources first)
+    private static final String[] KNOWN_TIERS = {
+        "staged", "clip", "cached", "uri",
+        TIER_CACHE, TIER_ALARM_URI, TIER_NOTIFICATION_URI, TIER_BUNDLED, TIER_TONE
+    };
+
+    /**
+     * How often one tier produced the first audio and how fast
+     */
+    public static class Stats {
+        public final String tier;
+        public int count;
+        public long lastMs = -1;
+        public long maxMs = -1;
+        public long lastAt;
+
+        Stats(String tier) {
+            this.tier = tier;
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // TIERS
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Open the player of a MediaPlayer tier (not TIER_TONE).
+     *
+     * @param standsInFor sound key of the failed source (kept, so a handover
+     *                    to an alarm with the same sound does not restart audio)
+     * @return unprepared looping player, or null if the tier has no source here
+     */
+    static AlarmRingingService.AlarmSound open(Context context, String tier, String standsInFor) throws Exception {
+        MediaPlayer player = new MediaPlayer();
+        try {
+            AlarmPlayback.attach(context, player);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                player.setAudioAttributes(new AudioAttributes.Builder()
+                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                    .setUsage(AudioAttributes.USAGE_ALARM)
+                    .build());
+            } else {
+                player.setAudioStreamType(AudioManager.STREAM_ALARM);
+            }
+
+            switch (tier) {
+                case TIER_CACHE: {
+                    File cached = AlarmSoundCache.getCachedFile(context);
+                    if (cached == null) {
+                        player.release();
+                        return null;
+                    }
+                    try (FileInputStream in = new FileInputStream(cached)) {
+                        player.setDataSource(in.getFD());
+                    }
+                    break;
+                }
+                case TIER_ALARM_URI:
+                case TIER_NOTIFICATION_URI: {
+                    Uri uri = RingtoneManager.getDefaultUri(TIER_ALARM_URI.equals(tier)
+                        ? RingtoneManager.TYPE_ALARM
+                        : RingtoneManager.TYPE_NOTIFICATION);
+                    if (uri == null) {
+                        player.release();
+                        return null;
+                    }
+                    player.setDataSource(context, uri);
+                    break;
+                }
+                case TIER_BUNDLED: {
+                    try (AssetFileDescriptor afd = context.getResources().openRawResourceFd(R.raw.alarm_fallback)) {
+                        player.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+                    }
+                    break;
+                }
+                default:
+                    player.release();
+                    return null;
+            }
+
+            player.setLooping(true);
+            player.setVolume(1.0f, 1.0f);
+            return new AlarmRingingService.AlarmSound(player, tier, standsInFor);
+        } catch (Exception e) {
+            player.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Last tier: beep with ToneGenerator on the alarm stream
+     *
+     * @return generator to re-trigger every TONE_REPEAT_MS, or null if it failed too
+     */
+    static ToneGenerator startTone() {
+        try {
+            ToneGenerator tone = new ToneGenerator(AudioManager.STREAM_ALARM, ToneGenerator.MAX_VOLUME);
+            if (beep(tone)) return tone;
+            tone.release();
+        } catch (Exception e) {
+            Log.e(TAG, "✗ ToneGenerator failed", e);
+        }
+        return null;
+    }
+
+    static boolean beep(ToneGenerator tone) {
+        return tone.startTone(ToneGenerator.TONE_CDMA_ALERT_CALL_GUARD, TONE_DURATION_MS);
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // MEASUREMENT
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * First audio came from this tier, elapsedMs after the sound was requested
+     */
+    static void recordStart(Context context, String tier, long elapsedMs) {
+        Stats stats = getStats(context, tier);
+        stats.count++;
+        stats.lastMs = elapsedMs;
+        stats.maxMs = Math.max(stats.maxMs, elapsedMs);
+        stats.lastAt = System.currentTimeMillis();
+        AlarmStore.getInstance(context).putSetting(SETTING_TIER_PREFIX + tier,
+            stats.count + "," + stats.lastMs + "," + stats.maxMs + "," + stats.lastAt);
+    }
+
+    /**
+     * Every tier failed - the alarm could only vibrate
+     */
+    static void recordSilent(Context context) {
+        AlarmStore store = AlarmStore.getInstance(context);
+        store.putSetting(SETTING_SILENT, String.valueOf(getSilentCount(context) + 1));
+    }
+
+    public static int getSilentCount(Context context) {
+        try {
+            return Integer.parseInt(AlarmStore.getInstance(context).getSetting(SETTING_SILENT, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public static Stats getStats(Context context, String tier) {
+        Stats stats = new Stats(tier);
+        String raw = AlarmStore.getInstance(context).getSetting(SETTING_TIER_PREFIX + tier, null);
+        if (raw == null) return stats;
+        try {
+            String[] parts = raw.split(",");
+            stats.count = Integer.parseInt(parts[0]);
+            stats.lastMs = Long.parseLong(parts[1]);
+            stats.maxMs = Long.parseLong(parts[2]);
+            stats.lastAt = Long.parseLong(parts[3]);
+        } catch (Exception e) {
+            Log.w(TAG, "⚠ Corrupt sound tier stats for " + tier + ": " + raw);
+            return new Stats(tier);
+        }
+        return stats;
+    }
+
+    /**
+     * Stats of every tier that ever produced sound, primary sources first
+     */
+    public static List<Stats> getAllStats(Context context) {
+        List<Stats> all = new ArrayList<>();
+        for (String tier : KNOWN_TIERS) {
+            Stats stats = getStats(context, tier);
+            if (stats.count > 0) all.add(stats);
+        }
+        return all;
+    }
+}
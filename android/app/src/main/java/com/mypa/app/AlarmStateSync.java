@@ -0,0 +1,151 @@
+package com.mypa.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * AlarmStateSync - State sync between the :alarm process and the app process
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * AlarmReceiver, AlarmRescheduleReceiver, AlarmRingingService and
+ * AlarmActivity run in a separate lightweight ":alarm" process
+ * (see AndroidManifest.xml) that never loads the Capacitor Bridge
+ * or the WebView. Only FullScreenAlarmPlugin lives in the app process.
+ *
+ * AlarmStore (SQLite, WAL) is shared through the file system and stays
+ * the source of truth. What is NOT shared is in-memory state:
+ *
+ *   NextAlarmScheduler heap   → invalidated, reloaded lazily from the store
+ *   FireMetrics ring buffer   → invalidated, reloaded from its file
+ *   AlarmStrategySelector     → cached choice dropped (new lateness data)
+ *
+ * So every state change publishes a package-private broadcast:
+ *
+ *   :alarm  ──ACTION_STATE_CHANGED{alarmId, event}──→ app process
+ *                                                    → caches invalidated
+ *                                                    → JS "alarmStateChanged"
+ *   app     ──ACTION_STATE_CHANGED{alarmId, changed}──→ :alarm (if alive)
+ *                                                    → caches invalidated
+ *
+ * :alarm listens from the moment it builds a NextAlarmScheduler heap
+ * (listenForChanges), so a live :alarm process never arms a stale head.
+ * Broadcasts from the sending process itself are ignored (same pid).
+ */
+public class AlarmStateSync {
+    private static final String TAG = "AlarmStateSync";
+
+    public static final String ACTION_STATE_CHANGED = "com.mypa.app.ACTION_ALARM_STATE_CHANGED";
+    private static final String EXTRA_EVENT = "sync_event";
+    private static final String EXTRA_AT = "sync_at";
+    private static final String EXTRA_PID = "sync_pid";
+
+    public static final String EVENT_FIRED = "fired";
+    public static final String EVENT_SNOOZE_FIRED = "snoozeFired";
+    public static final String EVENT_DISMISSED = "dismissed";
+    public static final String EVENT_SNOOZED = "snoozed";
+    public static final String EVENT_RESCHEDULED = "rescheduled";
+    // Alarms edited from JS (app process → :alarm)
+    public static final String EVENT_CHANGED = "changed";
+
+    // Cache invalidation receiver of this process (listenForChanges)
+    private static BroadcastReceiver invalidationReceiver;
+
+    /**
+     * Receives state changes made by the other process
+     */
+    public interface Listener {
+        void onAlarmStateChanged(int alarmId, String event, long atMillis);
+    }
+
+    /**
+     * Tell the other process that alarm state changed
+     *
+     * @param alarmId Alarm ID, -1 for changes to many alarms
+     * @param event EVENT_*
+     */
+    public static void publish(Context context, int alarmId, String event) {
+        try {
+            Intent intent = new Intent(ACTION_STATE_CHANGED);
+            intent.setPackage(context.getPackageName());  // never leaves the app
+            intent.putExtra(AlarmRecord.EXTRA_ID, alarmId);
+            intent.putExtra(EXTRA_EVENT, event);
+            intent.putExtra(EXTRA_AT, System.currentTimeMillis());
+            intent.putExtra(EXTRA_PID, Process.myPid());
+            context.sendBroadcast(intent);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to publish " + event + " for alarm " + alarmId, e);
+        }
+    }
+
+    /**
+     * Listen for state changes from the other process (call from the app process)
+     *
+     * @return receiver to pass to unregister()
+     */
+    public static BroadcastReceiver register(Context context, Listener listener) {
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context ctx, Intent intent) {
+                if (intent.getIntExtra(EXTRA_PID, -1) == Process.myPid()) return;
+
+                int alarmId = intent.getIntExtra(AlarmRecord.EXTRA_ID, -1);
+                String event = intent.getStringExtra(EXTRA_EVENT);
+                long at = intent.getLongExtra(EXTRA_AT, System.currentTimeMillis());
+                Log.d(TAG, "State changed in other process: " + event + " (alarm " + alarmId + ")");
+
+                invalidateCaches(ctx);
+                if (listener != null) {
+                    listener.onAlarmStateChanged(alarmId, event, at);
+                }
+            }
+        };
+        ContextCompat.registerReceiver(
+            context.getApplicationContext(),
+            receiver,
+            new IntentFilter(ACTION_STATE_CHANGED),
+            ContextCompat.RECEIVER_NOT_EXPORTED
+        );
+        return receiver;
+    }
+
+    /**
+     * Invalidate this process's caches on changes from the other process.
+     * Idempotent; lives as long as the process.
+     */
+    static synchronized void listenForChanges(Context context) {
+        if (invalidationReceiver != null) return;
+        try {
+            invalidationReceiver = register(context, null);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to listen for state changes", e);
+        }
+    }
+
+    public static void unregister(Context context, BroadcastReceiver receiver) {
+        if (receiver == null) return;
+        try {
+            context.getApplicationContext().unregisterReceiver(receiver);
+        } catch (Exception e) {
+            Log.w(TAG, "⚠ Receiver was not registered");
+        }
+    }
+
+    /**
+     * Drop in-memory copies of shared state; next use reloads from disk
+     */
+    static void invalidateCaches(Context context) {
+        if (NextAlarmScheduler.isEnabled(context)) {
+            NextAlarmScheduler.getInstance(context).invalidate();
+        }
+        FireMetrics.invalidate();
+        AlarmStrategySelector.invalidate();
+    }
+}
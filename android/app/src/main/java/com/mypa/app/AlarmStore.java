@@ -0,0 +1,696 @@
+package com.mypa.app;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * AlarmStore - Persistent on-device registry of every scheduled alarm
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * Before the store, an alarm only lived inside the extras of its
+ * PendingIntent. Nothing native could list, re-arm or audit alarms
+ * without the WebView.
+ *
+ * Now every alarm is one row keyed by alarm ID:
+ *   id | title | body | type | trigger_at | recurrence | enabled | ...
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * PERFORMANCE:
+ * ═══════════════════════════════════════════════════════════════
+ * - Index on (enabled, trigger_at) → "next due" is an O(log n) B-tree seek
+ * - Index on (type, enabled, trigger_at) → filtered listings (list()) too
+ * - Bulk writes run inside ONE transaction (hundreds of reminders = one fsync)
+ * - Single shared instance per process (SQLite connection is reused)
+ */
+public class AlarmStore extends SQLiteOpenHelper {
+    private static final String TAG = "AlarmStore";
+
+    private static final String DB_NAME = "alarm_store.db";
+    private static final int DB_VERSION = 7;
+
+    static final String TABLE_ALARMS = "alarms";
+    static final String COL_ID = "id";
+    static final String COL_TITLE = "title";
+    static final String COL_BODY = "body";
+    static final String COL_TYPE = "type";
+    static final String COL_TRIGGER_AT = "trigger_at";
+    static final String COL_RECURRENCE = "recurrence";
+    static final String COL_ENABLED = "enabled";
+    static final String COL_LAST_FIRED_AT = "last_fired_at";
+    static final String COL_UPDATED_AT = "updated_at";
+    static final String COL_FIRE_COUNT = "fire_count";
+    static final String COL_CLIP_SOURCE = "clip_source";
+    static final String COL_SNOOZE_MINUTES = "snooze_minutes";
+    static final String COL_MAX_SNOOZES = "max_snoozes";
+    static final String COL_SNOOZE_COUNT = "snooze_count";
+    static final String COL_SNOOZE_UNTIL = "snooze_until";
+
+    // Append-only log of snooze / dismiss decisions (bounded)
+    static final String TABLE_SNOOZE_HISTORY = "snooze_history";
+    static final String COL_HISTORY_ID = "_id";
+    static final String COL_ALARM_ID = "alarm_id";
+    static final String COL_EVENT = "event";
+    static final String COL_AT = "at";
+    static final String COL_UNTIL = "until";
+    static final String COL_COUNT = "count";
+    private static final int MAX_HISTORY_ROWS = 500;
+
+    // One row per delivered (alarm, occurrence) - see AlarmDeliveryDedup
+    static final String TABLE_DELIVERIES = "deliveries";
+    static final String COL_OCCURRENCE_AT = "occurrence_at";
+    static final String COL_DELIVERED_AT = "delivered_at";
+    static final String COL_SOURCE = "source";
+
+    // Small key/value table for native settings shared by all components
+    static final String TABLE_SETTINGS = "settings";
+    static final String COL_KEY = "key";
+    static final String COL_VALUE = "value";
+
+    private static AlarmStore instance;
+
+    public static synchronized AlarmStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AlarmStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ALARMS + " ("
+            + COL_ID + " INTEGER PRIMARY KEY, "
+            + COL_TITLE + " TEXT, "
+            + COL_BODY + " TEXT, "
+            + COL_TYPE + " TEXT, "
+            + COL_TRIGGER_AT + " INTEGER NOT NULL, "
+            + COL_RECURRENCE + " TEXT, "
+            + COL_ENABLED + " INTEGER NOT NULL DEFAULT 1, "
+            + COL_LAST_FIRED_AT + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_UPDATED_AT + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_FIRE_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_CLIP_SOURCE + " TEXT, "
+            + COL_SNOOZE_MINUTES + " INTEGER NOT NULL DEFAULT " + AlarmRecord.DEFAULT_SNOOZE_MINUTES + ", "
+            + COL_MAX_SNOOZES + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_SNOOZE_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_SNOOZE_UNTIL + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_alarms_next ON " + TABLE_ALARMS
+            + " (" + COL_ENABLED + ", " + COL_TRIGGER_AT + ")");
+        createSettingsTable(db);
+        createSnoozeHistoryTable(db);
+        createDeliveriesTable(db);
+        createTypeIndex(db);
+        Log.d(TAG, "✓ Alarm store created");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Log.d(TAG, "Upgrading alarm store " + oldVersion + " → " + newVersion);
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_ALARMS + " ADD COLUMN "
+                + COL_FIRE_COUNT + " INTEGER NOT NULL DEFAULT 0");
+        }
+        if (oldVersion < 3) {
+            createSettingsTable(db);
+        }
+        if (oldVersion < 4) {
+            db.execSQL("ALTER TABLE " + TABLE_ALARMS + " ADD COLUMN " + COL_CLIP_SOURCE + " TEXT");
+        }
+        if (oldVersion < 5) {
+            db.execSQL("ALTER TABLE " + TABLE_ALARMS + " ADD COLUMN " + COL_SNOOZE_MINUTES
+                + " INTEGER NOT NULL DEFAULT " + AlarmRecord.DEFAULT_SNOOZE_MINUTES);
+            db.execSQL("ALTER TABLE " + TABLE_ALARMS + " ADD COLUMN " + COL_MAX_SNOOZES + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE " + TABLE_ALARMS + " ADD COLUMN " + COL_SNOOZE_COUNT + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE " + TABLE_ALARMS + " ADD COLUMN " + COL_SNOOZE_UNTIL + " INTEGER NOT NULL DEFAULT 0");
+            createSnoozeHistoryTable(db);
+        }
+        if (oldVersion < 6) {
+            createDeliveriesTable(db);
+        }
+        if (oldVersion < 7) {
+            createTypeIndex(db);
+        }
+    }
+
+    private static void createTypeIndex(SQLiteDatabase db) {
+        // id is the rowid - part of every index, so (trigger_at, id) keyset pages stay index-only
+        db.execSQL("CREATE INDEX idx_alarms_type_next ON " + TABLE_ALARMS
+            + " (" + COL_TYPE + ", " + COL_ENABLED + ", " + COL_TRIGGER_AT + ")");
+    }
+
+    private static void createSettingsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SETTINGS + " ("
+            + COL_KEY + " TEXT PRIMARY KEY, "
+            + COL_VALUE + " TEXT)");
+    }
+
+    private static void createSnoozeHistoryTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SNOOZE_HISTORY + " ("
+            + COL_HISTORY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COL_ALARM_ID + " INTEGER NOT NULL, "
+            + COL_EVENT + " TEXT NOT NULL, "
+            + COL_AT + " INTEGER NOT NULL, "
+            + COL_UNTIL + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_COUNT + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_snooze_history_at ON " + TABLE_SNOOZE_HISTORY + " (" + COL_AT + ")");
+    }
+
+    private static void createDeliveriesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_DELIVERIES + " ("
+            + COL_ALARM_ID + " INTEGER NOT NULL, "
+            + COL_OCCURRENCE_AT + " INTEGER NOT NULL, "
+            + COL_DELIVERED_AT + " INTEGER NOT NULL, "
+            + COL_SOURCE + " TEXT, "
+            + "PRIMARY KEY (" + COL_ALARM_ID + ", " + COL_OCCURRENCE_AT + "))");
+        db.execSQL("CREATE INDEX idx_deliveries_at ON " + TABLE_DELIVERIES + " (" + COL_DELIVERED_AT + ")");
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // WRITES
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Save an alarm definition from JS (schedule / scheduleRepeating).
+     * Runtime state of an existing row is kept, see saveDefinition().
+     */
+    public void upsert(AlarmRecord record) {
+        try {
+            saveDefinition(getWritableDatabase(), record);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to save alarm " + record.id, e);
+        }
+    }
+
+    /**
+     * Insert a new alarm, or update only the definition columns of an existing one.
+     * fire_count, last_fired_at and the snooze state belong to the native engine:
+     * overwriting them restarted exhausted COUNT rules and orphaned pending snoozes.
+     * fire_count restarts only when the recurrence rule itself changes.
+     */
+    private static void saveDefinition(SQLiteDatabase db, AlarmRecord record) {
+        String[] id = {String.valueOf(record.id)};
+        db.execSQL("UPDATE " + TABLE_ALARMS + " SET " + COL_FIRE_COUNT + " = 0"
+                + " WHERE " + COL_ID + " = ? AND " + COL_RECURRENCE + " IS NOT ?",
+            new Object[]{record.id, record.recurrence});
+        if (db.update(TABLE_ALARMS, definitionValues(record), COL_ID + " = ?", id) == 0) {
+            db.insertWithOnConflict(TABLE_ALARMS, null, toValues(record), SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+
+    /**
+     * Insert or replace many alarms in a single transaction (native rewrites
+     * of stored rows - runtime state included)
+     */
+    public void upsertAll(Collection<AlarmRecord> records) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (AlarmRecord record : records) {
+                db.insertWithOnConflict(TABLE_ALARMS, null, toValues(record), SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+            Log.d(TAG, "✓ Saved " + records.size() + " alarms");
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Bulk save failed", e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void delete(int alarmId) {
+        try {
+            getWritableDatabase().delete(TABLE_ALARMS, COL_ID + " = ?", new String[]{String.valueOf(alarmId)});
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to delete alarm " + alarmId, e);
+        }
+    }
+
+    /**
+     * Delete many alarms in a single transaction
+     */
+    public void deleteAll(Collection<Integer> alarmIds) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Integer alarmId : alarmIds) {
+                db.delete(TABLE_ALARMS, COL_ID + " = ?", new String[]{String.valueOf(alarmId)});
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Bulk delete failed", e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Upsert and delete in ONE transaction (batch sync from JS)
+     *
+     * @return true if the transaction committed
+     */
+    public boolean applyBatch(Collection<AlarmRecord> upserts, Collection<Integer> deletes) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (AlarmRecord record : upserts) {
+                saveDefinition(db, record);
+            }
+            for (Integer alarmId : deletes) {
+                db.delete(TABLE_ALARMS, COL_ID + " = ?", new String[]{String.valueOf(alarmId)});
+            }
+            db.setTransactionSuccessful();
+            Log.d(TAG, "✓ Batch applied: " + upserts.size() + " saved, " + deletes.size() + " deleted");
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Batch apply failed", e);
+            return false;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Record that an alarm fired. One-time alarms are disabled so they
+     * are never re-armed; repeating alarms stay enabled.
+     */
+    public void markFired(int alarmId, long firedAtMillis) {
+        try {
+            getWritableDatabase().execSQL(
+                "UPDATE " + TABLE_ALARMS + " SET "
+                    + COL_LAST_FIRED_AT + " = ?, "
+                    + COL_UPDATED_AT + " = ?, "
+                    + COL_FIRE_COUNT + " = " + COL_FIRE_COUNT + " + 1, "
+                    + COL_SNOOZE_COUNT + " = 0, "
+                    + COL_ENABLED + " = CASE WHEN " + COL_RECURRENCE + " IS NULL THEN 0 ELSE " + COL_ENABLED + " END"
+                    + " WHERE " + COL_ID + " = ?",
+                new Object[]{firedAtMillis, System.currentTimeMillis(), alarmId});
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to mark alarm fired " + alarmId, e);
+        }
+    }
+
+    /**
+     * Disable an alarm without deleting it (e.g. recurrence ended)
+     */
+    public void disable(int alarmId) {
+        try {
+            ContentValues values = new ContentValues();
+            values.put(COL_ENABLED, 0);
+            values.put(COL_UPDATED_AT, System.currentTimeMillis());
+            getWritableDatabase().update(TABLE_ALARMS, values, COL_ID + " = ?", new String[]{String.valueOf(alarmId)});
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to disable alarm " + alarmId, e);
+        }
+    }
+
+    /**
+     * Move an alarm to a new trigger time (e.g. next occurrence)
+     */
+    public void updateTrigger(int alarmId, long triggerAtMillis) {
+        try {
+            ContentValues values = new ContentValues();
+            values.put(COL_TRIGGER_AT, triggerAtMillis);
+            values.put(COL_ENABLED, 1);
+            values.put(COL_UPDATED_AT, System.currentTimeMillis());
+            getWritableDatabase().update(TABLE_ALARMS, values, COL_ID + " = ?", new String[]{String.valueOf(alarmId)});
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to update trigger for alarm " + alarmId, e);
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // READS
+    // ═══════════════════════════════════════════════════════════════
+
+    public AlarmRecord get(int alarmId) {
+        try (Cursor cursor = getReadableDatabase().query(
+            TABLE_ALARMS, null, COL_ID + " = ?", new String[]{String.valueOf(alarmId)},
+            null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return fromCursor(cursor);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to read alarm " + alarmId, e);
+        }
+        return null;
+    }
+
+    /**
+     * Earliest enabled alarms (index seek on enabled + trigger_at)
+     */
+    public List<AlarmRecord> getNextDue(int limit) {
+        return query(COL_ENABLED + " = 1", null, String.valueOf(limit));
+    }
+
+    /**
+     * All enabled alarms due at or before the given time, earliest first
+     */
+    public List<AlarmRecord> getDueBefore(long untilMillis) {
+        return query(COL_ENABLED + " = 1 AND " + COL_TRIGGER_AT + " <= ?",
+            new String[]{String.valueOf(untilMillis)}, null);
+    }
+
+    /**
+     * First enabled alarm due strictly after the given time, or null
+     */
+    public AlarmRecord getFirstDueAfter(long afterMillis) {
+        List<AlarmRecord> records = query(COL_ENABLED + " = 1 AND " + COL_TRIGGER_AT + " > ?",
+            new String[]{String.valueOf(afterMillis)}, "1");
+        return records.isEmpty() ? null : records.get(0);
+    }
+
+    public List<AlarmRecord> getAllEnabled() {
+        return query(COL_ENABLED + " = 1", null, null);
+    }
+
+    public List<AlarmRecord> getAll() {
+        return query(null, null, null);
+    }
+
+    /**
+     * Filter + keyset cursor for list(). Null / 0 fields do not filter.
+     */
+    public static class Filter {
+        public List<String> types;
+        public Boolean enabled;
+        public long fromMillis;        // trigger_at >= (inclusive)
+        public long untilMillis;       // trigger_at < (exclusive)
+        // Last row of the previous page (afterId = -1: first page)
+        public long afterTriggerAt;
+        public int afterId = -1;
+        public int limit = 50;
+    }
+
+    /**
+     * One page of alarms ordered by (trigger_at, id).
+     *
+     * Keyset pagination: the next page starts strictly after the last row
+     * of this one, so every page is an index seek - no OFFSET scan, and no
+     * skipped / repeated rows when alarms change between pages.
+     *
+     * @return up to filter.limit + 1 rows (the extra row means "has more")
+     */
+    public List<AlarmRecord> list(Filter filter) {
+        List<String> args = new ArrayList<>();
+        String selection = selection(filter, args);
+        return query(selection, args.toArray(new String[0]), String.valueOf(filter.limit + 1));
+    }
+
+    /**
+     * WHERE clause of list() (null = every row); its arguments are added to args
+     */
+    static String selection(Filter filter, List<String> args) {
+        StringBuilder selection = new StringBuilder();
+        if (filter.types != null && !filter.types.isEmpty()) {
+            selection.append(COL_TYPE).append(" IN (");
+            for (int i = 0; i < filter.types.size(); i++) {
+                selection.append(i == 0 ? "?" : ", ?");
+                args.add(filter.types.get(i));
+            }
+            selection.append(")");
+        }
+        if (filter.enabled != null) {
+            and(selection).append(COL_ENABLED).append(" = ?");
+            args.add(filter.enabled ? "1" : "0");
+        }
+        if (filter.fromMillis > 0) {
+            and(selection).append(COL_TRIGGER_AT).append(" >= ?");
+            args.add(String.valueOf(filter.fromMillis));
+        }
+        if (filter.untilMillis > 0) {
+            and(selection).append(COL_TRIGGER_AT).append(" < ?");
+            args.add(String.valueOf(filter.untilMillis));
+        }
+        if (filter.afterId != -1) {
+            and(selection).append("(").append(COL_TRIGGER_AT).append(" > ? OR (")
+                .append(COL_TRIGGER_AT).append(" = ? AND ").append(COL_ID).append(" > ?))");
+            args.add(String.valueOf(filter.afterTriggerAt));
+            args.add(String.valueOf(filter.afterTriggerAt));
+            args.add(String.valueOf(filter.afterId));
+        }
+        return selection.length() > 0 ? selection.toString() : null;
+    }
+
+    private static StringBuilder and(StringBuilder selection) {
+        return selection.length() > 0 ? selection.append(" AND ") : selection;
+    }
+
+    private List<AlarmRecord> query(String selection, String[] args, String limit) {
+        List<AlarmRecord> records = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(
+            TABLE_ALARMS, null, selection, args, null, null,
+            COL_TRIGGER_AT + " ASC, " + COL_ID + " ASC", limit)) {
+            while (cursor != null && cursor.moveToNext()) {
+                records.add(fromCursor(cursor));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Alarm query failed", e);
+        }
+        return records;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // SNOOZE
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Update snooze state and append a history row in ONE transaction
+     *
+     * @param event SnoozeManager.EVENT_*
+     * @param snoozeCount snoozes in the current streak after this event
+     * @param snoozeUntil when the snooze rings (0 = no pending snooze)
+     */
+    public void recordSnoozeEvent(int alarmId, String event, long atMillis, int snoozeCount, long snoozeUntil) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues state = new ContentValues();
+            state.put(COL_SNOOZE_COUNT, snoozeCount);
+            state.put(COL_SNOOZE_UNTIL, snoozeUntil);
+            state.put(COL_UPDATED_AT, System.currentTimeMillis());
+            db.update(TABLE_ALARMS, state, COL_ID + " = ?", new String[]{String.valueOf(alarmId)});
+
+            ContentValues history = new ContentValues();
+            history.put(COL_ALARM_ID, alarmId);
+            history.put(COL_EVENT, event);
+            history.put(COL_AT, atMillis);
+            history.put(COL_UNTIL, snoozeUntil);
+            history.put(COL_COUNT, snoozeCount);
+            long rowId = db.insert(TABLE_SNOOZE_HISTORY, null, history);
+
+            // Keep the log bounded
+            if (rowId > MAX_HISTORY_ROWS && rowId % 50 == 0) {
+                db.delete(TABLE_SNOOZE_HISTORY, COL_HISTORY_ID + " <= ?",
+                    new String[]{String.valueOf(rowId - MAX_HISTORY_ROWS)});
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to record snooze event for alarm " + alarmId, e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Alarms with a pending snooze (enabled or not), earliest first
+     */
+    public List<AlarmRecord> getPendingSnoozes() {
+        List<AlarmRecord> records = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(
+            TABLE_ALARMS, null, COL_SNOOZE_UNTIL + " > 0", null, null, null,
+            COL_SNOOZE_UNTIL + " ASC")) {
+            while (cursor != null && cursor.moveToNext()) {
+                records.add(fromCursor(cursor));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Snooze query failed", e);
+        }
+        return records;
+    }
+
+    /**
+     * One history row
+     */
+    public static class SnoozeEvent {
+        public int alarmId;
+        public String event;
+        public long atMillis;
+        public long untilMillis;
+        public int count;
+    }
+
+    /**
+     * Snooze history since a time, newest first (one query for JS)
+     */
+    public List<SnoozeEvent> getSnoozeHistory(long sinceMillis, int limit) {
+        List<SnoozeEvent> events = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(
+            TABLE_SNOOZE_HISTORY, null, COL_AT + " >= ?", new String[]{String.valueOf(sinceMillis)},
+            null, null, COL_AT + " DESC, " + COL_HISTORY_ID + " DESC", String.valueOf(limit))) {
+            while (cursor != null && cursor.moveToNext()) {
+                SnoozeEvent event = new SnoozeEvent();
+                event.alarmId = cursor.getInt(cursor.getColumnIndexOrThrow(COL_ALARM_ID));
+                event.event = cursor.getString(cursor.getColumnIndexOrThrow(COL_EVENT));
+                event.atMillis = cursor.getLong(cursor.getColumnIndexOrThrow(COL_AT));
+                event.untilMillis = cursor.getLong(cursor.getColumnIndexOrThrow(COL_UNTIL));
+                event.count = cursor.getInt(cursor.getColumnIndexOrThrow(COL_COUNT));
+                events.add(event);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Snooze history query failed", e);
+        }
+        return events;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // DELIVERIES
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Claim one occurrence of an alarm for delivery.
+     * The primary key makes this atomic across processes: exactly one
+     * caller wins, every later caller gets false.
+     *
+     * @param olderThanMillis rows delivered before this are pruned
+     * @return true if this caller should ring, false if already delivered
+     */
+    public boolean claimDelivery(int alarmId, long occurrenceAtMillis, long deliveredAtMillis,
+                                 String source, long olderThanMillis) {
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(COL_ALARM_ID, alarmId);
+            values.put(COL_OCCURRENCE_AT, occurrenceAtMillis);
+            values.put(COL_DELIVERED_AT, deliveredAtMillis);
+            values.put(COL_SOURCE, source);
+            long rowId = db.insertWithOnConflict(TABLE_DELIVERIES, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            if (rowId == -1) {
+                return false;
+            }
+            // Keep the index bounded to the dedup window
+            if (rowId % 32 == 0) {
+                db.delete(TABLE_DELIVERIES, COL_DELIVERED_AT + " < ?",
+                    new String[]{String.valueOf(olderThanMillis)});
+            }
+        } catch (Exception e) {
+            // Never block an alarm because the index is unavailable
+            Log.e(TAG, "✗ Failed to claim delivery of alarm " + alarmId, e);
+        }
+        return true;
+    }
+
+    /**
+     * Source that delivered an occurrence, or null if not delivered
+     */
+    public String getDeliverySource(int alarmId, long occurrenceAtMillis) {
+        try (Cursor cursor = getReadableDatabase().query(
+            TABLE_DELIVERIES, new String[]{COL_SOURCE},
+            COL_ALARM_ID + " = ? AND " + COL_OCCURRENCE_AT + " = ?",
+            new String[]{String.valueOf(alarmId), String.valueOf(occurrenceAtMillis)},
+            null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.isNull(0) ? "" : cursor.getString(0);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Delivery query failed", e);
+        }
+        return null;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // SETTINGS
+    // ═══════════════════════════════════════════════════════════════
+
+    public String getSetting(String key, String defaultValue) {
+        try (Cursor cursor = getReadableDatabase().query(
+            TABLE_SETTINGS, new String[]{COL_VALUE}, COL_KEY + " = ?", new String[]{key},
+            null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getString(0);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to read setting " + key, e);
+        }
+        return defaultValue;
+    }
+
+    public void putSetting(String key, String value) {
+        try {
+            ContentValues values = new ContentValues();
+            values.put(COL_KEY, key);
+            values.put(COL_VALUE, value);
+            getWritableDatabase().insertWithOnConflict(
+                TABLE_SETTINGS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to save setting " + key, e);
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // MAPPING
+    // ═══════════════════════════════════════════════════════════════
+
+    private static ContentValues toValues(AlarmRecord record) {
+        ContentValues values = definitionValues(record);
+        values.put(COL_ID, record.id);
+        values.put(COL_LAST_FIRED_AT, record.lastFiredAt);
+        values.put(COL_FIRE_COUNT, record.fireCount);
+        values.put(COL_SNOOZE_COUNT, record.snoozeCount);
+        values.put(COL_SNOOZE_UNTIL, record.snoozeUntil);
+        return values;
+    }
+
+    /**
+     * Columns JS defines (everything but the runtime state)
+     */
+    private static ContentValues definitionValues(AlarmRecord record) {
+        ContentValues values = new ContentValues();
+        values.put(COL_TITLE, record.title);
+        values.put(COL_BODY, record.body);
+        values.put(COL_TYPE, record.type);
+        values.put(COL_TRIGGER_AT, record.triggerAtMillis);
+        values.put(COL_RECURRENCE, record.recurrence);
+        values.put(COL_ENABLED, record.enabled ? 1 : 0);
+        values.put(COL_CLIP_SOURCE, record.clipSource);
+        values.put(COL_SNOOZE_MINUTES, record.snoozeMinutes);
+        values.put(COL_MAX_SNOOZES, record.maxSnoozes);
+        values.put(COL_UPDATED_AT, System.currentTimeMillis());
+        return values;
+    }
+
+    private static AlarmRecord fromCursor(Cursor cursor) {
+        AlarmRecord record = new AlarmRecord();
+        record.id = cursor.getInt(cursor.getColumnIndexOrThrow(COL_ID));
+        record.title = cursor.getString(cursor.getColumnIndexOrThrow(COL_TITLE));
+        record.body = cursor.getString(cursor.getColumnIndexOrThrow(COL_BODY));
+        record.type = cursor.getString(cursor.getColumnIndexOrThrow(COL_TYPE));
+        record.triggerAtMillis = cursor.getLong(cursor.getColumnIndexOrThrow(COL_TRIGGER_AT));
+        int recurrenceIndex = cursor.getColumnIndexOrThrow(COL_RECURRENCE);
+        record.recurrence = cursor.isNull(recurrenceIndex) ? null : cursor.getString(recurrenceIndex);
+        record.enabled = cursor.getInt(cursor.getColumnIndexOrThrow(COL_ENABLED)) == 1;
+        record.lastFiredAt = cursor.getLong(cursor.getColumnIndexOrThrow(COL_LAST_FIRED_AT));
+        record.updatedAt = cursor.getLong(cursor.getColumnIndexOrThrow(COL_UPDATED_AT));
+        record.fireCount = cursor.getInt(cursor.getColumnIndexOrThrow(COL_FIRE_COUNT));
+        int clipIndex = cursor.getColumnIndexOrThrow(COL_CLIP_SOURCE);
+        record.clipSource = cursor.isNull(clipIndex) ? null : cursor.getString(clipIndex);
+        record.snoozeMinutes = cursor.getInt(cursor.getColumnIndexOrThrow(COL_SNOOZE_MINUTES));
+        record.maxSnoozes = cursor.getInt(cursor.getColumnIndexOrThrow(COL_MAX_SNOOZES));
+        record.snoozeCount = cursor.getInt(cursor.getColumnIndexOrThrow(COL_SNOOZE_COUNT));
+        record.snoozeUntil = cursor.getLong(cursor.getColumnIndexOrThrow(COL_SNOOZE_UNTIL));
+        return record;
+    }
+}
@@ -0,0 +1,274 @@
+package com.mypa.app;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * AlarmStrategySelector - Picks the most punctual AlarmManager API for this device
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * The scheduler used to choose the API purely by SDK version. But
+ * what is punctual depends on the DEVICE:
+ *
+ *   - no SCHEDULE_EXACT_ALARM (Android 12+) → only inexact works,
+ *     setAlarmClock() / setExact*() throw SecurityException
+ *   - battery optimization ON → setExactAndAllowWhileIdle() is
+ *     rate-limited in Doze, setAlarmClock() is not
+ *   - some OEM ROMs deliver one API late and the other on time
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * HOW IT PICKS:
+ * ═══════════════════════════════════════════════════════════════
+ * 1. Filter by permission
+ * 2. Score = average measured lateness (EWMA) once a strategy has
+ *    MIN_SAMPLES fires, otherwise a prior (setAlarmClock best,
+ *    exact-idle penalized while battery optimized, inexact worst)
+ * 3. Lowest score wins; the current choice is kept unless another
+ *    strategy is better by SWITCH_MARGIN_MS (no flapping)
+ *
+ * Every armed PendingIntent carries EXTRA_STRATEGY, and AlarmReceiver
+ * reports the lateness of each fire back here (recordLateness).
+ */
+public class AlarmStrategySelector {
+    private static final String TAG = "AlarmStrategySelector";
+
+    public static final String STRATEGY_ALARM_CLOCK = "alarmClock";
+    public static final String STRATEGY_EXACT_IDLE = "exactAllowWhileIdle";
+    public static final String STRATEGY_INEXACT_IDLE = "inexactAllowWhileIdle";
+    // Most reliable first - also the tie-break order
+    static final String[] STRATEGIES = {STRATEGY_ALARM_CLOCK, STRATEGY_EXACT_IDLE, STRATEGY_INEXACT_IDLE};
+
+    public static final String EXTRA_STRATEGY = "alarm_strategy";
+
+    private static final String SETTING_CURRENT = "alarm_strategy";
+    private static final String SETTING_STATS_PREFIX = "strategy_lateness_";
+
+    private static final int MIN_SAMPLES = 3;
+    private static final double EWMA_ALPHA = 0.3;
+    private static final long SWITCH_MARGIN_MS = 2000L;
+    // Later than this = device was off / clock changed, not the API's fault
+    private static final long MAX_PLAUSIBLE_LATENESS_MS = 15 * 60 * 1000L;
+    // Permission and battery state can change while the app runs
+    private static final long CHOICE_TTL_MS = 10 * 60 * 1000L;
+
+    private static Choice cached;
+    private static long cachedAtElapsed;
+
+    /**
+     * Measured lateness of one strategy
+     */
+    public static class Stats {
+        public final String strategy;
+        public int samples;
+        public long avgLatenessMs = -1;
+        public long maxLatenessMs = -1;
+        public long lastLatenessMs = -1;
+
+        Stats(String strategy) {
+            this.strategy = strategy;
+        }
+    }
+
+    /**
+     * Selected strategy and why
+     */
+    public static class Choice {
+        public final String strategy;
+        public final String reason;
+        public final boolean canScheduleExact;
+        public final boolean batteryOptimizationDisabled;
+
+        Choice(String strategy, String reason, boolean canScheduleExact, boolean batteryOptimizationDisabled) {
+            this.strategy = strategy;
+            this.reason = reason;
+            this.canScheduleExact = canScheduleExact;
+            this.batteryOptimizationDisabled = batteryOptimizationDisabled;
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // SELECTION
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Current strategy (cached; cheap enough for batch scheduling)
+     */
+    public static synchronized Choice select(Context context) {
+        long now = SystemClock.elapsedRealtime();
+        if (cached != null && now - cachedAtElapsed < CHOICE_TTL_MS) {
+            return cached;
+        }
+        cached = compute(context);
+        cachedAtElapsed = now;
+        return cached;
+    }
+
+    /**
+     * Drop the cached choice (new measurement, permission change, other process)
+     */
+    public static synchronized void invalidate() {
+        cached = null;
+    }
+
+    private static Choice compute(Context context) {
+        boolean canExact = AlarmPermissionHelper.canScheduleExactAlarms(context);
+        boolean batteryExempt = AlarmPermissionHelper.isBatteryOptimizationDisabled(context);
+        AlarmStore store = AlarmStore.getInstance(context);
+
+        if (!canExact) {
+            remember(store, STRATEGY_INEXACT_IDLE);
+            return new Choice(STRATEGY_INEXACT_IDLE, "no exact alarm permission", false, batteryExempt);
+        }
+
+        String best = null;
+        long bestScore = Long.MAX_VALUE;
+        for (String strategy : STRATEGIES) {
+            long score = score(getStats(context, strategy), strategy, batteryExempt);
+            if (score < bestScore) {
+                best = strategy;
+                bestScore = score;
+            }
+        }
+
+        // Keep the current strategy unless the winner is clearly better
+        String current = store.getSetting(SETTING_CURRENT, null);
+        if (current != null && !current.equals(best) && isKnown(current)) {
+            long currentScore = score(getStats(context, current), current, batteryExempt);
+            if (currentScore - bestScore < SWITCH_MARGIN_MS) {
+                best = current;
+                bestScore = currentScore;
+            }
+        }
+
+        Stats stats = getStats(context, best);
+        String reason = stats.samples >= MIN_SAMPLES
+            ? "lowest measured lateness (" + stats.avgLatenessMs + "ms avg over " + stats.samples + " fires)"
+            : "default for this device (" + (batteryExempt ? "battery exempt" : "battery optimized") + ")";
+        if (!best.equals(current)) {
+            Log.d(TAG, "✓ Strategy → " + best + ": " + reason);
+        }
+        remember(store, best);
+        return new Choice(best, reason, true, batteryExempt);
+    }
+
+    /**
+     * Expected lateness in ms (lower is better)
+     */
+    private static long score(Stats stats, String strategy, boolean batteryExempt) {
+        if (stats.samples >= MIN_SAMPLES) {
+            return stats.avgLatenessMs;
+        }
+        switch (strategy) {
+            case STRATEGY_ALARM_CLOCK:
+                return 0;
+            case STRATEGY_EXACT_IDLE:
+                // Doze rate-limits these unless the app is battery exempt
+                return batteryExempt ? 1000L : 60_000L;
+            default:
+                return 10 * 60_000L;
+        }
+    }
+
+    private static void remember(AlarmStore store, String strategy) {
+        if (!strategy.equals(store.getSetting(SETTING_CURRENT, null))) {
+            store.putSetting(SETTING_CURRENT, strategy);
+        }
+    }
+
+    private static boolean isKnown(String strategy) {
+        for (String known : STRATEGIES) {
+            if (known.equals(strategy)) return true;
+        }
+        return false;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // ARMING
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Arm a PendingIntent with the given strategy.
+     * The Intent behind it must carry EXTRA_STRATEGY (see tag()).
+     *
+     * @throws SecurityException if exact alarms were revoked meanwhile
+     */
+    public static void arm(AlarmManager alarmManager, String strategy, long triggerAtMillis, PendingIntent pendingIntent) {
+        switch (strategy) {
+            case STRATEGY_EXACT_IDLE:
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAtMillis, pendingIntent);
+                break;
+            case STRATEGY_INEXACT_IDLE:
+                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAtMillis, pendingIntent);
+                break;
+            default:
+                alarmManager.setAlarmClock(
+                    new AlarmManager.AlarmClockInfo(triggerAtMillis, pendingIntent), pendingIntent);
+                break;
+        }
+    }
+
+    /**
+     * Select a strategy, tag the Intent with it and return it
+     */
+    public static String tag(Context context, Intent intent) {
+        String strategy = select(context).strategy;
+        intent.putExtra(EXTRA_STRATEGY, strategy);
+        return strategy;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // MEASUREMENT
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Record how late a fire armed with this strategy arrived
+     * (called from AlarmReceiver with receiver-entry wall clock)
+     */
+    public static void recordLateness(Context context, String strategy, long latenessMs) {
+        if (strategy == null || !isKnown(strategy)) return;
+        if (latenessMs > MAX_PLAUSIBLE_LATENESS_MS) {
+            Log.w(TAG, "⚠ Ignoring " + latenessMs + "ms lateness for " + strategy + " (device off?)");
+            return;
+        }
+        long lateness = Math.max(0, latenessMs);
+
+        Stats stats = getStats(context, strategy);
+        stats.avgLatenessMs = stats.samples == 0
+            ? lateness
+            : Math.round(EWMA_ALPHA * lateness + (1 - EWMA_ALPHA) * stats.avgLatenessMs);
+        stats.maxLatenessMs = Math.max(stats.maxLatenessMs, lateness);
+        stats.lastLatenessMs = lateness;
+        stats.samples++;
+
+        AlarmStore.getInstance(context).putSetting(SETTING_STATS_PREFIX + strategy,
+            stats.samples + "," + stats.avgLatenessMs + "," + stats.maxLatenessMs + "," + stats.lastLatenessMs);
+        invalidate();
+        Log.d(TAG, "Lateness " + strategy + ": " + lateness + "ms (avg " + stats.avgLatenessMs + "ms)");
+    }
+
+    /**
+     * Lateness stats of one strategy (empty if never measured)
+     */
+    public static Stats getStats(Context context, String strategy) {
+        Stats stats = new Stats(strategy);
+        String raw = AlarmStore.getInstance(context).getSetting(SETTING_STATS_PREFIX + strategy, null);
+        if (raw == null) return stats;
+        try {
+            String[] parts = raw.split(",");
+            stats.samples = Integer.parseInt(parts[0]);
+            stats.avgLatenessMs = Long.parseLong(parts[1]);
+            stats.maxLatenessMs = Long.parseLong(parts[2]);
+            stats.lastLatenessMs = Long.parseLong(parts[3]);
+        } catch (Exception e) {
+            Log.w(TAG, "⚠ Corrupt stats for " + strategy + ": " + raw);
+            return new Stats(strategy);
+        }
+        return stats;
+    }
+}
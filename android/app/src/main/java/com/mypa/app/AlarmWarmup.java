@@ -0,0 +1,297 @@
+package com.mypa.app;
+
+import android.app.AlarmManager;
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * AlarmWarmup - Stages everything the ring path needs a minute before the alarm
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * At fire time AlarmReceiver → AlarmRingingService used to build
+ * everything from scratch: notification channel, notification and
+ * its PendingIntents, MediaPlayer + decoder, cache lookups, class
+ * loading. All of that sits between "alarm due" and "first sound".
+ *
+ * A warm-up broadcast ~60s earlier does that work instead:
+ *
+ *   T-60s  warm-up (setAndAllowWhileIdle)
+ *            → channel + notification template created, notification built
+ *            → ringtone / clip opened and PREPARED (decoder ready)
+ *            → speech / clip caches verified, missing ones fetched
+ *            → store, FireMetrics and ring-path classes loaded
+ *   T      real alarm → startForeground(staged) + player.start()
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * BEST EFFORT ONLY:
+ * ═══════════════════════════════════════════════════════════════
+ * setAndAllowWhileIdle() is inexact and the process may die between
+ * warm-up and alarm. Staged objects live in memory only; the ring
+ * path always falls back to the normal cold start if nothing is
+ * staged for its alarm. Unused staging is released after a few minutes.
+ */
+public class AlarmWarmup {
+    private static final String TAG = "AlarmWarmup";
+
+    public static final String ACTION_WARMUP = "com.mypa.app.ACTION_ALARM_WARMUP";
+    static final String SETTING_ENABLED = "warmup_enabled";
+
+    // How long before the alarm the warm-up fires
+    static final long LEAD_MILLIS = 60 * 1000L;
+    // Warm-up further than this from the alarm (alarm moved / very late delivery) is skipped
+    private static final long MAX_EARLY_MILLIS = 3 * LEAD_MILLIS;
+    // Staged player / notification released if the alarm never claims them
+    private static final long STAGE_TTL_MILLIS = 5 * 60 * 1000L;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Staged for ONE alarm at a time (the next one to ring)
+    private static int stagedAlarmId = -1;
+    private static AlarmRingingService.AlarmSound stagedSound;
+    private static Notification stagedNotification;
+
+    public static boolean isEnabled(Context context) {
+        return !"false".equals(AlarmStore.getInstance(context).getSetting(SETTING_ENABLED, "true"));
+    }
+
+    /**
+     * Turn warm-ups on / off and re-arm or cancel them for the stored alarms
+     */
+    public static void setEnabled(Context context, boolean enabled) {
+        AlarmStore store = AlarmStore.getInstance(context);
+        store.putSetting(SETTING_ENABLED, String.valueOf(enabled));
+
+        if (enabled && NextAlarmScheduler.isEnabled(context)) {
+            // Single-armed mode: only the armed head gets a warm-up
+            AlarmRecord head = store.getFirstDueAfter(System.currentTimeMillis());
+            if (head != null) schedule(context, head.id, head.triggerAtMillis);
+        } else {
+            for (AlarmRecord record : store.getAllEnabled()) {
+                if (enabled) {
+                    schedule(context, record.id, record.triggerAtMillis);
+                } else {
+                    cancel(context, record.id);
+                }
+            }
+        }
+        if (!enabled) {
+            release();
+        }
+        Log.d(TAG, "✓ Warm-up " + (enabled ? "enabled" : "disabled"));
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // ARMING
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Arm the warm-up for an alarm (no-op if disabled or the alarm is too close)
+     */
+    public static void schedule(Context context, int alarmId, long triggerAtMillis) {
+        if (!isEnabled(context)) return;
+        long warmAt = triggerAtMillis - LEAD_MILLIS;
+        if (warmAt <= System.currentTimeMillis()) return;
+
+        try {
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            if (alarmManager == null) return;
+            // Inexact is fine here - a late warm-up only loses the head start
+            alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, warmAt, warmupIntent(context, alarmId));
+            Log.d(TAG, "✓ Warm-up armed for alarm " + alarmId + " at " + new java.util.Date(warmAt));
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to arm warm-up for alarm " + alarmId, e);
+        }
+    }
+
+    /**
+     * Cancel the warm-up of an alarm and drop anything staged for it
+     */
+    public static void cancel(Context context, int alarmId) {
+        try {
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            if (alarmManager != null) {
+                PendingIntent pendingIntent = warmupIntent(context, alarmId);
+                alarmManager.cancel(pendingIntent);
+                pendingIntent.cancel();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to cancel warm-up for alarm " + alarmId, e);
+        }
+        synchronized (AlarmWarmup.class) {
+            if (stagedAlarmId == alarmId) release();
+        }
+    }
+
+    private static PendingIntent warmupIntent(Context context, int alarmId) {
+        // Own action → never collides with the alarm / snooze PendingIntents of this ID
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_WARMUP);
+        intent.putExtra(AlarmRecord.EXTRA_ID, alarmId);
+        return PendingIntent.getBroadcast(
+            context,
+            alarmId,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // STAGING (warm-up broadcast)
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Warm-up broadcast received: stage the alarm off the main thread
+     */
+    public static void onWarmup(Context context, Intent intent, BroadcastReceiver.PendingResult result) {
+        final Context appContext = context.getApplicationContext();
+        final int alarmId = intent.getIntExtra(AlarmRecord.EXTRA_ID, -1);
+        executor.execute(() -> {
+            try {
+                stage(appContext, alarmId);
+            } catch (Exception e) {
+                Log.e(TAG, "✗ Warm-up failed for alarm " + alarmId, e);
+            } finally {
+                if (result != null) result.finish();
+            }
+        });
+    }
+
+    private static void stage(Context context, int alarmId) throws Exception {
+        long start = SystemClock.elapsedRealtime();
+
+        AlarmRecord record = AlarmStore.getInstance(context).get(alarmId);
+        if (record == null || !record.enabled) {
+            Log.d(TAG, "Alarm " + alarmId + " gone - nothing to warm up");
+            return;
+        }
+        long untilDue = record.triggerAtMillis - System.currentTimeMillis();
+        if (untilDue <= 0 || untilDue > MAX_EARLY_MILLIS) {
+            Log.d(TAG, "Alarm " + alarmId + " not due soon (" + untilDue + "ms) - skipping warm-up");
+            return;
+        }
+
+        // 1. Caches: ringtone copy, voice clip, synthesized speech
+        AlarmSoundCache.warm(context);
+        boolean clipPending = record.clipSource != null
+            && VoiceClipCache.getCachedFile(context, record.clipSource) == null;
+        if (clipPending) {
+            // Fetched in the background; the ring path opens it if it arrives in time
+            Log.w(TAG, "⚠ Voice clip of alarm " + alarmId + " not cached - fetching now");
+            VoiceClipCache.cacheAsync(context, Collections.singletonList(record));
+        }
+        if (SpeechCache.isEnabled(context)
+            && SpeechCache.getCachedSegments(context, record.title, record.body) == null) {
+            Log.w(TAG, "⚠ Speech of alarm " + alarmId + " not cached - synthesizing now");
+            SpeechCache.prepareAsync(context, Collections.singletonList(record));
+        }
+
+        // 2. Classes + lazily loaded state of the ring path
+        FireMetrics.warm(context);
+        warmClasses();
+
+        // 3. Notification channel, this process's template, the notification itself
+        AlarmNotificationCache.prepare(context, record);
+        Notification notification = AlarmRingingService.buildNotification(
+            context,
+            Collections.singletonList(new RingSession(record, -1, 0)),
+            record.triggerAtMillis
+        );
+
+        // 4. Player with the decoder prepared (blocking is fine on this thread)
+        AlarmRingingService.AlarmSound sound = clipPending
+            ? null
+            : AlarmRingingService.openAlarmSound(context, record.clipSource);
+        if (sound != null) {
+            sound.player.prepare();
+        }
+
+        synchronized (AlarmWarmup.class) {
+            release();
+            stagedAlarmId = alarmId;
+            stagedSound = sound;
+            stagedNotification = notification;
+        }
+        handler.postDelayed(() -> {
+            synchronized (AlarmWarmup.class) {
+                if (stagedAlarmId == alarmId) {
+                    Log.d(TAG, "Staged alarm " + alarmId + " never rang - releasing");
+                    release();
+                }
+            }
+        }, STAGE_TTL_MILLIS);
+
+        Log.d(TAG, "✓ Alarm " + alarmId + " staged in " + (SystemClock.elapsedRealtime() - start)
+            + "ms (" + (sound != null ? sound.source : "no sound") + ", due in " + untilDue + "ms)");
+    }
+
+    private static void warmClasses() {
+        String[] classes = {
+            "com.mypa.app.AlarmRingingService",
+            "com.mypa.app.AlarmActivity",
+            "com.mypa.app.RingSession",
+            "com.mypa.app.SnoozeManager",
+            "androidx.core.app.NotificationCompat$Builder",
+            "androidx.core.app.NotificationCompat$InboxStyle",
+            "androidx.core.app.NotificationCompat$BigTextStyle",
+        };
+        for (String name : classes) {
+            try {
+                Class.forName(name);
+            } catch (Throwable t) {
+                Log.w(TAG, "⚠ Could not preload " + name);
+            }
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // RING PATH (AlarmRingingService)
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Staged notification for this alarm, or null. Single use.
+     */
+    static synchronized Notification takeNotification(int alarmId) {
+        if (alarmId != stagedAlarmId || stagedNotification == null) return null;
+        Notification notification = stagedNotification;
+        stagedNotification = null;
+        return notification;
+    }
+
+    /**
+     * Staged (already prepared) player for this alarm, or null. Single use;
+     * the caller owns and releases the player.
+     */
+    static synchronized AlarmRingingService.AlarmSound takeSound(int alarmId) {
+        if (alarmId != stagedAlarmId || stagedSound == null) return null;
+        AlarmRingingService.AlarmSound sound = stagedSound;
+        stagedSound = null;
+        return sound;
+    }
+
+    private static synchronized void release() {
+        if (stagedSound != null) {
+            try {
+                stagedSound.player.release();
+            } catch (Exception e) {
+                Log.e(TAG, "Release staged player failed", e);
+            }
+        }
+        stagedSound = null;
+        stagedNotification = null;
+        stagedAlarmId = -1;
+    }
+}
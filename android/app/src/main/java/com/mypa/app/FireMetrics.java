@@ -0,0 +1,285 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * FireMetrics - Per-fire timing of every alarm, kept in a lock-free ring buffer
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHAT IS RECORDED (one slot per fire):
+ * ═══════════════════════════════════════════════════════════════
+ *   scheduled-at      wall clock the alarm was due   (drift baseline)
+ *   receiver-entry    AlarmReceiver.onReceive()      (wall + monotonic)
+ *   service-create    AlarmRingingService.onCreate()
+ *   foreground        startForeground() returned
+ *   first-audio       MediaPlayer.onPrepared() → start()
+ *   activity-visible  AlarmActivity got window focus
+ *
+ * Stages after receiver-entry are SystemClock.elapsedRealtime() values,
+ * so they are immune to clock changes. drift = receiver-entry wall
+ * clock minus scheduled-at.
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY LOCK-FREE:
+ * ═══════════════════════════════════════════════════════════════
+ * Receiver, service, activity and MediaPlayer callbacks all write
+ * from different threads on the alarm's critical path. A slot is
+ * claimed with one getAndIncrement(); stage writes are single CAS
+ * operations on an AtomicLongArray. No locks, no allocation.
+ *
+ * The buffer is written to disk when the alarm is dismissed / snoozed
+ * and read back lazily, so metrics survive process death.
+ */
+public class FireMetrics {
+    private static final String TAG = "FireMetrics";
+
+    private static final int SLOTS = 128;
+    private static final String FILE_NAME = "fire_metrics.bin";
+    private static final int FILE_VERSION = 1;
+
+    // Slot layout (longs)
+    private static final int F_SEQ = 0;             // sequence number + 1 (0 = empty slot)
+    private static final int F_ALARM_ID = 1;
+    private static final int F_SCHEDULED_AT = 2;     // wall clock, 0 = unknown
+    private static final int F_RECEIVED_WALL = 3;    // wall clock
+    private static final int F_RECEIVED = 4;         // elapsedRealtime
+    public static final int STAGE_SERVICE_CREATE = 5;
+    public static final int STAGE_FOREGROUND = 6;
+    public static final int STAGE_FIRST_AUDIO = 7;
+    public static final int STAGE_ACTIVITY_VISIBLE = 8;
+    private static final int FIELDS = 9;
+
+    public static final String EXTRA_SEQ = "fire_metrics_seq";
+
+    private static final AtomicLongArray slots = new AtomicLongArray(SLOTS * FIELDS);
+    private static final AtomicLong nextSeq = new AtomicLong();
+    private static volatile boolean loaded;
+
+    /**
+     * Claim a slot for a new fire (call at AlarmReceiver entry)
+     *
+     * @return sequence number to pass along with the alarm, -1 on failure
+     */
+    public static long begin(Context context, int alarmId, long scheduledAtMillis,
+                             long receivedWallMillis, long receivedElapsed) {
+        ensureLoaded(context);
+        long seq = nextSeq.getAndIncrement();
+        int base = base(seq);
+
+        // Invalidate first so a concurrent reader never mixes two fires
+        slots.set(base + F_SEQ, 0);
+        for (int field = F_ALARM_ID; field < FIELDS; field++) {
+            slots.set(base + field, 0);
+        }
+        slots.set(base + F_ALARM_ID, alarmId);
+        slots.set(base + F_SCHEDULED_AT, scheduledAtMillis);
+        slots.set(base + F_RECEIVED_WALL, receivedWallMillis);
+        slots.set(base + F_RECEIVED, receivedElapsed);
+        slots.set(base + F_SEQ, seq + 1);
+        return seq;
+    }
+
+    /**
+     * Record a stage for a fire. First write wins; stale sequences are ignored.
+     */
+    public static void mark(long seq, int stage, long elapsedRealtime) {
+        if (seq < 0 || stage < STAGE_SERVICE_CREATE || stage >= FIELDS) return;
+        int base = base(seq);
+        if (slots.get(base + F_SEQ) != seq + 1) return;  // slot reused by a newer fire
+        slots.compareAndSet(base + stage, 0, elapsedRealtime);
+    }
+
+    public static void mark(long seq, int stage) {
+        mark(seq, stage, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Most recent fire of an alarm, for components that were built before
+     * the fire (AlarmWarmup's staged notification)
+     *
+     * @return sequence number, -1 if the alarm has no fire in the buffer
+     */
+    public static long latestSeq(int alarmId) {
+        long latest = -1;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            int base = slot * FIELDS;
+            long seq = slots.get(base + F_SEQ) - 1;
+            if (seq > latest && slots.get(base + F_ALARM_ID) == alarmId) {
+                latest = seq;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Forget the in-memory buffer; next use reads the file again.
+     * For the app process, whose copy goes stale while :alarm records fires.
+     */
+    public static void invalidate() {
+        loaded = false;
+    }
+
+    /**
+     * Load the buffer ahead of time so the first begin() does no disk I/O
+     */
+    public static void warm(Context context) {
+        ensureLoaded(context);
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // SUMMARY
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Percentiles of one metric over the buffered fires
+     */
+    public static class Stats {
+        public int count;
+        public long p50 = -1;
+        public long p95 = -1;
+        public long p99 = -1;
+        public long max = -1;
+    }
+
+    public static class Summary {
+        public int fires;
+        public Stats drift;
+        public Stats serviceCreate;
+        public Stats foreground;
+        public Stats firstAudio;
+        public Stats activityVisible;
+    }
+
+    /**
+     * Drift and per-stage latencies (ms since receiver entry) over the buffer
+     */
+    public static Summary summarize(Context context) {
+        ensureLoaded(context);
+        List<long[]> fires = snapshot();
+
+        Summary summary = new Summary();
+        summary.fires = fires.size();
+        summary.drift = stats(fires, F_SCHEDULED_AT);
+        summary.serviceCreate = stats(fires, STAGE_SERVICE_CREATE);
+        summary.foreground = stats(fires, STAGE_FOREGROUND);
+        summary.firstAudio = stats(fires, STAGE_FIRST_AUDIO);
+        summary.activityVisible = stats(fires, STAGE_ACTIVITY_VISIBLE);
+        return summary;
+    }
+
+    private static Stats stats(List<long[]> fires, int field) {
+        long[] values = new long[fires.size()];
+        int n = 0;
+        for (long[] fire : fires) {
+            if (fire[field] == 0) continue;
+            values[n++] = field == F_SCHEDULED_AT
+                ? fire[F_RECEIVED_WALL] - fire[F_SCHEDULED_AT]
+                : fire[field] - fire[F_RECEIVED];
+        }
+
+        Stats stats = new Stats();
+        stats.count = n;
+        if (n == 0) return stats;
+
+        Arrays.sort(values, 0, n);
+        stats.p50 = percentile(values, n, 50);
+        stats.p95 = percentile(values, n, 95);
+        stats.p99 = percentile(values, n, 99);
+        stats.max = values[n - 1];
+        return stats;
+    }
+
+    // Nearest-rank percentile
+    private static long percentile(long[] sorted, int n, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * n);
+        return sorted[Math.max(0, Math.min(n - 1, rank - 1))];
+    }
+
+    /**
+     * Consistent copies of all filled slots
+     */
+    private static List<long[]> snapshot() {
+        List<long[]> fires = new ArrayList<>();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            int base = slot * FIELDS;
+            long seq = slots.get(base + F_SEQ);
+            if (seq == 0) continue;
+
+            long[] fire = new long[FIELDS];
+            for (int field = 0; field < FIELDS; field++) {
+                fire[field] = slots.get(base + field);
+            }
+            // Skip slots rewritten while copying
+            if (slots.get(base + F_SEQ) == seq) {
+                fires.add(fire);
+            }
+        }
+        return fires;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // PERSISTENCE
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Write the buffer to disk (called on dismiss / snooze)
+     */
+    public static synchronized void persist(Context context) {
+        ensureLoaded(context);
+        File file = new File(context.getNoBackupFilesDir(), FILE_NAME);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeInt(FILE_VERSION);
+            out.writeLong(nextSeq.get());
+            for (int i = 0; i < SLOTS * FIELDS; i++) {
+                out.writeLong(slots.get(i));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to persist fire metrics", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+
+    private static void ensureLoaded(Context context) {
+        if (loaded) return;
+        synchronized (FireMetrics.class) {
+            if (loaded) return;
+            File file = new File(context.getNoBackupFilesDir(), FILE_NAME);
+            if (file.exists()) {
+                try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                    if (in.readInt() == FILE_VERSION) {
+                        long seq = in.readLong();
+                        for (int i = 0; i < SLOTS * FIELDS; i++) {
+                            slots.set(i, in.readLong());
+                        }
+                        nextSeq.set(seq);
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "✗ Failed to load fire metrics", e);
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private static int base(long seq) {
+        return (int) (seq % SLOTS) * FIELDS;
+    }
+}
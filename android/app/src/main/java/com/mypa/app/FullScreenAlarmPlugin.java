@@ -1,19 +1,27 @@
 package com.mypa.app;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
 import android.os.Build;
 import android.util.Log;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
-import java.util.Calendar;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * FullScreenAlarmPlugin - Capacitor plugin for scheduling full-screen alarms
@@ -36,6 +44,34 @@ import java.util.Calendar;
 public class FullScreenAlarmPlugin extends Plugin {
     private static final String TAG = "FullScreenAlarmPlugin";
 
+    // listAlarms() / getNextAlarms() page sizes
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    // Alarms ring in the ":alarm" process; this hears about fires / dismisses / snoozes
+    private BroadcastReceiver stateReceiver;
+
+    @Override
+    public void load() {
+        super.load();
+        stateReceiver = AlarmStateSync.register(getContext(), (alarmId, event, atMillis) -> {
+            JSObject data = new JSObject();
+            data.put("alarmId", alarmId);
+            data.put("event", event);
+            data.put("atMillis", atMillis);
+            notifyListeners("alarmStateChanged", data);
+        });
+        // Repair alarms lost to task killers / left behind by cancels (background)
+        AlarmReconciler.requestAsync(getContext(), null);
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        AlarmStateSync.unregister(getContext(), stateReceiver);
+        stateReceiver = null;
+        super.handleOnDestroy();
+    }
+
     /**
      * Schedules a full-screen alarm
      *
@@ -46,6 +82,10 @@ public class FullScreenAlarmPlugin extends Plugin {
      * - triggerAtMillis (number): Timestamp in milliseconds when alarm should trigger
      * - type (string): Alarm type (alarm, medicine, meeting)
      * - allowWhileIdle (boolean): Optional, allows alarm to fire even in Doze mode
+     * - clipUrl (string): Optional, user voice clip (http(s) URL, file / content URI
+     *   or Capacitor file URL); cached offline now and played instead of the ringtone
+     * - snoozeMinutes (number): Optional, snooze duration (default 5)
+     * - maxSnoozes (number): Optional, snoozes allowed per ring (default 0 = unlimited)
      */
     @PluginMethod
     public void schedule(PluginCall call) {
@@ -88,20 +128,27 @@ public class FullScreenAlarmPlugin extends Plugin {
 
             Log.d(TAG, "Scheduling alarm " + alarmId + " at " + triggerAtMillis);
 
+            // Persist in native store FIRST (source of truth for receiver/service)
+            AlarmRecord record = new AlarmRecord(alarmId, title, body, type, triggerAtMillis, null);
+            record.clipSource = call.getString("clipUrl");
+            record.snoozeMinutes = Math.max(1, call.getInt("snoozeMinutes", AlarmRecord.DEFAULT_SNOOZE_MINUTES));
+            record.maxSnoozes = Math.max(0, call.getInt("maxSnoozes", 0));
+            AlarmStore.getInstance(context).upsert(record);
+
             // IMPROVED: Use helper class for consistent alarm scheduling
-            boolean success = AlarmSchedulerHelper.scheduleExactAlarm(
-                context,
-                alarmId,
-                triggerAtMillis,
-                title,
-                body,
-                type
-            );
+            // (record overload: single-armed mode enqueues into the heap)
+            boolean success = AlarmSchedulerHelper.scheduleExactAlarm(context, record);
 
             if (!success) {
                 call.reject("Failed to schedule alarm");
                 return;
             }
+            AlarmStateSync.publish(context, alarmId, AlarmStateSync.EVENT_CHANGED);
+
+            // Cache ringtone + speech now so the alarm starts sound instantly
+            AlarmSoundCache.warmAsync(context);
+            SpeechCache.prepareAsync(context, Collections.singletonList(record));
+            VoiceClipCache.cacheAsync(context, Collections.singletonList(record));
 
             // Return success
             JSObject result = new JSObject();
@@ -138,7 +185,12 @@ public class FullScreenAlarmPlugin extends Plugin {
             boolean success = AlarmSchedulerHelper.cancelAlarm(context, alarmId);
 
             // Also cancel any snooze alarm for this ID
-            AlarmSchedulerHelper.cancelSnoozeAlarm(context, alarmId);
+            SnoozeManager.cancel(context, alarmId);
+
+            // Remove from native store
+            AlarmStore.getInstance(context).delete(alarmId);
+            AlarmStateSync.publish(context, alarmId, AlarmStateSync.EVENT_CHANGED);
+            SpeechCache.gcAsync(context);
 
             JSObject result = new JSObject();
             result.put("success", success);
@@ -151,7 +203,8 @@ public class FullScreenAlarmPlugin extends Plugin {
     }
 
     /**
-     * Schedules a repeating alarm (e.g., for recurring daily alarms)
+     * Schedules a repeating alarm. The next occurrence is armed natively
+     * by AlarmReceiver every time the alarm fires (see AlarmRecurrence).
      *
      * Parameters:
      * - id (number): Unique alarm ID
@@ -160,6 +213,17 @@ public class FullScreenAlarmPlugin extends Plugin {
      * - hour (number): Hour (0-23)
      * - minute (number): Minute (0-59)
      * - type (string): Alarm type
+     * - frequency (string): Optional, 'daily' (default), 'weekly' or 'monthly'
+     * - interval (number): Optional, every N days / weeks / months (default 1)
+     * - daysOfWeek (number[]): Weekly only, 1 (Sun) - 7 (Sat)
+     * - dayOfMonth (number): Monthly only, 1-31 (short months use their last day)
+     * - endAtMillis (number): Optional, no occurrences after this time
+     * - count (number): Optional, total number of times to ring
+     * - startDate (string): Optional, 'YYYY-MM-DD' - first day the alarm may
+     *   ring and the anchor of interval > 1 (default: the anchor already
+     *   stored for the same rule, else today)
+     * - clipUrl (string): Optional, user voice clip (see schedule())
+     * - snoozeMinutes / maxSnoozes (number): Optional, see schedule()
      */
     @PluginMethod
     public void scheduleRepeating(PluginCall call) {
@@ -167,8 +231,6 @@ public class FullScreenAlarmPlugin extends Plugin {
             int alarmId = call.getInt("id", -1);
             String title = call.getString("title", "Alarm");
             String body = call.getString("body", "");
-            int hour = call.getInt("hour", 0);
-            int minute = call.getInt("minute", 0);
             String type = call.getString("type", "alarm");
 
             if (alarmId == -1) {
@@ -176,79 +238,900 @@ public class FullScreenAlarmPlugin extends Plugin {
                 return;
             }
 
-            // Calculate next occurrence
-            Calendar calendar = Calendar.getInstance();
-            calendar.setTimeInMillis(System.currentTimeMillis());
-            calendar.set(Calendar.HOUR_OF_DAY, hour);
-            calendar.set(Calendar.MINUTE, minute);
-            calendar.set(Calendar.SECOND, 0);
-            calendar.set(Calendar.MILLISECOND, 0);
+            Context context = getContext();
+            AlarmRecurrence recurrence = recurrenceFrom(
+                call.getData(), AlarmStore.getInstance(context), alarmId);
+            long triggerAtMillis = recurrence.nextAfter(System.currentTimeMillis(), ZoneId.systemDefault());
+            if (triggerAtMillis <= 0) {
+                call.reject("Recurrence has no future occurrence");
+                return;
+            }
+
+            Log.d(TAG, "Scheduling repeating alarm " + alarmId + " [" + recurrence.format() + "]");
+
+            // Persist in native store with its recurrence rule
+            AlarmRecord record = new AlarmRecord(
+                alarmId, title, body, type, triggerAtMillis, recurrence.format()
+            );
+            record.clipSource = call.getString("clipUrl");
+            record.snoozeMinutes = Math.max(1, call.getInt("snoozeMinutes", AlarmRecord.DEFAULT_SNOOZE_MINUTES));
+            record.maxSnoozes = Math.max(0, call.getInt("maxSnoozes", 0));
+            AlarmStore.getInstance(context).upsert(record);
 
-            // If time has passed today, schedule for tomorrow
-            if (calendar.getTimeInMillis() <= System.currentTimeMillis()) {
-                calendar.add(Calendar.DAY_OF_MONTH, 1);
+            // ═══════════════════════════════════════════════════════════════
+            // CRITICAL FIX: Don't use setRepeating()!
+            // ═══════════════════════════════════════════════════════════════
+            // setRepeating() is INEXACT on Android 4.4+ (may be delayed/batched)
+            // It does NOT work reliably when app is killed
+            //
+            // SOLUTION: Arm ONLY the first occurrence with the helper.
+            // AlarmReceiver arms each next occurrence from the stored rule.
+            // ═══════════════════════════════════════════════════════════════
+            boolean success = AlarmSchedulerHelper.scheduleExactAlarm(context, record);
+            if (!success) {
+                call.reject("Failed to schedule repeating alarm");
+                return;
             }
+            AlarmStateSync.publish(context, alarmId, AlarmStateSync.EVENT_CHANGED);
+            AlarmSoundCache.warmAsync(context);
+            SpeechCache.prepareAsync(context, Collections.singletonList(record));
+            VoiceClipCache.cacheAsync(context, Collections.singletonList(record));
+
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("alarmId", alarmId);
+            result.put("nextTriggerAtMillis", triggerAtMillis);
+            call.resolve(result);
+
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid recurrence", e);
+            call.reject("Invalid recurrence: " + e.getMessage());
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to schedule repeating alarm", e);
+            call.reject("Failed to schedule repeating alarm: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Schedules many alarms in ONE bridge call. Alarms already stored with
+     * the same data are skipped; the rest are saved in one transaction.
+     *
+     * Parameters:
+     * - alarms (object[]): schedule() options, or scheduleRepeating()
+     *   options (hour/minute + frequency) for repeating alarms
+     */
+    @PluginMethod
+    public void scheduleBatch(PluginCall call) {
+        applyBatch(call, false);
+    }
+
+    /**
+     * Makes the native alarm set exactly match the given list: new and
+     * changed alarms are scheduled, every other stored alarm is cancelled.
+     *
+     * Parameters:
+     * - alarms (object[]): same items as scheduleBatch()
+     */
+    @PluginMethod
+    public void replaceAll(PluginCall call) {
+        applyBatch(call, true);
+    }
+
+    /**
+     * Cancels many alarms in ONE bridge call
+     *
+     * Parameters:
+     * - ids (number[]): Alarm IDs to cancel
+     */
+    @PluginMethod
+    public void cancelBatch(PluginCall call) {
+        try {
+            JSONArray ids = call.getArray("ids");
+            if (ids == null) {
+                call.reject("ids is required");
+                return;
+            }
+
+            List<Integer> alarmIds = new ArrayList<>();
+            for (int i = 0; i < ids.length(); i++) {
+                int alarmId = ids.optInt(i, -1);
+                if (alarmId != -1) alarmIds.add(alarmId);
+            }
+
+            List<AlarmBatchScheduler.Result> results = AlarmBatchScheduler.apply(
+                getContext(), Collections.emptyList(), alarmIds, false);
+            AlarmStateSync.publish(getContext(), -1, AlarmStateSync.EVENT_CHANGED);
+            SpeechCache.gcAsync(getContext());
+            call.resolve(batchResult(results));
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to cancel alarms", e);
+            call.reject("Failed to cancel alarms: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compares AlarmStore with what is armed in AlarmManager and repairs the
+     * differences (missing alarms armed, ghost PendingIntents cancelled).
+     * Also runs by itself at app start and after scheduleBatch / replaceAll.
+     *
+     * Result:
+     * - checked, missing, ghosts, repaired: counts of this run
+     * - sweepComplete: false = more disabled / far-away alarms are checked on later runs
+     * - durationMs: time taken (off the main thread)
+     */
+    @PluginMethod
+    public void reconcileAlarms(PluginCall call) {
+        try {
+            AlarmReconciler.requestAsync(getContext(), report -> {
+                JSObject result = new JSObject();
+                result.put("checked", report.checked);
+                result.put("missing", report.missing);
+                result.put("ghosts", report.ghosts);
+                result.put("repaired", report.repaired);
+                result.put("sweepComplete", report.sweepComplete);
+                result.put("atMillis", report.atMillis);
+                result.put("durationMs", report.durationMs);
+                call.resolve(result);
+            });
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to reconcile alarms", e);
+            call.reject("Failed to reconcile alarms: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lists stored alarms, one page per call, straight from the AlarmStore index
+     *
+     * Parameters:
+     * - types (string[]): Optional, e.g. ['medicine', 'meeting'] (default all)
+     * - enabled (boolean): Optional, only enabled / disabled alarms (default both)
+     * - fromMillis (number): Optional, trigger time at / after this
+     * - untilMillis (number): Optional, trigger time before this
+     * - limit (number): Optional, page size 1-500 (default 50)
+     * - cursor (string): Optional, nextCursor of the previous page
+     *
+     * Result:
+     * - alarms: AlarmInfo[] ordered by trigger time, then id
+     * - nextCursor: only present if there are more alarms
+     */
+    @PluginMethod
+    public void listAlarms(PluginCall call) {
+        try {
+            AlarmStore.Filter filter = new AlarmStore.Filter();
+            filter.types = optTypes(call);
+            filter.enabled = call.getBoolean("enabled");
+            filter.fromMillis = call.getLong("fromMillis", 0L);
+            filter.untilMillis = call.getLong("untilMillis", 0L);
+            filter.limit = Math.max(1, Math.min(MAX_PAGE_SIZE, call.getInt("limit", DEFAULT_PAGE_SIZE)));
+
+            String cursor = call.getString("cursor");
+            if (cursor != null && !cursor.isEmpty()) {
+                String[] parts = cursor.split(":");
+                try {
+                    filter.afterTriggerAt = Long.parseLong(parts[0]);
+                    filter.afterId = Integer.parseInt(parts[1]);
+                } catch (RuntimeException e) {
+                    call.reject("Invalid cursor");
+                    return;
+                }
+            }
+
+            call.resolve(alarmPage(AlarmStore.getInstance(getContext()).list(filter), filter.limit, true));
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to list alarms", e);
+            call.reject("Failed to list alarms: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The next enabled alarms that will ring (earliest first)
+     *
+     * Parameters:
+     * - limit (number): Optional, 1-500 (default 10)
+     * - types (string[]): Optional, only these alarm types
+     *
+     * Result:
+     * - alarms: AlarmInfo[]
+     */
+    @PluginMethod
+    public void getNextAlarms(PluginCall call) {
+        try {
+            AlarmStore.Filter filter = new AlarmStore.Filter();
+            filter.types = optTypes(call);
+            filter.enabled = true;
+            filter.fromMillis = System.currentTimeMillis();
+            filter.limit = Math.max(1, Math.min(MAX_PAGE_SIZE, call.getInt("limit", 10)));
+
+            call.resolve(alarmPage(AlarmStore.getInstance(getContext()).list(filter), filter.limit, false));
 
-            long triggerAtMillis = calendar.getTimeInMillis();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get next alarms", e);
+            call.reject("Failed to get next alarms: " + e.getMessage());
+        }
+    }
 
-            Log.d(TAG, "Scheduling repeating alarm " + alarmId + " at " + hour + ":" + minute);
+    private static List<String> optTypes(PluginCall call) {
+        JSONArray types = call.getArray("types");
+        if (types == null || types.length() == 0) return null;
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < types.length(); i++) {
+            list.add(types.optString(i));
+        }
+        return list;
+    }
+
+    /**
+     * @param rows page rows, one more than limit if there is a next page
+     * @param withCursor add nextCursor when there is a next page
+     */
+    private static JSObject alarmPage(List<AlarmRecord> rows, int limit, boolean withCursor) {
+        JSArray alarms = new JSArray();
+        for (int i = 0; i < Math.min(limit, rows.size()); i++) {
+            alarms.put(alarmInfo(rows.get(i)));
+        }
+        JSObject result = new JSObject();
+        result.put("alarms", alarms);
+        if (withCursor && rows.size() > limit) {
+            AlarmRecord last = rows.get(limit - 1);
+            result.put("nextCursor", last.triggerAtMillis + ":" + last.id);
+        }
+        return result;
+    }
+
+    private static JSObject alarmInfo(AlarmRecord record) {
+        JSObject item = new JSObject();
+        item.put("id", record.id);
+        item.put("title", record.title);
+        item.put("body", record.body);
+        item.put("type", record.type);
+        item.put("triggerAtMillis", record.triggerAtMillis);
+        item.put("repeating", record.isRepeating());
+        item.put("enabled", record.enabled);
+        item.put("lastFiredAt", record.lastFiredAt);
+        item.put("fireCount", record.fireCount);
+        item.put("snoozeCount", record.snoozeCount);
+        item.put("snoozeUntil", record.snoozeUntil);
+        if (record.clipSource != null) item.put("clipUrl", record.clipSource);
+        return item;
+    }
+
+    private void applyBatch(PluginCall call, boolean replaceAll) {
+        try {
+            JSONArray alarms = call.getArray("alarms");
+            if (alarms == null) {
+                call.reject("alarms is required");
+                return;
+            }
 
-            // Create intent
             Context context = getContext();
-            Intent intent = new Intent(context, AlarmReceiver.class);
-            intent.putExtra("alarm_id", alarmId);
-            intent.putExtra("alarm_title", title);
-            intent.putExtra("alarm_body", body);
-            intent.putExtra("alarm_type", type);
+            if (alarms.length() > 0 && !AlarmPermissionHelper.canScheduleExactAlarms(context)) {
+                Log.e(TAG, "✗ SCHEDULE_EXACT_ALARM permission not granted!");
+                call.reject("Exact alarm permission required. Please grant permission in app settings.");
+                return;
+            }
+
+            // Invalid items are reported individually; the rest still apply
+            List<AlarmRecord> records = new ArrayList<>();
+            List<AlarmBatchScheduler.Result> invalid = new ArrayList<>();
+            for (int i = 0; i < alarms.length(); i++) {
+                JSONObject item = alarms.optJSONObject(i);
+                int alarmId = item != null ? item.optInt("id", -1) : -1;
+                try {
+                    records.add(recordFrom(item, AlarmStore.getInstance(context)));
+                } catch (IllegalArgumentException e) {
+                    invalid.add(new AlarmBatchScheduler.Result(
+                        alarmId, AlarmBatchScheduler.STATUS_ERROR, e.getMessage()));
+                }
+            }
+
+            Log.d(TAG, (replaceAll ? "Replacing all alarms with " : "Scheduling batch of ")
+                + records.size() + " alarms");
+
+            List<AlarmBatchScheduler.Result> results = new ArrayList<>(invalid);
+            results.addAll(AlarmBatchScheduler.apply(
+                context, records, Collections.emptyList(), replaceAll));
+
+            if (!records.isEmpty()) {
+                AlarmSoundCache.warmAsync(context);
+                SpeechCache.prepareAsync(context, records);
+                VoiceClipCache.cacheAsync(context, records);
+            }
+            if (replaceAll) {
+                SpeechCache.gcAsync(context);
+            }
+            AlarmStateSync.publish(context, -1, AlarmStateSync.EVENT_CHANGED);
+            AlarmReconciler.requestAsync(context, null);
+            call.resolve(batchResult(results));
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to schedule alarms", e);
+            call.reject("Failed to schedule alarms: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Build a stored alarm from one batch item
+     *
+     * @throws IllegalArgumentException if the item is incomplete or its recurrence is invalid
+     */
+    static AlarmRecord recordFrom(JSONObject item, AlarmStore store) {
+        if (item == null) {
+            throw new IllegalArgumentException("Alarm must be an object");
+        }
+        int alarmId = item.optInt("id", -1);
+        if (alarmId == -1) {
+            throw new IllegalArgumentException("Alarm ID is required");
+        }
+
+        String title = item.optString("title", "Alarm");
+        String body = item.optString("body", "");
+        String type = item.optString("type", "alarm");
+
+        // Repeating item: has a wall-clock time instead of a timestamp
+        if (!item.has("triggerAtMillis") && item.has("hour")) {
+            AlarmRecurrence recurrence = recurrenceFrom(item, store, alarmId);
+            long next = recurrence.nextAfter(System.currentTimeMillis(), ZoneId.systemDefault());
+            if (next <= 0) {
+                throw new IllegalArgumentException("Recurrence has no future occurrence");
+            }
+            AlarmRecord record = new AlarmRecord(alarmId, title, body, type, next, recurrence.format());
+            record.clipSource = optClipUrl(item);
+            applySnoozeOptions(record, item);
+            return record;
+        }
+
+        long triggerAtMillis = item.optLong("triggerAtMillis", -1);
+        if (triggerAtMillis <= 0) {
+            throw new IllegalArgumentException("triggerAtMillis is required");
+        }
+        AlarmRecord record = new AlarmRecord(alarmId, title, body, type, triggerAtMillis, null);
+        record.clipSource = optClipUrl(item);
+        applySnoozeOptions(record, item);
+        return record;
+    }
+
+    private static void applySnoozeOptions(AlarmRecord record, JSONObject item) {
+        record.snoozeMinutes = Math.max(1, item.optInt("snoozeMinutes", AlarmRecord.DEFAULT_SNOOZE_MINUTES));
+        record.maxSnoozes = Math.max(0, item.optInt("maxSnoozes", 0));
+    }
+
+    private static String optClipUrl(JSONObject item) {
+        String clipUrl = item.optString("clipUrl", "");
+        return clipUrl.isEmpty() ? null : clipUrl;
+    }
+
+    private static JSObject batchResult(List<AlarmBatchScheduler.Result> results) {
+        JSArray items = new JSArray();
+        int failed = 0;
+        for (AlarmBatchScheduler.Result result : results) {
+            JSObject item = new JSObject();
+            item.put("id", result.id);
+            item.put("status", result.status);
+            if (result.error != null) {
+                item.put("error", result.error);
+                failed++;
+            }
+            items.put(item);
+        }
+
+        JSObject response = new JSObject();
+        response.put("success", failed == 0);
+        response.put("failed", failed);
+        response.put("results", items);
+        return response;
+    }
+
+    /**
+     * Returns the measured AlarmReceiver → first audio latency of the last alarm
+     *
+     * Result:
+     * - latencyMs (number): -1 if no alarm has rung yet
+     * - source (string): 'staged' (prepared by the warm-up), 'clip' (voice clip),
+     *   'cached' (local ringtone copy) or 'uri'; an AlarmSoundFallback tier
+     *   ('fallbackCache', 'alarmUri', 'notificationUri', 'bundled', 'tone')
+     *   if the normal source stayed silent
+     * - measuredAt (number): timestamp of the measurement
+     * - soundCached (boolean): whether a local ringtone copy exists now
+     * - tiers: [{tier, count, lastMs, maxMs, lastAt}] which source produced
+     *   the first audio, and how long after the sound was requested
+     * - silentCount (number): rings where every tier failed
+     */
+    @PluginMethod
+    public void getAudioLatency(PluginCall call) {
+        try {
+            AlarmStore store = AlarmStore.getInstance(getContext());
+            JSObject result = new JSObject();
+            result.put("latencyMs", Long.parseLong(store.getSetting(AlarmSoundCache.SETTING_LATENCY_MS, "-1")));
+            result.put("source", store.getSetting(AlarmSoundCache.SETTING_LATENCY_SOURCE, null));
+            result.put("measuredAt", Long.parseLong(store.getSetting(AlarmSoundCache.SETTING_LATENCY_AT, "0")));
+            result.put("soundCached", AlarmSoundCache.getCachedFile(getContext()) != null);
+
+            JSArray tiers = new JSArray();
+            for (AlarmSoundFallback.Stats stats : AlarmSoundFallback.getAllStats(getContext())) {
+                JSObject item = new JSObject();
+                item.put("tier", stats.tier);
+                item.put("count", stats.count);
+                item.put("lastMs", stats.lastMs);
+                item.put("maxMs", stats.maxMs);
+                item.put("lastAt", stats.lastAt);
+                tiers.put(item);
+            }
+            result.put("tiers", tiers);
+            result.put("silentCount", AlarmSoundFallback.getSilentCount(getContext()));
+            call.resolve(result);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get audio latency", e);
+            call.reject("Failed to get audio latency: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wake-lock hold time of ringing alarms (see RingWakeLocks)
+     *
+     * Result:
+     * - sessions (number): ring sessions measured
+     * - avgHoldMs / maxHoldMs (number): lease hold per alarm (-1 if none yet)
+     * - totalScreenMs / totalCpuMs (number): summed screen-bright and CPU hold
+     * - last: {alarmId, holdMs, screenMs, endedAt}, missing if no alarm rang yet
+     */
+    @PluginMethod
+    public void getWakeLockStats(PluginCall call) {
+        try {
+            RingWakeLocks.Stats stats = RingWakeLocks.getStats(getContext());
+            JSObject result = new JSObject();
+            result.put("sessions", stats.sessions);
+            result.put("avgHoldMs", stats.avgHoldMs);
+            result.put("maxHoldMs", stats.maxHoldMs);
+            result.put("totalScreenMs", stats.totalScreenMs);
+            result.put("totalCpuMs", stats.totalCpuMs);
+            if (stats.lastEndedAt > 0) {
+                JSObject last = new JSObject();
+                last.put("alarmId", stats.lastAlarmId);
+                last.put("holdMs", stats.lastHoldMs);
+                last.put("screenMs", stats.lastScreenMs);
+                last.put("endedAt", stats.lastEndedAt);
+                result.put("last", last);
+            }
+            call.resolve(result);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get wake lock stats", e);
+            call.reject("Failed to get wake lock stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Alarm timing over the last fires (ring buffer of 128)
+     *
+     * Result:
+     * - fires (number): fires in the buffer
+     * - driftMs: receiver entry vs. scheduled time {count, p50, p95, p99, max}
+     * - serviceCreateMs / foregroundMs / firstAudioMs / activityVisibleMs:
+     *   stage latency since receiver entry, same shape
+     * - device: manufacturer / model / sdk, to compare OEMs
+     */
+    @PluginMethod
+    public void getFireMetrics(PluginCall call) {
+        try {
+            FireMetrics.Summary summary = FireMetrics.summarize(getContext());
+
+            JSObject device = new JSObject();
+            device.put("manufacturer", Build.MANUFACTURER);
+            device.put("model", Build.MODEL);
+            device.put("sdk", Build.VERSION.SDK_INT);
 
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
+            JSObject result = new JSObject();
+            result.put("fires", summary.fires);
+            result.put("driftMs", statsToJson(summary.drift));
+            result.put("serviceCreateMs", statsToJson(summary.serviceCreate));
+            result.put("foregroundMs", statsToJson(summary.foreground));
+            result.put("firstAudioMs", statsToJson(summary.firstAudio));
+            result.put("activityVisibleMs", statsToJson(summary.activityVisible));
+            result.put("device", device);
+            call.resolve(result);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get fire metrics", e);
+            call.reject("Failed to get fire metrics: " + e.getMessage());
+        }
+    }
+
+    private static JSObject statsToJson(FireMetrics.Stats stats) {
+        JSObject json = new JSObject();
+        json.put("count", stats.count);
+        json.put("p50", stats.p50);
+        json.put("p95", stats.p95);
+        json.put("p99", stats.p99);
+        json.put("max", stats.max);
+        return json;
+    }
+
+    /**
+     * Speech options for speaking alarms. Changing language or voice
+     * re-synthesizes the cached speech of every alarm in the background.
+     *
+     * Parameters:
+     * - enabled (boolean): Optional, speak alarms (default true)
+     * - language (string): Optional, BCP-47 tag like 'hi-IN' ('' = device language)
+     * - voice (string): Optional, TTS voice name ('' = engine default)
+     */
+    @PluginMethod
+    public void setSpeechOptions(PluginCall call) {
+        try {
+            Context context = getContext();
+            SpeechCache.setOptions(
                 context,
-                alarmId,
-                intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+                call.getBoolean("enabled"),
+                call.getString("language"),
+                call.getString("voice")
             );
+            call.resolve(speechOptions(context));
 
-            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-            if (alarmManager != null) {
-                // ═══════════════════════════════════════════════════════════════
-                // CRITICAL FIX: Don't use setRepeating()!
-                // ═══════════════════════════════════════════════════════════════
-                // setRepeating() is INEXACT on Android 4.4+ (may be delayed/batched)
-                // It does NOT work reliably when app is killed
-                //
-                // SOLUTION: Use setAlarmClock() for FIRST occurrence
-                // When alarm fires, app will reschedule next occurrence (+24h)
-                // This ensures EXACT timing for each alarm
-                // ═══════════════════════════════════════════════════════════════
-
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                    // Android 5.0+ (API 21+)
-                    AlarmManager.AlarmClockInfo alarmClockInfo = new AlarmManager.AlarmClockInfo(
-                        triggerAtMillis,
-                        pendingIntent
-                    );
-                    alarmManager.setAlarmClock(alarmClockInfo, pendingIntent);
-                    Log.d(TAG, "✓ Repeating alarm scheduled with setAlarmClock() [FIRST OCCURRENCE]");
-                    Log.d(TAG, "⚠ NOTE: App must reschedule next occurrence when alarm fires");
-
-                } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                    alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerAtMillis, pendingIntent);
-                    Log.d(TAG, "✓ Repeating alarm scheduled with setExact()");
-
-                } else {
-                    alarmManager.set(AlarmManager.RTC_WAKEUP, triggerAtMillis, pendingIntent);
-                    Log.d(TAG, "✓ Repeating alarm scheduled with set()");
-                }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to set speech options", e);
+            call.reject("Failed to set speech options: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getSpeechOptions(PluginCall call) {
+        try {
+            call.resolve(speechOptions(getContext()));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get speech options", e);
+            call.reject("Failed to get speech options: " + e.getMessage());
+        }
+    }
+
+    private static JSObject speechOptions(Context context) {
+        JSObject result = new JSObject();
+        result.put("enabled", SpeechCache.isEnabled(context));
+        result.put("language", SpeechCache.getLanguage(context));
+        result.put("voice", SpeechCache.getVoice(context));
+        return result;
+    }
+
+    /**
+     * Switches between per-alarm scheduling (default) and single-armed mode
+     * where only the earliest alarm is registered with AlarmManager.
+     *
+     * Parameters:
+     * - mode (string): 'perAlarm' or 'single'
+     */
+    @PluginMethod
+    public void setSchedulerMode(PluginCall call) {
+        try {
+            String mode = call.getString("mode");
+            if (mode == null) {
+                call.reject("mode is required");
+                return;
             }
 
+            NextAlarmScheduler.setMode(getContext(), mode);
+            AlarmStateSync.publish(getContext(), -1, AlarmStateSync.EVENT_CHANGED);
+
             JSObject result = new JSObject();
             result.put("success", true);
-            result.put("alarmId", alarmId);
+            result.put("mode", mode);
             call.resolve(result);
 
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
         } catch (Exception e) {
-            Log.e(TAG, "Failed to schedule repeating alarm", e);
-            call.reject("Failed to schedule repeating alarm: " + e.getMessage());
+            Log.e(TAG, "Failed to set scheduler mode", e);
+            call.reject("Failed to set scheduler mode: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the current scheduler mode
+     */
+    @PluginMethod
+    public void getSchedulerMode(PluginCall call) {
+        try {
+            JSObject result = new JSObject();
+            result.put("mode", NextAlarmScheduler.getMode(getContext()));
+            call.resolve(result);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get scheduler mode", e);
+            call.reject("Failed to get scheduler mode: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the AlarmManager strategy in use and how late each strategy
+     * has been on this device
+     *
+     * Result:
+     * - strategy (string): 'alarmClock', 'exactAllowWhileIdle' or 'inexactAllowWhileIdle'
+     * - reason (string): why it was picked
+     * - canScheduleExact / batteryOptimizationDisabled (boolean): inputs of the choice
+     * - strategies: [{strategy, samples, avgLatenessMs, maxLatenessMs, lastLatenessMs}]
+     *   (-1 = not measured yet)
+     */
+    @PluginMethod
+    public void getAlarmStrategy(PluginCall call) {
+        try {
+            Context context = getContext();
+            AlarmStrategySelector.invalidate();  // permission may have just changed
+            AlarmStrategySelector.Choice choice = AlarmStrategySelector.select(context);
+
+            JSArray strategies = new JSArray();
+            for (String name : AlarmStrategySelector.STRATEGIES) {
+                AlarmStrategySelector.Stats stats = AlarmStrategySelector.getStats(context, name);
+                JSObject item = new JSObject();
+                item.put("strategy", stats.strategy);
+                item.put("samples", stats.samples);
+                item.put("avgLatenessMs", stats.avgLatenessMs);
+                item.put("maxLatenessMs", stats.maxLatenessMs);
+                item.put("lastLatenessMs", stats.lastLatenessMs);
+                strategies.put(item);
+            }
+
+            JSObject result = new JSObject();
+            result.put("strategy", choice.strategy);
+            result.put("reason", choice.reason);
+            result.put("canScheduleExact", choice.canScheduleExact);
+            result.put("batteryOptimizationDisabled", choice.batteryOptimizationDisabled);
+            result.put("strategies", strategies);
+            call.resolve(result);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get alarm strategy", e);
+            call.reject("Failed to get alarm strategy: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Turns the pre-alarm warm-up on / off (on by default)
+     *
+     * About 60 seconds before each alarm a warm-up broadcast builds the
+     * notification and prepares the audio, so the alarm itself only has
+     * to post and start playback.
+     *
+     * Parameters:
+     * - enabled (boolean): Warm up alarms
+     */
+    @PluginMethod
+    public void setWarmupEnabled(PluginCall call) {
+        try {
+            Boolean enabled = call.getBoolean("enabled");
+            if (enabled == null) {
+                call.reject("enabled is required");
+                return;
+            }
+            AlarmWarmup.setEnabled(getContext(), enabled);
+
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("enabled", enabled);
+            call.resolve(result);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to set warm-up", e);
+            call.reject("Failed to set warm-up: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void isWarmupEnabled(PluginCall call) {
+        try {
+            JSObject result = new JSObject();
+            result.put("enabled", AlarmWarmup.isEnabled(getContext()));
+            call.resolve(result);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get warm-up", e);
+            call.reject("Failed to get warm-up: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Claims one alarm occurrence for delivery (see AlarmDeliveryDedup)
+     *
+     * For trigger paths outside the native alarm engine - LocalNotifications
+     * listeners, push handlers - so they do not ring an occurrence the
+     * full-screen alarm already rang (and vice versa).
+     *
+     * Parameters:
+     * - id (number): Alarm ID
+     * - occurrenceAtMillis (number): Scheduled time of this occurrence
+     * - source (string): Optional, 'localNotification' (default) or 'push'
+     *
+     * Result:
+     * - deliver: true if the caller should ring, false if already delivered
+     */
+    @PluginMethod
+    public void claimDelivery(PluginCall call) {
+        try {
+            Integer id = call.getInt("id");
+            Long occurrenceAtMillis = call.getLong("occurrenceAtMillis");
+            String source = call.getString("source", AlarmDeliveryDedup.SOURCE_LOCAL_NOTIFICATION);
+            if (id == null) {
+                call.reject("Alarm ID is required");
+                return;
+            }
+            if (occurrenceAtMillis == null) {
+                call.reject("occurrenceAtMillis is required");
+                return;
+            }
+
+            JSObject result = new JSObject();
+            result.put("deliver", AlarmDeliveryDedup.claim(getContext(), id, occurrenceAtMillis, source));
+            call.resolve(result);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to claim delivery", e);
+            call.reject("Failed to claim delivery: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Where the native adherence log (fire / dismiss / snooze / timeout) is uploaded.
+     * Events are kept on the device and sent in gzip batches by a background job,
+     * also when the app is never opened.
+     *
+     * Parameters:
+     * - url (string): Full endpoint URL, POST; empty = stop uploading
+     * - headers (object): Optional, extra request headers (e.g. Cookie / Authorization)
+     *
+     * Result:
+     * - pendingEvents: events not on the server yet
+     */
+    @PluginMethod
+    public void configureEventUpload(PluginCall call) {
+        try {
+            String url = call.getString("url");
+            if (url == null) {
+                call.reject("url is required");
+                return;
+            }
+            if (!url.isEmpty() && !url.startsWith("https://") && !url.startsWith("http://")) {
+                call.reject("url must be http(s)");
+                return;
+            }
+            AlarmEventUploader.configure(getContext(), url, call.getObject("headers"));
+
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("pendingEvents", AlarmEventUploader.pendingCount(getContext()));
+            call.resolve(result);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to configure event upload", e);
+            call.reject("Failed to configure event upload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Snooze state and history in one call (instead of one query per alarm)
+     *
+     * Parameters:
+     * - sinceMillis (number): Optional, only events at / after this time (default 0)
+     * - limit (number): Optional, max events (default 100)
+     *
+     * Result:
+     * - alarms: [{id, snoozeCount, maxSnoozes, snoozeMinutes, snoozeUntil}]
+     *   for alarms in a snooze streak
+     * - events: [{alarmId, event, atMillis, untilMillis, count}], newest first;
+     *   event is 'snooze', 'ring', 'dismiss', 'limit' or 'cancel'
+     */
+    @PluginMethod
+    public void getSnoozeHistory(PluginCall call) {
+        try {
+            long sinceMillis = call.getLong("sinceMillis", 0L);
+            int limit = Math.max(1, call.getInt("limit", 100));
+            AlarmStore store = AlarmStore.getInstance(getContext());
+
+            JSArray alarms = new JSArray();
+            for (AlarmRecord record : store.getAll()) {
+                if (record.snoozeCount == 0 && record.snoozeUntil == 0) continue;
+                JSObject item = new JSObject();
+                item.put("id", record.id);
+                item.put("snoozeCount", record.snoozeCount);
+                item.put("maxSnoozes", record.maxSnoozes);
+                item.put("snoozeMinutes", record.snoozeMinutes);
+                item.put("snoozeUntil", record.snoozeUntil);
+                alarms.put(item);
+            }
+
+            JSArray events = new JSArray();
+            for (AlarmStore.SnoozeEvent event : store.getSnoozeHistory(sinceMillis, limit)) {
+                JSObject item = new JSObject();
+                item.put("alarmId", event.alarmId);
+                item.put("event", event.event);
+                item.put("atMillis", event.atMillis);
+                item.put("untilMillis", event.untilMillis);
+                item.put("count", event.count);
+                events.put(item);
+            }
+
+            JSObject result = new JSObject();
+            result.put("alarms", alarms);
+            result.put("events", events);
+            call.resolve(result);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get snooze history", e);
+            call.reject("Failed to get snooze history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Build a recurrence rule from scheduleRepeating() options
+     *
+     * @param store read only if the rule needs an anchor and no startDate was given
+     */
+    static AlarmRecurrence recurrenceFrom(JSONObject data, AlarmStore store, int alarmId) {
+        AlarmRecurrence recurrence = new AlarmRecurrence();
+        recurrence.hour = data.optInt("hour", 0);
+        recurrence.minute = data.optInt("minute", 0);
+        recurrence.interval = Math.max(1, data.optInt("interval", 1));
+        recurrence.untilMillis = data.optLong("endAtMillis", 0);
+        recurrence.count = data.optInt("count", 0);
+
+        if (recurrence.hour < 0 || recurrence.hour > 23 || recurrence.minute < 0 || recurrence.minute > 59) {
+            throw new IllegalArgumentException("hour/minute out of range");
+        }
+
+        String frequency = data.optString("frequency", "daily").toUpperCase(Locale.ROOT);
+        switch (frequency) {
+            case AlarmRecurrence.FREQ_WEEKLY:
+                JSONArray days = data.optJSONArray("daysOfWeek");
+                if (days == null || days.length() == 0) {
+                    throw new IllegalArgumentException("daysOfWeek is required for weekly alarms");
+                }
+                for (int i = 0; i < days.length(); i++) {
+                    recurrence.byDay.add(AlarmRecurrence.dayFromCalendar(days.optInt(i, 0)));
+                }
+                break;
+            case AlarmRecurrence.FREQ_MONTHLY:
+                recurrence.byMonthDay = data.optInt("dayOfMonth", 0);
+                if (recurrence.byMonthDay < 1 || recurrence.byMonthDay > 31) {
+                    throw new IllegalArgumentException("dayOfMonth must be 1-31");
+                }
+                break;
+            case AlarmRecurrence.FREQ_DAILY:
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown frequency: " + frequency);
+        }
+
+        String startDate = data.optString("startDate", "");
+        if (!startDate.isEmpty()) {
+            try {
+                recurrence.start = LocalDate.parse(startDate);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("startDate must be YYYY-MM-DD");
+            }
+        } else if (recurrence.interval > 1) {
+            recurrence.start = storedAnchor(recurrence, store.get(alarmId));
+        }
+        return recurrence;
+    }
+
+    /**
+     * INTERVAL anchor for a rule without startDate: a resync of the same rule
+     * keeps the stored DTSTART (otherwise "every 2 days" would shift to the
+     * sync day); a new or changed rule starts from today.
+     */
+    private static LocalDate storedAnchor(AlarmRecurrence recurrence, AlarmRecord stored) {
+        if (stored != null && stored.isRepeating()) {
+            try {
+                AlarmRecurrence previous = AlarmRecurrence.parse(stored.recurrence);
+                if (previous.start != null) {
+                    recurrence.start = previous.start;
+                    if (recurrence.format().equals(previous.format())) return previous.start;
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "⚠ Stored rule of alarm " + stored.id + " unreadable - new anchor");
+            }
         }
+        return LocalDate.now(ZoneId.systemDefault());
     }
 }
@@ -0,0 +1,302 @@
+package com.mypa.app;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * NextAlarmScheduler - "Single-armed" scheduler mode
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS MODE EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * Per-alarm mode (default) gives every reminder its own PendingIntent.
+ * Heavy medicine users end up with hundreds of live AlarmManager
+ * entries, and every bulk edit is a storm of binder calls into
+ * system_server.
+ *
+ * Single mode keeps all pending alarms in an in-memory min-heap and
+ * arms ONLY the earliest one (AlarmStrategySelector picks the API):
+ *
+ *   heap: [07:00 #12] [07:00 #40] [08:30 #7] [21:00 #3] ...
+ *            ↑
+ *   AlarmManager holds ONE entry → ACTION_NEXT_ALARM at 07:00
+ *
+ * When it fires, every due alarm is delivered and the next head is armed.
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * COMPLEXITY:
+ * ═══════════════════════════════════════════════════════════════
+ * - add / reschedule: O(log n) heap push
+ * - remove: O(1) map removal; stale heap entries are skipped lazily
+ * - at most ONE AlarmManager call per change (only if the head moved)
+ */
+public class NextAlarmScheduler {
+    private static final String TAG = "NextAlarmScheduler";
+
+    public static final String ACTION_NEXT_ALARM = "com.mypa.app.ACTION_NEXT_ALARM";
+
+    public static final String MODE_PER_ALARM = "perAlarm";
+    public static final String MODE_SINGLE = "single";
+    static final String SETTING_MODE = "scheduler_mode";
+
+    // Request code reserved for the single armed PendingIntent
+    private static final int NEXT_ALARM_REQUEST_CODE = 0x7FFF0002;
+    // Alarms due within this tolerance are delivered in the same pass
+    private static final long DUE_TOLERANCE_MILLIS = 1000L;
+
+    private static NextAlarmScheduler instance;
+
+    private final Context context;
+    private final PriorityQueue<AlarmRecord> heap = new PriorityQueue<>(64, (a, b) -> {
+        int byTime = Long.compare(a.triggerAtMillis, b.triggerAtMillis);
+        return byTime != 0 ? byTime : Integer.compare(a.id, b.id);
+    });
+    // Live entry per alarm ID; heap entries not present here are stale
+    private final Map<Integer, AlarmRecord> live = new HashMap<>();
+
+    private boolean loaded;
+    private int batchDepth;
+    private long armedAtMillis = -1;
+
+    public static synchronized NextAlarmScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new NextAlarmScheduler(context.getApplicationContext());
+            // The heap is a per-process copy: hear about edits from the other process
+            AlarmStateSync.listenForChanges(context);
+        }
+        return instance;
+    }
+
+    private NextAlarmScheduler(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Whether single-armed mode is enabled (persisted in AlarmStore settings)
+     */
+    public static boolean isEnabled(Context context) {
+        return MODE_SINGLE.equals(getMode(context));
+    }
+
+    public static String getMode(Context context) {
+        return AlarmStore.getInstance(context).getSetting(SETTING_MODE, MODE_PER_ALARM);
+    }
+
+    /**
+     * Switch scheduler mode. Migrates currently armed alarms once.
+     */
+    public static void setMode(Context context, String mode) {
+        if (!MODE_SINGLE.equals(mode) && !MODE_PER_ALARM.equals(mode)) {
+            throw new IllegalArgumentException("Unknown scheduler mode: " + mode);
+        }
+        if (mode.equals(getMode(context))) return;
+
+        AlarmStore store = AlarmStore.getInstance(context);
+        List<AlarmRecord> enabled = store.getAllEnabled();
+
+        if (MODE_SINGLE.equals(mode)) {
+            // Drop per-alarm PendingIntents, then arm only the heap head
+            for (AlarmRecord record : enabled) {
+                AlarmSchedulerHelper.cancelAlarm(context, record.id);
+            }
+            store.putSetting(SETTING_MODE, mode);
+            getInstance(context).reload();
+        } else {
+            store.putSetting(SETTING_MODE, mode);
+            getInstance(context).disarm();
+            AlarmRescheduleReceiver.rescheduleWindow(context);
+        }
+        Log.d(TAG, "✓ Scheduler mode → " + mode + " (" + enabled.size() + " alarms)");
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // HEAP OPERATIONS
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Add or move an alarm. Re-arms only if the earliest alarm changed.
+     */
+    public synchronized void enqueue(AlarmRecord record) {
+        ensureLoaded();
+        AlarmRecord copy = copyOf(record);
+        live.put(copy.id, copy);
+        heap.offer(copy);
+        armHeadIfChanged();
+    }
+
+    public synchronized void remove(int alarmId) {
+        ensureLoaded();
+        if (live.remove(alarmId) != null) {
+            armHeadIfChanged();
+        }
+    }
+
+    /**
+     * Group several changes so the head is armed once at the end
+     */
+    public synchronized void beginBatch() {
+        batchDepth++;
+    }
+
+    public synchronized void endBatch() {
+        if (batchDepth > 0 && --batchDepth == 0) {
+            armHeadIfChanged();
+        }
+    }
+
+    /**
+     * Rebuild the heap from the store (e.g. after mode switch or reboot)
+     */
+    public synchronized void reload() {
+        heap.clear();
+        live.clear();
+        for (AlarmRecord record : AlarmStore.getInstance(context).getAllEnabled()) {
+            live.put(record.id, record);
+            heap.offer(record);
+        }
+        loaded = true;
+        armedAtMillis = -1;
+        armHeadIfChanged();
+        Log.d(TAG, "Heap loaded with " + live.size() + " alarms");
+    }
+
+    /**
+     * Forget the heap; next operation reloads it from the store.
+     * Used when the other process (app ↔ :alarm) changed alarms.
+     */
+    public synchronized void invalidate() {
+        heap.clear();
+        live.clear();
+        loaded = false;
+        armedAtMillis = -1;
+    }
+
+    /**
+     * Pop every alarm that is due now
+     */
+    public synchronized List<AlarmRecord> pollDue(long nowMillis) {
+        ensureLoaded();
+        List<AlarmRecord> due = new ArrayList<>();
+        AlarmRecord head;
+        while ((head = peekLive()) != null && head.triggerAtMillis <= nowMillis + DUE_TOLERANCE_MILLIS) {
+            heap.poll();
+            live.remove(head.id);
+            due.add(head);
+        }
+        // Armed entry has fired; force re-arm of the new head
+        armedAtMillis = -1;
+        return due;
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return live.size();
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            reload();
+        }
+    }
+
+    /**
+     * Head of the heap, discarding stale entries (removed or moved alarms)
+     */
+    private AlarmRecord peekLive() {
+        AlarmRecord head;
+        while ((head = heap.peek()) != null && live.get(head.id) != head) {
+            heap.poll();
+        }
+        return head;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // ALARMMANAGER (only the head is ever armed)
+    // ═══════════════════════════════════════════════════════════════
+
+    private void armHeadIfChanged() {
+        if (batchDepth > 0) return;
+
+        AlarmRecord head = peekLive();
+        long target = head != null ? head.triggerAtMillis : 0;
+        if (target == armedAtMillis) return;
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            Log.e(TAG, "✗ AlarmManager not available");
+            return;
+        }
+
+        if (head == null) {
+            // Cancel the PendingIntent too, so isArmed() means "armed"
+            PendingIntent pendingIntent = nextAlarmIntent();
+            alarmManager.cancel(pendingIntent);
+            pendingIntent.cancel();
+            Log.d(TAG, "Heap empty - next alarm disarmed");
+        } else {
+            Intent intent = new Intent(context, AlarmReceiver.class);
+            intent.setAction(ACTION_NEXT_ALARM);
+            String strategy = AlarmSchedulerHelper.armWithStrategy(
+                context, alarmManager, intent, NEXT_ALARM_REQUEST_CODE, target);
+            AlarmWarmup.schedule(context, head.id, target);
+            Log.d(TAG, "✓ Next alarm armed: #" + head.id + " at " + new java.util.Date(target)
+                + " with " + strategy + " (" + live.size() + " pending)");
+        }
+        armedAtMillis = target;
+    }
+
+    private synchronized void disarm() {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager != null) {
+            PendingIntent pendingIntent = nextAlarmIntent();
+            alarmManager.cancel(pendingIntent);
+            pendingIntent.cancel();
+        }
+        heap.clear();
+        live.clear();
+        loaded = false;
+        armedAtMillis = -1;
+    }
+
+    /**
+     * true if the next-alarm PendingIntent exists (AlarmReconciler probe)
+     */
+    static boolean isArmed(Context context) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_NEXT_ALARM);
+        return PendingIntent.getBroadcast(context, NEXT_ALARM_REQUEST_CODE, intent,
+            PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE) != null;
+    }
+
+    private PendingIntent nextAlarmIntent() {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_NEXT_ALARM);
+        return PendingIntent.getBroadcast(
+            context,
+            NEXT_ALARM_REQUEST_CODE,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    private static AlarmRecord copyOf(AlarmRecord record) {
+        AlarmRecord copy = new AlarmRecord(record.id, record.title, record.body, record.type,
+            record.triggerAtMillis, record.recurrence);
+        copy.enabled = record.enabled;
+        copy.fireCount = record.fireCount;
+        copy.lastFiredAt = record.lastFiredAt;
+        copy.clipSource = record.clipSource;
+        copy.snoozeMinutes = record.snoozeMinutes;
+        copy.maxSnoozes = record.maxSnoozes;
+        return copy;
+    }
+}
@@ -0,0 +1,70 @@
+package com.mypa.app;
+
+import android.content.Intent;
+
+/**
+ * RingSession - One alarm that is currently ringing in AlarmRingingService
+ *
+ * The service keeps an ordered queue of these, so two reminders that fire
+ * in the same minute each keep their own identity, and dismiss / snooze
+ * act on the right alarm.
+ */
+public class RingSession {
+    public final int alarmId;
+    public final String title;
+    public final String body;
+    public final String type;
+    public final String clipSource;
+    // FireMetrics slot (-1 = not tracked)
+    public final long fireSeq;
+    // SystemClock.elapsedRealtime() when AlarmReceiver got the alarm (0 = unknown)
+    public final long receivedAtElapsed;
+    public final long startedAtMillis;
+    // false once the alarm reached its max-snooze limit
+    public final boolean snoozeAllowed;
+    // Snoozes in the current streak when this ring started
+    public final int snoozeCount;
+
+    public RingSession(AlarmRecord record, long fireSeq, long receivedAtElapsed) {
+        this(record.id, record.title, record.body, record.type, record.clipSource,
+            fireSeq, receivedAtElapsed, System.currentTimeMillis(), SnoozeManager.canSnooze(record),
+            record.snoozeCount);
+    }
+
+    // Also used by RingSessionStore to restore a session after process death
+    RingSession(int alarmId, String title, String body, String type, String clipSource,
+                long fireSeq, long receivedAtElapsed, long startedAtMillis, boolean snoozeAllowed,
+                int snoozeCount) {
+        this.alarmId = alarmId;
+        this.title = title != null ? title : "Alarm";
+        this.body = body != null ? body : "";
+        this.type = type != null ? type : "alarm";
+        this.clipSource = clipSource;
+        this.fireSeq = fireSeq;
+        this.receivedAtElapsed = receivedAtElapsed;
+        this.startedAtMillis = startedAtMillis;
+        this.snoozeAllowed = snoozeAllowed;
+        this.snoozeCount = snoozeCount;
+    }
+
+    public RingSession withSnoozeAllowed(boolean allowed) {
+        return new RingSession(alarmId, title, body, type, clipSource,
+            fireSeq, receivedAtElapsed, startedAtMillis, allowed, snoozeCount);
+    }
+
+    /**
+     * Build a session from the service start Intent (store row preferred)
+     */
+    public static RingSession fromIntent(AlarmRecord record, Intent intent) {
+        return new RingSession(
+            record,
+            intent.getLongExtra(FireMetrics.EXTRA_SEQ, -1),
+            intent.getLongExtra(AlarmRingingService.EXTRA_RECEIVED_AT, 0)
+        );
+    }
+
+    @Override
+    public String toString() {
+        return "RingSession{id=" + alarmId + ", title=" + title + "}";
+    }
+}
@@ -0,0 +1,154 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * RingSessionStore - Crash-safe copy of the alarms that are ringing right now
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * AlarmRingingService returns START_STICKY. If the :alarm process dies
+ * mid-ring, Android restarts the service with a NULL intent - the alarm
+ * identity is gone and the service could only ring a generic "Alarm".
+ *
+ * So the session queue is written to a tiny file on every state change:
+ *
+ *   ring starts / audio starts / snooze refused / dismiss / snooze
+ *     → save(sessions, head audio position)
+ *   queue empty → clear()
+ *   sticky restart (null intent) → load() → same sessions, same
+ *     notification, audio resumed at the saved position
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * CRASH SAFETY:
+ * ═══════════════════════════════════════════════════════════════
+ * AtomicFile writes a new file, fsyncs it and only then replaces the
+ * old one, so a crash mid-write leaves the previous state readable.
+ * One file of a few hundred bytes, read synchronously on restart.
+ */
+public class RingSessionStore {
+    private static final String TAG = "RingSessionStore";
+
+    private static final String FILE_NAME = "ring_sessions.bin";
+    private static final int FILE_VERSION = 1;
+    // Older than this = the alarm was missed, do not ring it hours later
+    private static final long MAX_RESUME_AGE_MS = 30 * 60 * 1000L;
+
+    /**
+     * Ring state at the last save
+     */
+    public static class Snapshot {
+        public final List<RingSession> sessions = new ArrayList<>();
+        // Sound the head was playing and where (ms), null / 0 = start over
+        public String soundKey;
+        public int positionMs;
+        public long savedAtMillis;
+    }
+
+    /**
+     * Replace the saved state (call on every state change)
+     *
+     * @param soundKey sound the head is playing, null if not playing yet
+     * @param positionMs playback position of that sound
+     */
+    public static synchronized void save(Context context, Collection<RingSession> sessions,
+                                         String soundKey, int positionMs) {
+        if (sessions.isEmpty()) {
+            clear(context);
+            return;
+        }
+        AtomicFile file = file(context);
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(soundKey != null ? soundKey : "");
+            out.writeInt(Math.max(0, positionMs));
+            out.writeInt(sessions.size());
+            for (RingSession session : sessions) {
+                out.writeInt(session.alarmId);
+                out.writeUTF(session.title);
+                out.writeUTF(session.body);
+                out.writeUTF(session.type);
+                out.writeUTF(session.clipSource != null ? session.clipSource : "");
+                out.writeLong(session.startedAtMillis);
+                out.writeBoolean(session.snoozeAllowed);
+                out.writeInt(session.snoozeCount);
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to save ring sessions", e);
+            if (stream != null) file.failWrite(stream);
+        }
+    }
+
+    /**
+     * Nothing is ringing any more
+     */
+    public static synchronized void clear(Context context) {
+        file(context).delete();
+    }
+
+    /**
+     * Saved state, or null if nothing was ringing (or the state is too old).
+     * Restored sessions carry no FireMetrics slot: the restart is not a fire.
+     */
+    public static synchronized Snapshot load(Context context) {
+        AtomicFile file = file(context);
+        if (!file.getBaseFile().exists()) return null;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(file.readFully()))) {
+            if (in.readInt() != FILE_VERSION) {
+                Log.w(TAG, "⚠ Unknown ring session file version - ignoring");
+                return null;
+            }
+            Snapshot snapshot = new Snapshot();
+            snapshot.savedAtMillis = in.readLong();
+            String soundKey = in.readUTF();
+            snapshot.soundKey = soundKey.isEmpty() ? null : soundKey;
+            snapshot.positionMs = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int alarmId = in.readInt();
+                String title = in.readUTF();
+                String body = in.readUTF();
+                String type = in.readUTF();
+                String clipSource = in.readUTF();
+                long startedAt = in.readLong();
+                boolean snoozeAllowed = in.readBoolean();
+                int snoozeCount = in.readInt();
+                snapshot.sessions.add(new RingSession(alarmId, title, body, type,
+                    clipSource.isEmpty() ? null : clipSource, -1, 0, startedAt, snoozeAllowed, snoozeCount));
+            }
+
+            long age = System.currentTimeMillis() - snapshot.savedAtMillis;
+            if (age > MAX_RESUME_AGE_MS) {
+                Log.w(TAG, "⚠ Ring sessions are " + (age / 1000) + "s old - not resuming");
+                clear(context);
+                return null;
+            }
+            return snapshot;
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to load ring sessions", e);
+            return null;
+        }
+    }
+
+    private static AtomicFile file(Context context) {
+        return new AtomicFile(new File(context.getNoBackupFilesDir(), FILE_NAME));
+    }
+}
@@ -0,0 +1,336 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+
+/**
+ * RingWakeLocks - Scoped, reference-counted wake-lock leases for ringing alarms
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * AlarmRingingService held a SCREEN_BRIGHT lock for a fixed 10 minutes
+ * and AlarmActivity another one for 5 - even when the user dismissed
+ * after 3 seconds, and even after the activity (FLAG_KEEP_SCREEN_ON)
+ * was already keeping the screen on.
+ *
+ * Now the service and the activity take a LEASE per ring session:
+ *
+ *   lease (service / activity)  → session refs++
+ *   session in "wake" phase     → ONE shared screen lock (bright + wakeup)
+ *   activity visible            → session downgraded to the partial lock
+ *   every session               → ONE shared partial (CPU) lock
+ *   last lease released         → session ends, hold time recorded
+ *
+ * Both PowerManager locks are non-reference-counted; this class does the
+ * counting, so a lock is held exactly while some session needs it.
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * TIMEOUTS + BUDGET:
+ * ═══════════════════════════════════════════════════════════════
+ * Wake phase ends after SCREEN_TIMEOUT_MS even if nobody looks.
+ * The CPU lease timeout adapts to how long alarms usually ring here
+ * (2 × average hold, clamped), and is renewed while the session lives,
+ * but never beyond MAX_SESSION_MS. Audio keeps playing after that -
+ * only our extra CPU hold stops.
+ */
+public class RingWakeLocks {
+    private static final String TAG = "RingWakeLocks";
+
+    public static final String HOLDER_SERVICE = "service";
+    public static final String HOLDER_ACTIVITY = "activity";
+
+    private static final long SCREEN_TIMEOUT_MS = 2 * 60 * 1000L;
+    private static final long MIN_CPU_TIMEOUT_MS = 2 * 60 * 1000L;
+    private static final long MAX_CPU_TIMEOUT_MS = 10 * 60 * 1000L;
+    private static final long MAX_SESSION_MS = 30 * 60 * 1000L;
+    // CPU lease is extended this long before it would run out
+    private static final long RENEW_MARGIN_MS = 5000L;
+    private static final double EWMA_ALPHA = 0.3;
+
+    private static final String SETTING_STATS = "wakelock_stats";
+    private static final String SETTING_LAST = "wakelock_last";
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    // Ring sessions by alarm ID, in start order
+    private static final LinkedHashMap<Integer, Session> sessions = new LinkedHashMap<>();
+    private static Context appContext;
+    private static PowerManager.WakeLock screenLock;
+    private static PowerManager.WakeLock cpuLock;
+
+    /**
+     * One ringing alarm's share of the locks
+     */
+    private static class Session {
+        final int alarmId;
+        final long startedAt = SystemClock.elapsedRealtime();
+        final long cpuTimeout;
+        int refs;
+        boolean screenPhase = true;
+        long screenEndedAt;
+        long cpuDeadline;
+
+        Session(int alarmId, long cpuTimeout) {
+            this.alarmId = alarmId;
+            this.cpuTimeout = cpuTimeout;
+            this.cpuDeadline = startedAt + cpuTimeout;
+        }
+
+        long screenDeadline() {
+            return startedAt + SCREEN_TIMEOUT_MS;
+        }
+
+        long budgetEnd() {
+            return startedAt + MAX_SESSION_MS;
+        }
+    }
+
+    /**
+     * Handle to one holder's reference; release() exactly once (extra calls are ignored)
+     */
+    public static final class Lease {
+        public final int alarmId;
+        public final String holder;
+        private boolean released;
+
+        private Lease(int alarmId, String holder) {
+            this.alarmId = alarmId;
+            this.holder = holder;
+        }
+
+        public void release() {
+            RingWakeLocks.release(this);
+        }
+    }
+
+    /**
+     * Hold-time accounting over all sessions
+     */
+    public static class Stats {
+        public int sessions;
+        public long avgHoldMs = -1;
+        public long maxHoldMs = -1;
+        public long totalScreenMs;
+        public long totalCpuMs;
+        public int lastAlarmId = -1;
+        public long lastHoldMs = -1;
+        public long lastScreenMs = -1;
+        public long lastEndedAt;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // LEASES
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Take a lease for a ring session (starts the session on the first lease)
+     */
+    public static synchronized Lease acquire(Context context, int alarmId, String holder) {
+        if (appContext == null) {
+            appContext = context.getApplicationContext();
+        }
+        Session session = sessions.get(alarmId);
+        if (session == null) {
+            session = new Session(alarmId, adaptiveCpuTimeout(context));
+            sessions.put(alarmId, session);
+            Log.d(TAG, "✓ Session " + alarmId + " started (cpu lease " + (session.cpuTimeout / 1000) + "s)");
+        }
+        session.refs++;
+        apply();
+        return new Lease(alarmId, holder);
+    }
+
+    /**
+     * The alarm UI is on screen (FLAG_KEEP_SCREEN_ON holds the screen now):
+     * every session drops to the partial lock
+     */
+    public static synchronized void onScreenVisible() {
+        long now = SystemClock.elapsedRealtime();
+        boolean changed = false;
+        for (Session session : sessions.values()) {
+            if (session.screenPhase) {
+                endScreenPhase(session, now);
+                changed = true;
+            }
+        }
+        if (changed) {
+            Log.d(TAG, "✓ Alarm UI visible - downgraded to partial wake lock");
+            apply();
+        }
+    }
+
+    private static synchronized void release(Lease lease) {
+        if (lease.released) return;
+        lease.released = true;
+        Session session = sessions.get(lease.alarmId);
+        if (session == null) return;
+        if (--session.refs > 0) {
+            return;
+        }
+        sessions.remove(lease.alarmId);
+        endSession(session);
+        apply();
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // LOCK STATE
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Make the two PowerManager locks match the sessions, arm the next deadline
+     */
+    private static void apply() {
+        handler.removeCallbacks(tick);
+        long now = SystemClock.elapsedRealtime();
+        long screenUntil = 0;
+        long cpuUntil = 0;
+        long nextDeadline = Long.MAX_VALUE;
+        for (Session session : sessions.values()) {
+            if (session.screenPhase) {
+                screenUntil = Math.max(screenUntil, session.screenDeadline());
+                nextDeadline = Math.min(nextDeadline, session.screenDeadline());
+            }
+            if (session.cpuDeadline > now) {
+                cpuUntil = Math.max(cpuUntil, session.cpuDeadline);
+                if (session.cpuDeadline < session.budgetEnd()) {
+                    nextDeadline = Math.min(nextDeadline, session.cpuDeadline - RENEW_MARGIN_MS);
+                }
+            }
+        }
+
+        screenLock = hold(screenLock, screenUntil - now,
+            PowerManager.SCREEN_BRIGHT_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP, "AlarmApp:RingScreen");
+        cpuLock = hold(cpuLock, cpuUntil - now, PowerManager.PARTIAL_WAKE_LOCK, "AlarmApp:RingCpu");
+
+        if (nextDeadline != Long.MAX_VALUE) {
+            handler.postDelayed(tick, Math.max(0, nextDeadline - now));
+        }
+    }
+
+    /**
+     * Acquire (or extend) a lock for timeoutMs, or release it if <= 0
+     */
+    private static PowerManager.WakeLock hold(PowerManager.WakeLock lock, long timeoutMs, int flags, String tag) {
+        try {
+            if (timeoutMs <= 0) {
+                if (lock != null && lock.isHeld()) {
+                    lock.release();
+                    Log.d(TAG, tag + " released");
+                }
+                return lock;
+            }
+            if (lock == null) {
+                PowerManager pm = (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+                if (pm == null) return null;
+                lock = pm.newWakeLock(flags, tag);
+                lock.setReferenceCounted(false);
+            }
+            // Non-reference-counted: acquiring again just moves the timeout
+            lock.acquire(timeoutMs);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Wake lock " + tag + " failed", e);
+        }
+        return lock;
+    }
+
+    /**
+     * A deadline passed: end wake phases, renew CPU leases within budget
+     */
+    private static final Runnable tick = () -> {
+        synchronized (RingWakeLocks.class) {
+            long now = SystemClock.elapsedRealtime();
+            for (Session session : sessions.values()) {
+                if (session.screenPhase && now >= session.screenDeadline()) {
+                    Log.w(TAG, "⚠ Alarm " + session.alarmId + " not looked at - screen lock timed out");
+                    endScreenPhase(session, now);
+                }
+                if (session.cpuDeadline < session.budgetEnd()
+                        && now >= session.cpuDeadline - RENEW_MARGIN_MS) {
+                    session.cpuDeadline = Math.min(session.cpuDeadline + session.cpuTimeout, session.budgetEnd());
+                    if (session.cpuDeadline == session.budgetEnd()) {
+                        Log.w(TAG, "⚠ Alarm " + session.alarmId + " reached its wake-lock budget - last renewal");
+                    }
+                }
+            }
+            apply();
+        }
+    };
+
+    private static void endScreenPhase(Session session, long now) {
+        session.screenPhase = false;
+        session.screenEndedAt = Math.min(now, session.screenDeadline());
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // ACCOUNTING
+    // ═══════════════════════════════════════════════════════════════
+
+    private static void endSession(Session session) {
+        long now = SystemClock.elapsedRealtime();
+        if (session.screenPhase) {
+            endScreenPhase(session, now);
+        }
+        long holdMs = Math.min(now, session.budgetEnd()) - session.startedAt;
+        long screenMs = session.screenEndedAt - session.startedAt;
+
+        if (appContext == null) return;
+        Stats stats = getStats(appContext);
+        stats.avgHoldMs = stats.sessions == 0
+            ? holdMs
+            : Math.round(EWMA_ALPHA * holdMs + (1 - EWMA_ALPHA) * stats.avgHoldMs);
+        stats.maxHoldMs = Math.max(stats.maxHoldMs, holdMs);
+        stats.totalScreenMs += screenMs;
+        stats.totalCpuMs += holdMs;
+        stats.sessions++;
+
+        AlarmStore store = AlarmStore.getInstance(appContext);
+        store.putSetting(SETTING_STATS, stats.sessions + "," + stats.avgHoldMs + "," + stats.maxHoldMs
+            + "," + stats.totalScreenMs + "," + stats.totalCpuMs);
+        store.putSetting(SETTING_LAST, session.alarmId + "," + holdMs + "," + screenMs
+            + "," + System.currentTimeMillis());
+        Log.d(TAG, "✓ Session " + session.alarmId + " ended: held " + holdMs + "ms (screen " + screenMs + "ms)");
+    }
+
+    /**
+     * CPU lease length for a new session: 2 × typical ring length here
+     */
+    private static long adaptiveCpuTimeout(Context context) {
+        Stats stats = getStats(context);
+        if (stats.sessions == 0) return MAX_CPU_TIMEOUT_MS;
+        return Math.max(MIN_CPU_TIMEOUT_MS, Math.min(MAX_CPU_TIMEOUT_MS, 2 * stats.avgHoldMs));
+    }
+
+    public static Stats getStats(Context context) {
+        Stats stats = new Stats();
+        AlarmStore store = AlarmStore.getInstance(context);
+        try {
+            String raw = store.getSetting(SETTING_STATS, null);
+            if (raw != null) {
+                String[] parts = raw.split(",");
+                stats.sessions = Integer.parseInt(parts[0]);
+                stats.avgHoldMs = Long.parseLong(parts[1]);
+                stats.maxHoldMs = Long.parseLong(parts[2]);
+                stats.totalScreenMs = Long.parseLong(parts[3]);
+                stats.totalCpuMs = Long.parseLong(parts[4]);
+            }
+            String last = store.getSetting(SETTING_LAST, null);
+            if (last != null) {
+                String[] parts = last.split(",");
+                stats.lastAlarmId = Integer.parseInt(parts[0]);
+                stats.lastHoldMs = Long.parseLong(parts[1]);
+                stats.lastScreenMs = Long.parseLong(parts[2]);
+                stats.lastEndedAt = Long.parseLong(parts[3]);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "⚠ Corrupt wake-lock stats - starting over");
+            return new Stats();
+        }
+        return stats;
+    }
+}
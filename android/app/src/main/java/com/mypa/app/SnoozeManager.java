@@ -0,0 +1,147 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * SnoozeManager - Native snooze state machine
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * STATES (per alarm, persisted in AlarmStore):
+ * ═══════════════════════════════════════════════════════════════
+ *
+ *   RINGING ──snooze──→ SNOOZED (snooze_until set, snooze_count++)
+ *      ↑                   │
+ *      └──── snooze fires ─┘
+ *   RINGING ──dismiss──→ IDLE (snooze_count = 0)
+ *   RINGING ──snooze at max_snoozes──→ refused, keeps RINGING
+ *
+ * Every transition is one transaction: alarm row + snooze_history row.
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * COLLISION-FREE IDS:
+ * ═══════════════════════════════════════════════════════════════
+ * Old code used request code (alarmId + 10000), which could hit a
+ * real alarm with that ID. Snooze PendingIntents now use their own
+ * Intent action (ACTION_SNOOZE_FIRE) with the ORIGINAL alarm ID as
+ * request code. PendingIntent identity includes the action, so the
+ * snooze and alarm ID spaces can never overlap.
+ */
+public class SnoozeManager {
+    private static final String TAG = "SnoozeManager";
+
+    public static final String ACTION_SNOOZE_FIRE = "com.mypa.app.ACTION_SNOOZE_FIRE";
+
+    public static final String EVENT_SNOOZE = "snooze";
+    public static final String EVENT_RING = "ring";
+    public static final String EVENT_DISMISS = "dismiss";
+    public static final String EVENT_LIMIT = "limit";
+    public static final String EVENT_CANCEL = "cancel";
+
+    // Snoozes missed while the phone was off still ring if this recent
+    private static final long MISSED_GRACE_MILLIS = 15 * 60 * 1000L;
+
+    /**
+     * Result of a snooze request
+     */
+    public static class Decision {
+        public final boolean allowed;
+        public final long untilMillis;
+        public final int count;
+
+        Decision(boolean allowed, long untilMillis, int count) {
+            this.allowed = allowed;
+            this.untilMillis = untilMillis;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Whether another snooze is allowed for this alarm
+     */
+    public static boolean canSnooze(AlarmRecord record) {
+        return record == null || record.maxSnoozes <= 0 || record.snoozeCount < record.maxSnoozes;
+    }
+
+    /**
+     * Snooze a ringing alarm using its stored duration and limit
+     *
+     * @return decision; when refused the alarm should keep ringing
+     */
+    public static Decision snooze(Context context, int alarmId, String title, String body) {
+        AlarmStore store = AlarmStore.getInstance(context);
+        AlarmRecord record = store.get(alarmId);
+        long now = System.currentTimeMillis();
+
+        int count = record != null ? record.snoozeCount : 0;
+        if (!canSnooze(record)) {
+            Log.w(TAG, "⚠ Alarm " + alarmId + " reached max snoozes (" + record.maxSnoozes + ")");
+            store.recordSnoozeEvent(alarmId, EVENT_LIMIT, now, count, 0);
+            return new Decision(false, 0, count);
+        }
+
+        int minutes = record != null && record.snoozeMinutes > 0
+            ? record.snoozeMinutes
+            : AlarmRecord.DEFAULT_SNOOZE_MINUTES;
+        long until = now + minutes * 60 * 1000L;
+        count++;
+
+        store.recordSnoozeEvent(alarmId, EVENT_SNOOZE, now, count, until);
+        boolean armed = AlarmSchedulerHelper.scheduleSnoozeAlarm(context, alarmId, until, title, body);
+        Log.d(TAG, "✓ Alarm " + alarmId + " snoozed #" + count + " for " + minutes + " min");
+        return new Decision(armed, until, count);
+    }
+
+    /**
+     * Snooze PendingIntent fired: alarm rings again, streak is kept
+     */
+    public static void onSnoozeFired(Context context, AlarmRecord record) {
+        AlarmStore.getInstance(context).recordSnoozeEvent(
+            record.id, EVENT_RING, System.currentTimeMillis(), record.snoozeCount, 0);
+    }
+
+    /**
+     * Alarm dismissed: streak ends
+     */
+    public static void onDismiss(Context context, int alarmId) {
+        AlarmStore.getInstance(context).recordSnoozeEvent(
+            alarmId, EVENT_DISMISS, System.currentTimeMillis(), 0, 0);
+    }
+
+    /**
+     * Cancel a pending snooze (alarm deleted / cancelled from JS)
+     */
+    public static void cancel(Context context, int alarmId) {
+        AlarmSchedulerHelper.cancelSnoozeAlarm(context, alarmId);
+        AlarmRecord record = AlarmStore.getInstance(context).get(alarmId);
+        if (record != null && record.snoozeUntil > 0) {
+            AlarmStore.getInstance(context).recordSnoozeEvent(
+                alarmId, EVENT_CANCEL, System.currentTimeMillis(), 0, 0);
+        }
+    }
+
+    /**
+     * Re-arm pending snoozes after reboot / clock change
+     *
+     * @return number of snoozes armed
+     */
+    public static int rearmPending(Context context, long now) {
+        AlarmStore store = AlarmStore.getInstance(context);
+        int armed = 0;
+        for (AlarmRecord record : store.getPendingSnoozes()) {
+            long at = record.snoozeUntil;
+            if (at <= now) {
+                if (now - at > MISSED_GRACE_MILLIS) {
+                    Log.w(TAG, "⚠ Snooze of alarm " + record.id + " missed while device was off");
+                    store.recordSnoozeEvent(record.id, EVENT_CANCEL, now, 0, 0);
+                    continue;
+                }
+                at = now + 1000L;
+            }
+            if (AlarmSchedulerHelper.scheduleSnoozeAlarm(context, record.id, at, record.title, record.body)) {
+                armed++;
+            }
+        }
+        return armed;
+    }
+}
@@ -0,0 +1,336 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+import android.speech.tts.Voice;
+import android.util.Log;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SpeechCache - Pre-synthesized speech for speaking alarms
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * Alarm fire hone par WebView usually running NAHI hota, so JS speech
+ * is not an option. Starting TextToSpeech at ring time is also slow
+ * (engine bind + init + synthesis = seconds on cheap phones).
+ *
+ * So we synthesize at SCHEDULE time with synthesizeToFile(), and the
+ * ring path only plays local WAV files.
+ *
+ * An alarm is spoken as SEGMENTS (title, then each part of the body -
+ * medicine name, dosage, ...), one file each. AlarmPlayback chains them
+ * gaplessly, and a segment shared by many alarms ("1 tablet after food")
+ * is synthesized only once.
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * CACHE LAYOUT (content-addressed):
+ * ═══════════════════════════════════════════════════════════════
+ *   files/speech/<sha256(segment | language | voice)>.wav
+ *
+ * - Same text on 50 medicine alarms → ONE file, synthesized once
+ * - Language / voice change → new keys → re-synthesis, old files GC'd
+ * - Alarm deleted → gc() drops files no stored alarm refers to
+ */
+public class SpeechCache {
+    private static final String TAG = "SpeechCache";
+
+    static final String SETTING_ENABLED = "speech_enabled";
+    static final String SETTING_LANGUAGE = "speech_language";
+    static final String SETTING_VOICE = "speech_voice";
+
+    private static final String CACHE_DIR = "speech";
+    private static final String EXTENSION = ".wav";
+
+    private static final long INIT_TIMEOUT_MS = 10_000L;
+    private static final long UTTERANCE_TIMEOUT_MS = 15_000L;
+    // Body parts spoken as separate segments: lines, "a; b", "a • b", sentences
+    private static final String SEGMENT_SPLIT = "\\s*(?:\\n|;|•|\\|)\\s*|(?<=\\.)\\s+";
+
+    // One synthesis / GC job at a time, never on the plugin or main thread
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public static boolean isEnabled(Context context) {
+        return !"false".equals(AlarmStore.getInstance(context).getSetting(SETTING_ENABLED, "true"));
+    }
+
+    /**
+     * Language tag used for synthesis (device language if not set)
+     */
+    public static String getLanguage(Context context) {
+        String language = AlarmStore.getInstance(context).getSetting(SETTING_LANGUAGE, null);
+        return language != null && !language.isEmpty() ? language : Locale.getDefault().toLanguageTag();
+    }
+
+    /**
+     * Voice name used for synthesis ("" = engine default for the language)
+     */
+    public static String getVoice(Context context) {
+        return AlarmStore.getInstance(context).getSetting(SETTING_VOICE, "");
+    }
+
+    /**
+     * Update speech options. Changing language or voice re-synthesizes every alarm.
+     */
+    public static void setOptions(Context context, Boolean enabled, String language, String voice) {
+        AlarmStore store = AlarmStore.getInstance(context);
+        String oldLanguage = getLanguage(context);
+        String oldVoice = getVoice(context);
+
+        if (enabled != null) store.putSetting(SETTING_ENABLED, String.valueOf(enabled));
+        if (language != null) store.putSetting(SETTING_LANGUAGE, language);
+        if (voice != null) store.putSetting(SETTING_VOICE, voice);
+
+        boolean changed = !oldLanguage.equals(getLanguage(context)) || !oldVoice.equals(getVoice(context));
+        if (changed || Boolean.TRUE.equals(enabled)) {
+            Log.d(TAG, "Speech options changed → re-synthesizing all alarms");
+            prepareAllAsync(context);
+        }
+    }
+
+    /**
+     * Segments spoken for an alarm, in order: title, then each body part
+     */
+    public static List<String> segmentsFor(String title, String body) {
+        List<String> segments = new ArrayList<>();
+        if (title != null && !title.trim().isEmpty()) {
+            segments.add(title.trim());
+        }
+        if (body != null) {
+            for (String part : body.split(SEGMENT_SPLIT)) {
+                if (!part.trim().isEmpty()) {
+                    segments.add(part.trim());
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Cached speech files for an alarm in speaking order, or null if any
+     * segment is not synthesized yet. Cheap - safe to call on the ring path.
+     */
+    public static List<File> getCachedSegments(Context context, String title, String body) {
+        List<String> segments = segmentsFor(title, body);
+        if (segments.isEmpty() || !isEnabled(context)) return null;
+
+        String language = getLanguage(context);
+        String voice = getVoice(context);
+        File dir = cacheDir(context);
+        List<File> files = new ArrayList<>(segments.size());
+        for (String segment : segments) {
+            File file = new File(dir, keyFor(segment, language, voice) + EXTENSION);
+            if (!file.exists() || file.length() == 0) return null;
+            files.add(file);
+        }
+        return files;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // BACKGROUND JOBS
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Synthesize speech for the given alarms in the background (missing files only)
+     */
+    public static void prepareAsync(Context context, Collection<AlarmRecord> records) {
+        final Context appContext = context.getApplicationContext();
+        final List<AlarmRecord> copy = new ArrayList<>(records);
+        executor.execute(() -> synthesizeMissing(appContext, copy));
+    }
+
+    /**
+     * Synthesize every stored alarm, then drop files for old language / voice
+     */
+    public static void prepareAllAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            synthesizeMissing(appContext, AlarmStore.getInstance(appContext).getAllEnabled());
+            gc(appContext);
+        });
+    }
+
+    /**
+     * Delete cached files that no stored alarm refers to (after cancel / resync)
+     */
+    public static void gcAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> gc(appContext));
+    }
+
+    private static void gc(Context context) {
+        String language = getLanguage(context);
+        String voice = getVoice(context);
+
+        Set<String> referenced = new HashSet<>();
+        for (AlarmRecord record : AlarmStore.getInstance(context).getAll()) {
+            for (String segment : segmentsFor(record.title, record.body)) {
+                referenced.add(keyFor(segment, language, voice) + EXTENSION);
+            }
+        }
+
+        File[] files = cacheDir(context).listFiles();
+        if (files == null) return;
+
+        int deleted = 0;
+        for (File file : files) {
+            if (!referenced.contains(file.getName()) && file.delete()) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            Log.d(TAG, "✓ Evicted " + deleted + " unused speech files");
+        }
+    }
+
+    private static void synthesizeMissing(Context context, List<AlarmRecord> records) {
+        if (!isEnabled(context)) return;
+
+        String language = getLanguage(context);
+        String voice = getVoice(context);
+        File dir = cacheDir(context);
+
+        // Unique segments that have no file yet (key → text)
+        Map<String, String> pending = new LinkedHashMap<>();
+        for (AlarmRecord record : records) {
+            for (String segment : segmentsFor(record.title, record.body)) {
+                String key = keyFor(segment, language, voice);
+                if (!new File(dir, key + EXTENSION).exists()) {
+                    pending.put(key, segment);
+                }
+            }
+        }
+        if (pending.isEmpty()) return;
+
+        long start = System.currentTimeMillis();
+        TextToSpeech tts = initEngine(context, language, voice);
+        if (tts == null) return;
+
+        try {
+            final CountDownLatch done = new CountDownLatch(pending.size());
+            tts.setOnUtteranceProgressListener(new UtteranceProgressListener() {
+                @Override
+                public void onStart(String utteranceId) {
+                }
+
+                @Override
+                public void onDone(String utteranceId) {
+                    File tmp = new File(dir, utteranceId + ".tmp");
+                    if (!tmp.renameTo(new File(dir, utteranceId + EXTENSION))) {
+                        tmp.delete();
+                    }
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(String utteranceId) {
+                    Log.e(TAG, "✗ Synthesis failed for " + utteranceId);
+                    new File(dir, utteranceId + ".tmp").delete();
+                    done.countDown();
+                }
+            });
+
+            for (Map.Entry<String, String> entry : pending.entrySet()) {
+                File tmp = new File(dir, entry.getKey() + ".tmp");
+                if (tts.synthesizeToFile(entry.getValue(), null, tmp, entry.getKey()) != TextToSpeech.SUCCESS) {
+                    Log.e(TAG, "✗ Could not queue synthesis for " + entry.getKey());
+                    done.countDown();
+                }
+            }
+
+            if (!done.await(UTTERANCE_TIMEOUT_MS * pending.size(), TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "⚠ Speech synthesis timed out");
+            }
+            Log.d(TAG, "✓ Synthesized " + pending.size() + " speech clips in "
+                + (System.currentTimeMillis() - start) + "ms");
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            tts.shutdown();
+        }
+    }
+
+    /**
+     * Bind the TTS engine and wait for it (background thread only)
+     */
+    private static TextToSpeech initEngine(Context context, String language, String voice) {
+        final CountDownLatch ready = new CountDownLatch(1);
+        final int[] status = {TextToSpeech.ERROR};
+        TextToSpeech tts = new TextToSpeech(context, result -> {
+            status[0] = result;
+            ready.countDown();
+        });
+
+        try {
+            if (!ready.await(INIT_TIMEOUT_MS, TimeUnit.MILLISECONDS) || status[0] != TextToSpeech.SUCCESS) {
+                Log.e(TAG, "✗ TextToSpeech init failed (status " + status[0] + ")");
+                tts.shutdown();
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tts.shutdown();
+            return null;
+        }
+
+        int languageResult = tts.setLanguage(Locale.forLanguageTag(language));
+        if (languageResult == TextToSpeech.LANG_MISSING_DATA || languageResult == TextToSpeech.LANG_NOT_SUPPORTED) {
+            Log.w(TAG, "⚠ Language " + language + " not available, using engine default");
+        }
+
+        if (!voice.isEmpty() && tts.getVoices() != null) {
+            for (Voice candidate : tts.getVoices()) {
+                if (voice.equals(candidate.getName())) {
+                    tts.setVoice(candidate);
+                    break;
+                }
+            }
+        }
+        return tts;
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // KEYS
+    // ═══════════════════════════════════════════════════════════════
+
+    static String keyFor(String text, String language, String voice) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((text + "|" + language + "|" + voice).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format(Locale.ROOT, "%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            // SHA-256 is always available on Android
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static File cacheDir(Context context) {
+        File dir = new File(context.getFilesDir(), CACHE_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+}
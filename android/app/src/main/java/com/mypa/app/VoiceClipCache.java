@@ -0,0 +1,256 @@
+package com.mypa.app;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * VoiceClipCache - Offline copies of user-recorded voice alarm clips
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * WHY THIS CLASS EXISTS:
+ * ═══════════════════════════════════════════════════════════════
+ * Users record their own voice messages ("Mummy, dawai le lo!").
+ * The recording lives on a server or in WebView storage - neither is
+ * reachable when the alarm fires with the app killed.
+ *
+ * So FullScreenAlarmPlugin hands the clip source to this cache at
+ * SCHEDULE time; it is downloaded / copied into app storage, and the
+ * ring path only ever opens a local file:
+ *
+ *   schedule({clipUrl}) → cacheAsync() → files/voice_clips/<sha256(source)>
+ *   ring                → getCachedFile()  [no network, no WebView]
+ *
+ * ═══════════════════════════════════════════════════════════════
+ * EVICTION:
+ * ═══════════════════════════════════════════════════════════════
+ * LRU bounded by total BYTES (not count - clips vary 10KB..2MB).
+ * Access order is kept in a LinkedHashMap; schedule and ring both
+ * count as a use, so clips of upcoming alarms stay warm.
+ */
+public class VoiceClipCache {
+    private static final String TAG = "VoiceClipCache";
+
+    private static final String CACHE_DIR = "voice_clips";
+    private static final long MAX_CACHE_BYTES = 50 * 1024 * 1024L;
+    private static final long MAX_CLIP_BYTES = 10 * 1024 * 1024L;
+    private static final int NETWORK_TIMEOUT_MS = 15_000;
+
+    // Capacitor's WebView URL prefix for local files (convertFileSrc)
+    private static final String CAPACITOR_FILE_PREFIX = "/_capacitor_file_";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // file name → size, in access order (eldest = least recently used)
+    private static LinkedHashMap<String, Long> index;
+    private static long totalBytes;
+
+    /**
+     * Cache the clips of the given alarms in the background
+     */
+    public static void cacheAsync(Context context, Collection<AlarmRecord> records) {
+        final Context appContext = context.getApplicationContext();
+        final List<String> sources = new ArrayList<>();
+        for (AlarmRecord record : records) {
+            if (record.clipSource != null && !record.clipSource.isEmpty()) {
+                sources.add(record.clipSource);
+            }
+        }
+        if (sources.isEmpty()) return;
+
+        executor.execute(() -> {
+            for (String source : sources) {
+                cache(appContext, source);
+            }
+        });
+    }
+
+    /**
+     * Local copy of a clip, or null if it is not cached.
+     * Never does network I/O - safe on the ring path.
+     */
+    public static File getCachedFile(Context context, String source) {
+        if (source == null || source.isEmpty()) return null;
+
+        File file = new File(cacheDir(context), keyFor(source));
+        if (!file.exists() || file.length() == 0) return null;
+
+        synchronized (VoiceClipCache.class) {
+            if (index != null) index.get(file.getName());  // mark as recently used
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Download / copy one clip if it is not cached yet
+     *
+     * @return true if the clip is available locally
+     */
+    static boolean cache(Context context, String source) {
+        File dir = cacheDir(context);
+        String key = keyFor(source);
+        File file = new File(dir, key);
+
+        synchronized (VoiceClipCache.class) {
+            ensureIndex(context);
+            if (file.exists() && index.containsKey(key)) {
+                index.get(key);
+                file.setLastModified(System.currentTimeMillis());
+                return true;
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        File tmp = new File(dir, key + ".tmp");
+        long size = 0;
+        try (InputStream in = open(context, source);
+             FileOutputStream out = new FileOutputStream(tmp)) {
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                size += read;
+                if (size > MAX_CLIP_BYTES) {
+                    throw new IllegalStateException("Clip larger than " + MAX_CLIP_BYTES + " bytes");
+                }
+                out.write(buffer, 0, read);
+            }
+            out.getFD().sync();
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to cache clip " + source, e);
+            tmp.delete();
+            return false;
+        }
+
+        synchronized (VoiceClipCache.class) {
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                return false;
+            }
+            Long previous = index.put(key, size);
+            totalBytes += size - (previous != null ? previous : 0);
+            evictToFit(dir, key);
+        }
+
+        Log.d(TAG, "✓ Clip cached (" + size + " bytes) in " + (System.currentTimeMillis() - start)
+            + "ms, cache " + totalBytes + "/" + MAX_CACHE_BYTES + " bytes");
+        return true;
+    }
+
+    /**
+     * Drop least recently used clips until the cache fits its byte budget.
+     * The clip that was just added is never evicted.
+     */
+    private static void evictToFit(File dir, String keep) {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > MAX_CACHE_BYTES && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (eldest.getKey().equals(keep)) continue;
+            new File(dir, eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            it.remove();
+            Log.d(TAG, "Evicted clip " + eldest.getKey());
+        }
+    }
+
+    /**
+     * Rebuild the LRU index from disk once per process (file mtime = last use)
+     */
+    private static void ensureIndex(Context context) {
+        if (index != null) return;
+
+        index = new LinkedHashMap<>(32, 0.75f, true);
+        totalBytes = 0;
+        File[] files = cacheDir(context).listFiles();
+        if (files == null) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                file.delete();
+                continue;
+            }
+            index.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+    }
+
+    /**
+     * Open a clip source: http(s) URL, content:// / file:// URI,
+     * Capacitor WebView file URL or plain absolute path
+     */
+    private static InputStream open(Context context, String source) throws Exception {
+        Uri uri = Uri.parse(source);
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+        String path = uri.getPath();
+
+        // http://localhost/_capacitor_file_/data/... → /data/...
+        if (path != null && path.startsWith(CAPACITOR_FILE_PREFIX)) {
+            return new FileInputStream(path.substring(CAPACITOR_FILE_PREFIX.length()));
+        }
+
+        switch (scheme) {
+            case "http":
+            case "https":
+                HttpURLConnection connection = (HttpURLConnection) new URL(source).openConnection();
+                connection.setConnectTimeout(NETWORK_TIMEOUT_MS);
+                connection.setReadTimeout(NETWORK_TIMEOUT_MS);
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    connection.disconnect();
+                    throw new IllegalStateException("HTTP " + connection.getResponseCode());
+                }
+                return connection.getInputStream();
+            case "content":
+                InputStream in = context.getContentResolver().openInputStream(uri);
+                if (in == null) throw new IllegalStateException("Cannot open " + source);
+                return in;
+            case "file":
+                return new FileInputStream(path);
+            case "":
+                return new FileInputStream(source);
+            default:
+                throw new IllegalArgumentException("Unsupported clip source: " + source);
+        }
+    }
+
+    private static String keyFor(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format(Locale.ROOT, "%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static File cacheDir(Context context) {
+        File dir = new File(context.getNoBackupFilesDir(), CACHE_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+}
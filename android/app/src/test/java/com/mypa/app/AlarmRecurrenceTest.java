@@ -0,0 +1,197 @@
+package com.mypa.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * AlarmRecurrence: next-occurrence math (pure java.time, runs on the host)
+ */
+public class AlarmRecurrenceTest {
+
+    private static final ZoneId UTC = ZoneOffset.UTC;
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    private static long at(String localDateTime, ZoneId zone) {
+        return LocalDateTime.parse(localDateTime).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private static long next(String rule, String after, ZoneId zone) {
+        return AlarmRecurrence.parse(rule).nextAfter(at(after, zone), zone);
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // DAILY
+    // ═══════════════════════════════════════════════════════════════
+
+    @Test
+    public void daily_laterToday() {
+        assertEquals(at("2026-03-02T07:30", UTC),
+            next("FREQ=DAILY;BYHOUR=7;BYMINUTE=30", "2026-03-02T06:00", UTC));
+    }
+
+    @Test
+    public void daily_strictlyAfterTheOccurrenceThatFired() {
+        assertEquals(at("2026-03-03T07:30", UTC),
+            next("FREQ=DAILY;BYHOUR=7;BYMINUTE=30", "2026-03-02T07:30", UTC));
+    }
+
+    @Test
+    public void dailyInterval_countedFromAnchor() {
+        String rule = "FREQ=DAILY;INTERVAL=2;BYHOUR=7;BYMINUTE=30;DTSTART=2026-03-01";
+        // 2nd is an off day → 3rd
+        assertEquals(at("2026-03-03T07:30", UTC), next(rule, "2026-03-02T00:00", UTC));
+        // Fired on the 3rd → 5th, not the 4th
+        assertEquals(at("2026-03-05T07:30", UTC), next(rule, "2026-03-03T07:30", UTC));
+    }
+
+    @Test
+    public void dailyInterval_anchorInTheFutureIsTheFirstDay() {
+        assertEquals(at("2026-04-10T07:30", UTC),
+            next("FREQ=DAILY;INTERVAL=2;BYHOUR=7;BYMINUTE=30;DTSTART=2026-04-10", "2026-03-01T12:00", UTC));
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // WEEKLY
+    // ═══════════════════════════════════════════════════════════════
+
+    @Test
+    public void weekly_nextSelectedDay() {
+        // 2026-03-02 is a Monday
+        assertEquals(at("2026-03-04T09:00", UTC),
+            next("FREQ=WEEKLY;BYDAY=MO,WE;BYHOUR=9;BYMINUTE=0", "2026-03-02T09:00", UTC));
+    }
+
+    @Test
+    public void weeklyInterval_skipsOffWeeks() {
+        String rule = "FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,FR;BYHOUR=9;BYMINUTE=0;DTSTART=2026-03-02";
+        assertEquals(at("2026-03-06T09:00", UTC), next(rule, "2026-03-02T10:00", UTC));
+        // Week of the 9th is off → Monday the 16th
+        assertEquals(at("2026-03-16T09:00", UTC), next(rule, "2026-03-06T09:00", UTC));
+    }
+
+    @Test
+    public void weeklyInterval_anchorMidWeekCountsItsWholeWeek() {
+        // Anchor on a Wednesday: the Monday-based week of the 2nd is week 0
+        String rule = "FREQ=WEEKLY;INTERVAL=2;BYDAY=MO;BYHOUR=9;BYMINUTE=0;DTSTART=2026-03-04";
+        assertEquals(at("2026-03-16T09:00", UTC), next(rule, "2026-03-04T12:00", UTC));
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // MONTHLY
+    // ═══════════════════════════════════════════════════════════════
+
+    @Test
+    public void monthly_shortMonthUsesItsLastDay() {
+        String rule = "FREQ=MONTHLY;BYMONTHDAY=31;BYHOUR=20;BYMINUTE=0";
+        assertEquals(at("2026-02-28T20:00", UTC), next(rule, "2026-01-31T20:00", UTC));
+        // Clamped once, back on the 31st the month after
+        assertEquals(at("2026-03-31T20:00", UTC), next(rule, "2026-02-28T20:00", UTC));
+        assertEquals(at("2026-04-30T20:00", UTC), next(rule, "2026-03-31T20:00", UTC));
+    }
+
+    @Test
+    public void monthly_leapYearFebruary() {
+        assertEquals(at("2028-02-29T08:00", UTC),
+            next("FREQ=MONTHLY;BYMONTHDAY=30;BYHOUR=8;BYMINUTE=0", "2028-01-30T09:00", UTC));
+    }
+
+    @Test
+    public void monthlyInterval_countedFromAnchorMonth() {
+        String rule = "FREQ=MONTHLY;INTERVAL=3;BYMONTHDAY=15;BYHOUR=8;BYMINUTE=0;DTSTART=2026-01-15";
+        assertEquals(at("2026-04-15T08:00", UTC), next(rule, "2026-01-15T08:00", UTC));
+        assertEquals(at("2026-04-15T08:00", UTC), next(rule, "2026-02-20T00:00", UTC));
+    }
+
+    @Test
+    public void monthly_neverBeforeStart() {
+        // DTSTART month's 15th is before the 20th → first ring is next month
+        String rule = "FREQ=MONTHLY;BYMONTHDAY=15;BYHOUR=8;BYMINUTE=0;DTSTART=2026-02-20";
+        assertEquals(at("2026-03-15T08:00", UTC), next(rule, "2026-01-05T00:00", UTC));
+        // With an interval the skip is a whole interval, not one month
+        String every2 = "FREQ=MONTHLY;INTERVAL=2;BYMONTHDAY=15;BYHOUR=8;BYMINUTE=0;DTSTART=2026-02-20";
+        assertEquals(at("2026-04-15T08:00", UTC), next(every2, "2026-01-05T00:00", UTC));
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // UNTIL / COUNT
+    // ═══════════════════════════════════════════════════════════════
+
+    @Test
+    public void until_lastOccurrenceIsInclusive() {
+        long until = at("2026-03-05T07:00", UTC);
+        String rule = "FREQ=DAILY;BYHOUR=7;BYMINUTE=0;UNTIL=" + until;
+        assertEquals(until, next(rule, "2026-03-04T07:00", UTC));
+        assertEquals(-1, next(rule, "2026-03-05T07:00", UTC));
+    }
+
+    @Test
+    public void count_limitsFires() {
+        AlarmRecurrence recurrence = AlarmRecurrence.parse("FREQ=DAILY;BYHOUR=7;BYMINUTE=0;COUNT=3");
+        assertTrue(recurrence.hasRemaining(2));
+        assertFalse(recurrence.hasRemaining(3));
+    }
+
+    @Test
+    public void count_zeroIsUnlimited() {
+        AlarmRecurrence recurrence = AlarmRecurrence.parse("FREQ=DAILY;BYHOUR=7;BYMINUTE=0");
+        assertTrue(recurrence.hasRemaining(10000));
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // DST (America/New_York: 2026-03-08 02:00 → 03:00, 2026-11-01 02:00 → 01:00)
+    // ═══════════════════════════════════════════════════════════════
+
+    @Test
+    public void dst_wallClockTimeKeptAcrossTheChange() {
+        String rule = "FREQ=DAILY;BYHOUR=7;BYMINUTE=0";
+        long next = next(rule, "2026-03-07T08:00", NEW_YORK);
+        assertEquals(ZonedDateTime.of(2026, 3, 8, 7, 0, 0, 0, NEW_YORK).toInstant().toEpochMilli(), next);
+        // 11:00 UTC in EDT, not 12:00 as on the day before
+        assertEquals(at("2026-03-08T11:00", UTC), next);
+    }
+
+    @Test
+    public void dst_timeInTheGapMovesForward() {
+        String rule = "FREQ=DAILY;BYHOUR=2;BYMINUTE=30";
+        // 02:30 does not exist on the 8th → rings at 03:30 EDT
+        assertEquals(at("2026-03-08T07:30", UTC), next(rule, "2026-03-07T12:00", NEW_YORK));
+        // Next day is back at 02:30
+        assertEquals(at("2026-03-09T06:30", UTC), next(rule, "2026-03-08T03:30", NEW_YORK));
+    }
+
+    @Test
+    public void dst_repeatedHourRingsOnce() {
+        String rule = "FREQ=DAILY;BYHOUR=1;BYMINUTE=30";
+        long first = next(rule, "2026-10-31T12:00", NEW_YORK);
+        // Earlier offset (EDT) of the two 01:30s
+        assertEquals(at("2026-11-01T05:30", UTC), first);
+        // After it rang, the second 01:30 (EST) is skipped
+        assertEquals(at("2026-11-02T06:30", UTC), AlarmRecurrence.parse(rule).nextAfter(first, NEW_YORK));
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // PARSE / FORMAT
+    // ═══════════════════════════════════════════════════════════════
+
+    @Test
+    public void format_roundTrips() {
+        String rule = "FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,FR;BYHOUR=9;BYMINUTE=0;DTSTART=2026-03-02;COUNT=4";
+        assertEquals(rule, AlarmRecurrence.parse(rule).format());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_weeklyWithoutDays() {
+        AlarmRecurrence.parse("FREQ=WEEKLY;BYHOUR=9;BYMINUTE=0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_monthlyDayOutOfRange() {
+        AlarmRecurrence.parse("FREQ=MONTHLY;BYMONTHDAY=32;BYHOUR=9;BYMINUTE=0");
+    }
+}
@@ -0,0 +1,80 @@
+package com.mypa.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AlarmStore.list(): keyset page selection (WHERE clause + args)
+ */
+public class AlarmStoreListTest {
+
+    private static final String KEYSET = "(trigger_at > ? OR (trigger_at = ? AND id > ?))";
+
+    @Test
+    public void firstPage_selectsEverything() {
+        List<String> args = new ArrayList<>();
+        assertNull(AlarmStore.selection(new AlarmStore.Filter(), args));
+        assertTrue(args.isEmpty());
+    }
+
+    @Test
+    public void afterIdMinusOne_isTheFirstPageSentinel() {
+        AlarmStore.Filter filter = new AlarmStore.Filter();
+        // Trigger time alone is no cursor - only a row id starts the keyset
+        filter.afterTriggerAt = 5000;
+        List<String> args = new ArrayList<>();
+        assertNull(AlarmStore.selection(filter, args));
+        assertTrue(args.isEmpty());
+    }
+
+    @Test
+    public void afterIdZero_isARealCursor() {
+        AlarmStore.Filter filter = new AlarmStore.Filter();
+        filter.afterTriggerAt = 5000;
+        filter.afterId = 0;
+        List<String> args = new ArrayList<>();
+        assertEquals(KEYSET, AlarmStore.selection(filter, args));
+        assertEquals(Arrays.asList("5000", "5000", "0"), args);
+    }
+
+    @Test
+    public void keyset_tiesOnTriggerAtContinueById() {
+        // Last row of the previous page: (5000, id 7). Rows at 5000 with id > 7
+        // are still ahead - a plain "trigger_at > ?" would skip them.
+        AlarmStore.Filter filter = new AlarmStore.Filter();
+        filter.afterTriggerAt = 5000;
+        filter.afterId = 7;
+        List<String> args = new ArrayList<>();
+        assertEquals(KEYSET, AlarmStore.selection(filter, args));
+        assertEquals(Arrays.asList("5000", "5000", "7"), args);
+    }
+
+    @Test
+    public void filtersAndCursor_argsInClauseOrder() {
+        AlarmStore.Filter filter = new AlarmStore.Filter();
+        filter.types = Arrays.asList("alarm", "medicine");
+        filter.enabled = true;
+        filter.fromMillis = 1000;
+        filter.untilMillis = 9000;
+        filter.afterTriggerAt = 5000;
+        filter.afterId = 7;
+        List<String> args = new ArrayList<>();
+        assertEquals("type IN (?, ?) AND enabled = ? AND trigger_at >= ? AND trigger_at < ? AND " + KEYSET,
+            AlarmStore.selection(filter, args));
+        assertEquals(Arrays.asList("alarm", "medicine", "1", "1000", "9000", "5000", "5000", "7"), args);
+    }
+
+    @Test
+    public void disabledOnly() {
+        AlarmStore.Filter filter = new AlarmStore.Filter();
+        filter.enabled = false;
+        List<String> args = new ArrayList<>();
+        assertEquals("enabled = ?", AlarmStore.selection(filter, args));
+        assertEquals(Arrays.asList("0"), args);
+    }
+}
@@ -1,4 +1,5 @@
 import { LocalNotifications, ScheduleOptions, LocalNotificationSchema } from '@capacitor/local-notifications';
+import { PushNotifications } from '@capacitor/push-notifications';
 import { Capacitor } from '@capacitor/core';
 import FullScreenAlarm from '@/plugins/FullScreenAlarm';
 
@@ -222,13 +223,62 @@ export async function syncAllAlarms(alarms: AlarmData[]): Promise<void> {
   }
 }
 
+/**
+ * Asks the native alarm engine whether this path may deliver an alarm
+ * occurrence. The same occurrence can arrive natively (AlarmManager), as a
+ * local notification and as a push; only the first path to claim it rings.
+ * Without an occurrence time there is nothing to match, so it is delivered.
+ */
+export async function claimAlarmDelivery(
+  id: number,
+  occurrenceAtMillis: number | undefined,
+  source: 'localNotification' | 'push'
+): Promise<boolean> {
+  if (!Number.isFinite(id) || !occurrenceAtMillis || !Number.isFinite(occurrenceAtMillis)) return true;
+  try {
+    const { deliver } = await FullScreenAlarm.claimDelivery({ id, occurrenceAtMillis, source });
+    if (!deliver) {
+      console.log(`[Native] Alarm ${id} @ ${occurrenceAtMillis} already rang - ${source} dropped`);
+    }
+    return deliver;
+  } catch (error) {
+    // Ringing twice is better than not ringing
+    console.error('[Native] claimDelivery failed, delivering:', error);
+    return true;
+  }
+}
+
+function occurrenceOf(notification: LocalNotificationSchema): number | undefined {
+  const fromExtra = Number(notification.extra?.occurrenceAtMillis);
+  if (Number.isFinite(fromExtra) && fromExtra > 0) return fromExtra;
+  const at = notification.schedule?.at;
+  return at ? new Date(at).getTime() : undefined;
+}
+
 export async function initializeNativeNotifications(): Promise<void> {
   if (!await isNativeApp()) return;
   
   await requestNotificationPermission();
   
-  LocalNotifications.addListener('localNotificationReceived', (notification) => {
+  LocalNotifications.addListener('localNotificationReceived', async (notification) => {
     console.log('[Native] Notification received:', notification);
+    const alarmId = Number(notification.extra?.alarmId ?? notification.id);
+    if (!await claimAlarmDelivery(alarmId, occurrenceOf(notification), 'localNotification')) {
+      await LocalNotifications.removeDeliveredNotifications({
+        notifications: [{ id: notification.id, title: notification.title, body: notification.body }]
+      }).catch((error) => console.error('[Native] Failed to drop duplicate notification:', error));
+    }
+  });
+
+  PushNotifications.addListener('pushNotificationReceived', async (notification) => {
+    console.log('[Native] Push received:', notification);
+    const data = notification.data || {};
+    const alarmId = Number(data.alarmId ?? data.id);
+    const occurrenceAtMillis = Number(data.occurrenceAtMillis ?? data.triggerAtMillis);
+    if (!await claimAlarmDelivery(alarmId, occurrenceAtMillis, 'push')) {
+      await PushNotifications.removeDeliveredNotifications({ notifications: [notification] })
+        .catch((error) => console.error('[Native] Failed to drop duplicate push:', error));
+    }
   });
   
   LocalNotifications.addListener('localNotificationActionPerformed', (action) => {
@@ -1,4 +1,189 @@
 import { registerPlugin } from '@capacitor/core';
+import type { PluginListenerHandle } from '@capacitor/core';
+
+/**
+ * One item of scheduleBatch() / replaceAll().
+ * Give triggerAtMillis for a one-time alarm, or hour/minute (+ recurrence
+ * options) for a repeating alarm.
+ */
+export interface BatchAlarm {
+  id: number;
+  title: string;
+  body: string;
+  type?: string;
+  triggerAtMillis?: number;
+  hour?: number;
+  minute?: number;
+  frequency?: 'daily' | 'weekly' | 'monthly';
+  interval?: number;
+  daysOfWeek?: number[];
+  dayOfMonth?: number;
+  endAtMillis?: number;
+  count?: number;
+  startDate?: string;
+  clipUrl?: string;
+  snoozeMinutes?: number;
+  maxSnoozes?: number;
+}
+
+export interface BatchResult {
+  success: boolean;
+  failed: number;
+  results: {
+    id: number;
+    status: 'scheduled' | 'unchanged' | 'cancelled' | 'expired' | 'error';
+    error?: string;
+  }[];
+}
+
+/** Percentiles in milliseconds (-1 when count is 0) */
+export interface LatencyStats {
+  count: number;
+  p50: number;
+  p95: number;
+  p99: number;
+  max: number;
+}
+
+export interface FireMetrics {
+  fires: number;
+  /** Receiver entry vs. scheduled time */
+  driftMs: LatencyStats;
+  /** Stage latencies since receiver entry */
+  serviceCreateMs: LatencyStats;
+  foregroundMs: LatencyStats;
+  firstAudioMs: LatencyStats;
+  activityVisibleMs: LatencyStats;
+  device: { manufacturer: string; model: string; sdk: number };
+}
+
+export interface SnoozeHistory {
+  /** Alarms currently in a snooze streak */
+  alarms: {
+    id: number;
+    snoozeCount: number;
+    maxSnoozes: number;
+    snoozeMinutes: number;
+    /** Pending snooze time, 0 = none */
+    snoozeUntil: number;
+  }[];
+  /** Newest first */
+  events: {
+    alarmId: number;
+    event: 'snooze' | 'ring' | 'dismiss' | 'limit' | 'cancel';
+    atMillis: number;
+    untilMillis: number;
+    count: number;
+  }[];
+}
+
+/**
+ * Alarm state changed natively (alarms ring in a separate ':alarm' process)
+ */
+export interface AlarmStateEvent {
+  /** -1 when many alarms changed */
+  alarmId: number;
+  event: 'fired' | 'snoozeFired' | 'dismissed' | 'snoozed' | 'rescheduled';
+  atMillis: number;
+}
+
+/**
+ * Where the first audio of an alarm came from. The last five are the
+ * native fallback chain, used when the normal source stayed silent.
+ */
+export type AudioSource =
+  | 'staged' | 'clip' | 'cached' | 'uri'
+  | 'fallbackCache' | 'alarmUri' | 'notificationUri' | 'bundled' | 'tone';
+
+export interface AudioLatency {
+  latencyMs: number;
+  source?: AudioSource;
+  measuredAt: number;
+  soundCached: boolean;
+  /** How often each source produced the first audio, and how fast */
+  tiers?: Array<{ tier: AudioSource; count: number; lastMs: number; maxMs: number; lastAt: number }>;
+  /** Rings where every source failed (vibration only) */
+  silentCount?: number;
+}
+
+/**
+ * Wake-lock hold time of ringing alarms (one lease per ring session)
+ */
+export interface WakeLockStats {
+  sessions: number;
+  /** -1 until an alarm has rung */
+  avgHoldMs: number;
+  maxHoldMs: number;
+  /** Summed time the screen-bright lock was held (until the alarm UI was visible) */
+  totalScreenMs: number;
+  totalCpuMs: number;
+  last?: { alarmId: number; holdMs: number; screenMs: number; endedAt: number };
+}
+
+export type AlarmStrategy = 'alarmClock' | 'exactAllowWhileIdle' | 'inexactAllowWhileIdle';
+
+export interface AlarmStrategyInfo {
+  /** AlarmManager API used for new alarms */
+  strategy: AlarmStrategy;
+  reason: string;
+  canScheduleExact: boolean;
+  batteryOptimizationDisabled: boolean;
+  /** Observed lateness per strategy on this device (-1 = not measured) */
+  strategies: {
+    strategy: AlarmStrategy;
+    samples: number;
+    avgLatenessMs: number;
+    maxLatenessMs: number;
+    lastLatenessMs: number;
+  }[];
+}
+
+/** One stored alarm as the native engine sees it (listAlarms / getNextAlarms) */
+export interface AlarmInfo {
+  id: number;
+  title: string;
+  body: string;
+  type: string;
+  /** Next time this alarm rings */
+  triggerAtMillis: number;
+  repeating: boolean;
+  /** false once a one-time alarm rang, or a repeating rule ended */
+  enabled: boolean;
+  lastFiredAt: number;
+  fireCount: number;
+  snoozeCount: number;
+  /** Pending snooze time, 0 = none */
+  snoozeUntil: number;
+  clipUrl?: string;
+}
+
+export interface AlarmPage {
+  alarms: AlarmInfo[];
+  /** Pass as cursor to get the next page; absent on the last page */
+  nextCursor?: string;
+}
+
+/** Counts of one native reconciliation run (store vs AlarmManager) */
+export interface ReconcileReport {
+  /** PendingIntents probed */
+  checked: number;
+  /** Alarms / snoozes that should have been armed but were not */
+  missing: number;
+  /** Armed PendingIntents of disabled or far-away alarms */
+  ghosts: number;
+  /** Arms + cancels applied */
+  repaired: number;
+  /** false = remaining alarms are swept for ghosts on later runs */
+  sweepComplete: boolean;
+  atMillis: number;
+  durationMs: number;
+}
+
+export interface SpeechOptions {
+  enabled: boolean;
+  language: string;
+  voice: string;
+}
 
 export interface FullScreenAlarmPlugin {
   /**
@@ -11,6 +196,10 @@ export interface FullScreenAlarmPlugin {
    * @param options.triggerAtMillis - Timestamp in milliseconds when alarm should trigger
    * @param options.type - Alarm type ('alarm', 'medicine', 'meeting')
    * @param options.allowWhileIdle - Allow alarm to fire even in Doze mode (default: true)
+   * @param options.clipUrl - User voice clip (http(s) URL, file/content URI or
+   *   Capacitor file URL). Cached offline now and played instead of the ringtone.
+   * @param options.snoozeMinutes - Snooze duration in minutes (default: 5)
+   * @param options.maxSnoozes - Snoozes allowed per ring (default: 0 = unlimited)
    * @returns Promise resolving to { success: boolean, alarmId: number }
    */
   schedule(options: {
@@ -20,10 +209,14 @@ export interface FullScreenAlarmPlugin {
     triggerAtMillis: number;
     type?: string;
     allowWhileIdle?: boolean;
+    clipUrl?: string;
+    snoozeMinutes?: number;
+    maxSnoozes?: number;
   }): Promise<{ success: boolean; alarmId: number }>;
 
   /**
-   * Schedules a daily repeating full-screen alarm
+   * Schedules a repeating full-screen alarm. Each next occurrence is armed
+   * natively when the alarm fires, so the app does not need to be opened.
    *
    * @param options - Alarm configuration
    * @param options.id - Unique alarm ID
@@ -32,7 +225,18 @@ export interface FullScreenAlarmPlugin {
    * @param options.hour - Hour (0-23)
    * @param options.minute - Minute (0-59)
    * @param options.type - Alarm type
-   * @returns Promise resolving to { success: boolean, alarmId: number }
+   * @param options.frequency - 'daily' (default), 'weekly' or 'monthly'
+   * @param options.interval - Every N days / weeks / months (default: 1)
+   * @param options.daysOfWeek - Weekly only, 1 (Sun) - 7 (Sat)
+   * @param options.dayOfMonth - Monthly only, 1-31 (short months use their last day)
+   * @param options.endAtMillis - No occurrences after this timestamp
+   * @param options.count - Total number of times to ring
+   * @param options.startDate - 'YYYY-MM-DD', first day it may ring and the anchor
+   *   of interval > 1 (default: anchor already stored for the same rule, else today)
+   * @param options.clipUrl - User voice clip (see schedule())
+   * @param options.snoozeMinutes - Snooze duration in minutes (see schedule())
+   * @param options.maxSnoozes - Snoozes allowed per ring (see schedule())
+   * @returns Promise resolving to { success: boolean, alarmId: number, nextTriggerAtMillis: number }
    */
   scheduleRepeating(options: {
     id: number;
@@ -41,7 +245,17 @@ export interface FullScreenAlarmPlugin {
     hour: number;
     minute: number;
     type?: string;
-  }): Promise<{ success: boolean; alarmId: number }>;
+    frequency?: 'daily' | 'weekly' | 'monthly';
+    interval?: number;
+    daysOfWeek?: number[];
+    dayOfMonth?: number;
+    endAtMillis?: number;
+    count?: number;
+    startDate?: string;
+    clipUrl?: string;
+    snoozeMinutes?: number;
+    maxSnoozes?: number;
+  }): Promise<{ success: boolean; alarmId: number; nextTriggerAtMillis?: number }>;
 
   /**
    * Cancels a scheduled alarm
@@ -51,6 +265,194 @@ export interface FullScreenAlarmPlugin {
    * @returns Promise resolving to { success: boolean }
    */
   cancel(options: { id: number }): Promise<{ success: boolean }>;
+
+  /**
+   * Schedules many alarms in one native call. Alarms that are already
+   * stored with the same data are reported as 'unchanged' and not re-armed.
+   * One-time alarms whose time has passed are reported as 'expired' and
+   * never armed (an alarm that already rang does not ring again).
+   *
+   * @param options.alarms - Alarms to schedule
+   * @returns Promise resolving to per-alarm results
+   */
+  scheduleBatch(options: { alarms: BatchAlarm[] }): Promise<BatchResult>;
+
+  /**
+   * Cancels many alarms in one native call
+   *
+   * @param options.ids - Alarm IDs to cancel
+   * @returns Promise resolving to per-alarm results
+   */
+  cancelBatch(options: { ids: number[] }): Promise<BatchResult>;
+
+  /**
+   * Full resync: schedules the given alarms and cancels every other
+   * stored alarm, in one native call
+   *
+   * @param options.alarms - The complete alarm list
+   * @returns Promise resolving to per-alarm results
+   */
+  replaceAll(options: { alarms: BatchAlarm[] }): Promise<BatchResult>;
+
+  /**
+   * Lists the alarms stored natively, one page per call, ordered by
+   * trigger time (then id). Served from an index; pages are stable while
+   * alarms change because the cursor points after the last row.
+   *
+   * @param options.types - Only these types, e.g. ['medicine', 'meeting']
+   * @param options.enabled - Only enabled (true) or disabled (false) alarms
+   * @param options.fromMillis - Trigger time at / after this timestamp
+   * @param options.untilMillis - Trigger time before this timestamp
+   * @param options.limit - Page size 1-500 (default: 50)
+   * @param options.cursor - nextCursor of the previous page
+   */
+  listAlarms(options?: {
+    types?: string[];
+    enabled?: boolean;
+    fromMillis?: number;
+    untilMillis?: number;
+    limit?: number;
+    cursor?: string;
+  }): Promise<AlarmPage>;
+
+  /**
+   * The next enabled alarms that will ring, earliest first
+   *
+   * @param options.limit - 1-500 (default: 10)
+   * @param options.types - Only these types
+   */
+  getNextAlarms(options?: { limit?: number; types?: string[] }): Promise<{ alarms: AlarmInfo[] }>;
+
+  /**
+   * Compares stored alarms with what is actually armed in AlarmManager and
+   * repairs the differences in one batch. Runs by itself at app start and
+   * after scheduleBatch / replaceAll; call it after any other sync.
+   */
+  reconcileAlarms(): Promise<ReconcileReport>;
+
+  /**
+   * Sets where the native adherence log is uploaded. Fire / dismiss / snooze /
+   * timeout events are recorded natively (also when the WebView never opens)
+   * and POSTed as gzip JSON batches `{ logId, platform, sdk, events[] }` by a
+   * background job with retries. Events are unique by (logId, seq).
+   *
+   * @param options.url - Full endpoint URL; empty string stops uploading
+   * @param options.headers - Extra request headers, e.g. Cookie or Authorization
+   * @returns pendingEvents - events not on the server yet
+   */
+  configureEventUpload(options: {
+    url: string;
+    headers?: Record<string, string>;
+  }): Promise<{ success: boolean; pendingEvents: number }>;
+
+  /**
+   * Returns how long the last alarm took from the native receiver to the
+   * first audio sample
+   *
+   * @returns latencyMs (-1 if no alarm has rung yet), source ('staged' player
+   * prepared by the warm-up, 'clip' voice clip, 'cached' local ringtone copy
+   * or 'uri', or a fallback tier if that stayed silent), measuredAt timestamp,
+   * whether the ringtone is currently cached, and per-source start stats
+   */
+  getAudioLatency(): Promise<AudioLatency>;
+
+  /**
+   * Timing of the last alarm fires (native ring buffer of 128 fires):
+   * drift from the scheduled time and per-stage latencies
+   */
+  getFireMetrics(): Promise<FireMetrics>;
+
+  /**
+   * How long ringing alarms held wake locks: per-alarm average / max and
+   * totals for the screen-bright and CPU locks, plus the last alarm
+   */
+  getWakeLockStats(): Promise<WakeLockStats>;
+
+  /**
+   * Speech options for speaking alarms. Alarm text is synthesized natively
+   * when alarms are scheduled; changing language or voice re-synthesizes
+   * all alarms in the background.
+   *
+   * @param options.enabled - Speak alarms (default: true)
+   * @param options.language - BCP-47 tag like 'hi-IN' ('' = device language)
+   * @param options.voice - TTS voice name ('' = engine default)
+   */
+  setSpeechOptions(options: { enabled?: boolean; language?: string; voice?: string }): Promise<SpeechOptions>;
+
+  /**
+   * Returns the current speech options
+   */
+  getSpeechOptions(): Promise<SpeechOptions>;
+
+  /**
+   * Switches the native scheduler mode
+   *
+   * - 'perAlarm' (default): every alarm gets its own AlarmManager entry
+   * - 'single': alarms are kept in a native priority queue and only the
+   *   earliest one is armed (fewer system calls for large reminder lists)
+   *
+   * @param options.mode - Scheduler mode
+   * @returns Promise resolving to { success: boolean, mode: string }
+   */
+  setSchedulerMode(options: { mode: 'perAlarm' | 'single' }): Promise<{ success: boolean; mode: string }>;
+
+  /**
+   * Returns the current native scheduler mode
+   */
+  getSchedulerMode(): Promise<{ mode: 'perAlarm' | 'single' }>;
+
+  /**
+   * Returns the AlarmManager strategy picked for this device (permission,
+   * battery optimization and measured lateness) and each strategy's
+   * observed lateness
+   */
+  getAlarmStrategy(): Promise<AlarmStrategyInfo>;
+
+  /**
+   * Turns the pre-alarm warm-up on / off (default: on). About 60 seconds
+   * before each alarm the notification is built and the audio prepared
+   * natively, so the alarm itself only posts and starts playback.
+   */
+  setWarmupEnabled(options: { enabled: boolean }): Promise<{ success: boolean; enabled: boolean }>;
+
+  /**
+   * Returns whether the pre-alarm warm-up is on
+   */
+  isWarmupEnabled(): Promise<{ enabled: boolean }>;
+
+  /**
+   * Claims one alarm occurrence for delivery. Call from trigger paths
+   * outside the native alarm engine (LocalNotifications listeners, push
+   * handlers) before ringing: an occurrence is delivered only once, by
+   * whichever path gets there first.
+   *
+   * @param options.id - Alarm ID
+   * @param options.occurrenceAtMillis - Scheduled time of this occurrence
+   * @param options.source - Trigger path (default: 'localNotification')
+   * @returns deliver: false if this occurrence already rang
+   */
+  claimDelivery(options: {
+    id: number;
+    occurrenceAtMillis: number;
+    source?: 'localNotification' | 'push';
+  }): Promise<{ deliver: boolean }>;
+
+  /**
+   * Snooze state of all alarms plus the snooze / dismiss history, in one call
+   *
+   * @param options.sinceMillis - Only events at / after this timestamp (default: 0)
+   * @param options.limit - Max events (default: 100)
+   */
+  getSnoozeHistory(options?: { sinceMillis?: number; limit?: number }): Promise<SnoozeHistory>;
+
+  /**
+   * Fired when an alarm rings, is dismissed / snoozed, or alarms are
+   * re-armed natively (boot, clock change) - refresh alarm lists here
+   */
+  addListener(
+    eventName: 'alarmStateChanged',
+    listenerFunc: (event: AlarmStateEvent) => void,
+  ): Promise<PluginListenerHandle>;
 }
 
 const FullScreenAlarm = registerPlugin<FullScreenAlarmPlugin>('FullScreenAlarm', {
@@ -1,5 +1,5 @@
 import { WebPlugin } from '@capacitor/core';
-import type { FullScreenAlarmPlugin } from './FullScreenAlarm';
+import type { AlarmInfo, AlarmPage, AlarmStrategyInfo, AudioLatency, BatchAlarm, BatchResult, FireMetrics, FullScreenAlarmPlugin, LatencyStats, ReconcileReport, SnoozeHistory, SpeechOptions, WakeLockStats } from './FullScreenAlarm';
 
 export class FullScreenAlarmWeb extends WebPlugin implements FullScreenAlarmPlugin {
   async schedule(options: {
@@ -9,6 +9,9 @@ export class FullScreenAlarmWeb extends WebPlugin implements FullScreenAlarmPlug
     triggerAtMillis: number;
     type?: string;
     allowWhileIdle?: boolean;
+    clipUrl?: string;
+    snoozeMinutes?: number;
+    maxSnoozes?: number;
   }): Promise<{ success: boolean; alarmId: number }> {
     console.log('[Web] FullScreenAlarm.schedule() called with:', options);
     console.warn('[Web] Full-screen alarms are not supported on web platform');
@@ -22,7 +25,16 @@ export class FullScreenAlarmWeb extends WebPlugin implements FullScreenAlarmPlug
     hour: number;
     minute: number;
     type?: string;
-  }): Promise<{ success: boolean; alarmId: number }> {
+    frequency?: 'daily' | 'weekly' | 'monthly';
+    interval?: number;
+    daysOfWeek?: number[];
+    dayOfMonth?: number;
+    endAtMillis?: number;
+    count?: number;
+    clipUrl?: string;
+    snoozeMinutes?: number;
+    maxSnoozes?: number;
+  }): Promise<{ success: boolean; alarmId: number; nextTriggerAtMillis?: number }> {
     console.log('[Web] FullScreenAlarm.scheduleRepeating() called with:', options);
     console.warn('[Web] Full-screen alarms are not supported on web platform');
     return { success: false, alarmId: options.id };
@@ -32,4 +44,120 @@ export class FullScreenAlarmWeb extends WebPlugin implements FullScreenAlarmPlug
     console.log('[Web] FullScreenAlarm.cancel() called with:', options);
     return { success: true };
   }
+
+  async scheduleBatch(options: { alarms: BatchAlarm[] }): Promise<BatchResult> {
+    console.log('[Web] FullScreenAlarm.scheduleBatch() called with:', options);
+    return { success: true, failed: 0, results: [] };
+  }
+
+  async cancelBatch(options: { ids: number[] }): Promise<BatchResult> {
+    console.log('[Web] FullScreenAlarm.cancelBatch() called with:', options);
+    return { success: true, failed: 0, results: [] };
+  }
+
+  async replaceAll(options: { alarms: BatchAlarm[] }): Promise<BatchResult> {
+    console.log('[Web] FullScreenAlarm.replaceAll() called with:', options);
+    return { success: true, failed: 0, results: [] };
+  }
+
+  async listAlarms(options?: {
+    types?: string[];
+    enabled?: boolean;
+    fromMillis?: number;
+    untilMillis?: number;
+    limit?: number;
+    cursor?: string;
+  }): Promise<AlarmPage> {
+    console.log('[Web] FullScreenAlarm.listAlarms() called with:', options);
+    return { alarms: [] };
+  }
+
+  async getNextAlarms(options?: { limit?: number; types?: string[] }): Promise<{ alarms: AlarmInfo[] }> {
+    console.log('[Web] FullScreenAlarm.getNextAlarms() called with:', options);
+    return { alarms: [] };
+  }
+
+  async reconcileAlarms(): Promise<ReconcileReport> {
+    return { checked: 0, missing: 0, ghosts: 0, repaired: 0, sweepComplete: true, atMillis: Date.now(), durationMs: 0 };
+  }
+
+  async configureEventUpload(options: {
+    url: string;
+    headers?: Record<string, string>;
+  }): Promise<{ success: boolean; pendingEvents: number }> {
+    console.log('[Web] FullScreenAlarm.configureEventUpload() called with:', options);
+    return { success: false, pendingEvents: 0 };
+  }
+
+  async getAudioLatency(): Promise<AudioLatency> {
+    return { latencyMs: -1, measuredAt: 0, soundCached: false, tiers: [], silentCount: 0 };
+  }
+
+  async getFireMetrics(): Promise<FireMetrics> {
+    const empty: LatencyStats = { count: 0, p50: -1, p95: -1, p99: -1, max: -1 };
+    return {
+      fires: 0,
+      driftMs: empty,
+      serviceCreateMs: empty,
+      foregroundMs: empty,
+      firstAudioMs: empty,
+      activityVisibleMs: empty,
+      device: { manufacturer: 'web', model: navigator.userAgent, sdk: 0 },
+    };
+  }
+
+  async getWakeLockStats(): Promise<WakeLockStats> {
+    return { sessions: 0, avgHoldMs: -1, maxHoldMs: -1, totalScreenMs: 0, totalCpuMs: 0 };
+  }
+
+  async setSpeechOptions(options: { enabled?: boolean; language?: string; voice?: string }): Promise<SpeechOptions> {
+    console.log('[Web] FullScreenAlarm.setSpeechOptions() called with:', options);
+    return { enabled: options.enabled ?? true, language: options.language ?? navigator.language, voice: options.voice ?? '' };
+  }
+
+  async getSpeechOptions(): Promise<SpeechOptions> {
+    return { enabled: true, language: navigator.language, voice: '' };
+  }
+
+  async setSchedulerMode(options: { mode: 'perAlarm' | 'single' }): Promise<{ success: boolean; mode: string }> {
+    console.log('[Web] FullScreenAlarm.setSchedulerMode() called with:', options);
+    return { success: false, mode: 'perAlarm' };
+  }
+
+  async getSchedulerMode(): Promise<{ mode: 'perAlarm' | 'single' }> {
+    return { mode: 'perAlarm' };
+  }
+
+  async getAlarmStrategy(): Promise<AlarmStrategyInfo> {
+    return {
+      strategy: 'inexactAllowWhileIdle',
+      reason: 'web platform',
+      canScheduleExact: false,
+      batteryOptimizationDisabled: false,
+      strategies: [],
+    };
+  }
+
+  async setWarmupEnabled(options: { enabled: boolean }): Promise<{ success: boolean; enabled: boolean }> {
+    console.log('[Web] FullScreenAlarm.setWarmupEnabled() called with:', options);
+    return { success: false, enabled: false };
+  }
+
+  async isWarmupEnabled(): Promise<{ enabled: boolean }> {
+    return { enabled: false };
+  }
+
+  async claimDelivery(options: {
+    id: number;
+    occurrenceAtMillis: number;
+    source?: 'localNotification' | 'push';
+  }): Promise<{ deliver: boolean }> {
+    console.log('[Web] FullScreenAlarm.claimDelivery() called with:', options);
+    return { deliver: true };
+  }
+
+  async getSnoozeHistory(options?: { sinceMillis?: number; limit?: number }): Promise<SnoozeHistory> {
+    console.log('[Web] FullScreenAlarm.getSnoozeHistory() called with:', options);
+    return { alarms: [], events: [] };
+  }
 }